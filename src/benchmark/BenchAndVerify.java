@@ -9,7 +9,7 @@ import config.GeneralConfig;
 import config.JoinConfig;
 import config.StartupConfig;
 import diskio.PathUtil;
-import indexing.Indexer;
+import indexing.SortIndexAdvisor;
 import joining.JoinProcessor;
 import net.sf.jsqlparser.statement.select.PlainSelect;
 import preprocessing.Context;
@@ -28,7 +28,9 @@ public class BenchAndVerify {
 	 * @param args first argument is Skinner DB directory, second argument is query
 	 *             directory third argument is Postgres database name fourth
 	 *             argument is Postgres user name fifth argument is Postgres user
-	 *             password
+	 *             password (optional sixth argument is targeted time per join
+	 *             episode in milliseconds, optional seventh argument is the
+	 *             number of worker processes to lease cubes to)
 	 * @throws Exception
 	 */
 	public static void main(String[] args) throws Exception {
@@ -39,6 +41,12 @@ public class BenchAndVerify {
 		int budget = Integer.parseInt(args[2]);
 		int nThread = Integer.parseInt(args[3]);
 		double lr = Double.parseDouble(args[4]);
+		// Optional target time per episode for all queries
+		double episodeMillis = args.length > 5 ?
+				Double.parseDouble(args[5]) : JoinConfig.EPISODE_MILLIS;
+		if (args.length > 6) {
+			JoinConfig.REMOTE_WORKERS = Integer.parseInt(args[6]);
+		}
 		JoinConfig.NTHREAD = nThread;
 		JoinConfig.BUDGET_PER_EPISODE = budget;
 		JoinConfig.EXPLORATION_WEIGHT = lr;
@@ -49,7 +57,7 @@ public class BenchAndVerify {
 		GeneralConfig.inMemory = true;
 		BufferManager.loadDB();
 		System.out.println("Data loaded.");
-		Indexer.buildSortIndices();
+		SortIndexAdvisor.buildAdvisedIndices(StartupConfig.SORT_INDEX_BUDGET_MB);
 //		Indexer.indexAll(StartupConfig.INDEX_CRITERIA);
 		// Read all queries from files
 		Map<String, PlainSelect> nameToQuery = BenchUtil.readAllQueries(queryDir);
@@ -59,6 +67,7 @@ public class BenchAndVerify {
 			System.out.println(entry.getValue().toString());
 			long startMillis = System.currentTimeMillis();
 			QueryInfo query = new QueryInfo(entry.getValue(), false, -1, -1, null);
+			query.episodeMillis = episodeMillis;
 			Context preSummary = Preprocessor.process(query);
 			long preMillis = System.currentTimeMillis() - startMillis;
 			System.out.println("preMillis:" + preMillis);
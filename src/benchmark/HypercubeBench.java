@@ -0,0 +1,116 @@
+package benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import joining.join.wcoj.Hypercube;
+import joining.join.wcoj.HypercubeManager;
+import util.Pair;
+
+/**
+ * Measures how many hypercubes per second can be split
+ * and queued by the hypercube manager, simulating worker
+ * threads that interrupt each cube at a random point.
+ */
+public class HypercubeBench {
+	/**
+	 * Processed cubes are finished instead of split
+	 * if more cubes are queued.
+	 */
+	static final int MAX_QUEUED = 100000;
+	/**
+	 * Runs benchmark.
+	 *
+	 * @param args	first argument is number of threads, second
+	 * 				argument is number of dimensions, third argument
+	 * 				is number of splits per thread
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int nrThreads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		int nrDims = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int nrSplits = args.length > 2 ? Integer.parseInt(args[2]) : 1000000;
+		List<Pair<Integer, Integer>> joinValues = new ArrayList<>();
+		for (int dimCtr = 0; dimCtr < nrDims; ++dimCtr) {
+			joinValues.add(new Pair<>(0, Integer.MAX_VALUE - 1));
+		}
+		HypercubeManager.init(joinValues, null, nrThreads, nrThreads);
+		long gcMillisBefore = gcMillis();
+		long startMillis = System.currentTimeMillis();
+		List<Thread> threads = new ArrayList<>();
+		for (int threadCtr = 0; threadCtr < nrThreads; ++threadCtr) {
+			int threadId = threadCtr;
+			Thread thread = new Thread(() -> split(threadId, nrDims, nrSplits));
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long totalMillis = Math.max(System.currentTimeMillis() - startMillis, 1);
+		long totalSplits = (long) nrThreads * nrSplits;
+		System.out.println("Split " + totalSplits + " cubes with " + nrDims +
+				" dimensions using " + nrThreads + " threads in " +
+				totalMillis + " ms (" + totalSplits * 1000 / totalMillis +
+				" cubes/s, " + HypercubeManager.nrQueued() +
+				" cubes queued, GC: " + (gcMillis() - gcMillisBefore) + " ms, " +
+				Arrays.stream(HypercubeManager.nrSteals).sum() + " steals)");
+	}
+	/**
+	 * Repeatedly takes a cube, splits it at a random point
+	 * (in a random attribute order), and queues the rest.
+	 *
+	 * @param threadId	ID of simulated join thread
+	 * @param nrDims	number of dimensions
+	 * @param nrSplits	number of cubes to split
+	 */
+	static void split(int threadId, int nrDims, int nrSplits) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int[] order = new int[nrDims];
+		int[] los = new int[nrDims];
+		int[] his = new int[nrDims];
+		int[] endValues = new int[nrDims];
+		for (int splitCtr = 0; splitCtr < nrSplits; ++splitCtr) {
+			Hypercube cube = HypercubeManager.allocateHypercube(threadId);
+			// Random attribute order
+			for (int i = 0; i < nrDims; ++i) {
+				int j = random.nextInt(i + 1);
+				order[i] = order[j];
+				order[j] = i;
+			}
+			cube.unfold(order, los, his);
+			// Random interruption point
+			int interrupted = random.nextInt(nrDims);
+			for (int i = 0; i < nrDims; ++i) {
+				endValues[i] = i < interrupted ? los[i] + (int) (
+						random.nextDouble() * ((long) his[i] - los[i])) : his[i];
+			}
+			if (HypercubeManager.nrCube.get() > MAX_QUEUED) {
+				// Keep queue size stable
+				HypercubeManager.finishHyperCube(cube, threadId);
+			} else if (interrupted > 0 && endValues[interrupted - 1] < his[interrupted - 1]) {
+				HypercubeManager.updateInterval(cube, endValues, order, threadId);
+			} else {
+				// Cube must remain available for other threads
+				HypercubeManager.addHypercube(cube, threadId);
+			}
+		}
+	}
+	/**
+	 * Returns accumulated garbage collection time.
+	 *
+	 * @return	garbage collection time in milliseconds
+	 */
+	static long gcMillis() {
+		long millis = 0;
+		for (GarbageCollectorMXBean bean :
+				ManagementFactory.getGarbageCollectorMXBeans()) {
+			millis += Math.max(bean.getCollectionTime(), 0);
+		}
+		return millis;
+	}
+}
@@ -0,0 +1,168 @@
+package benchmark;
+
+import java.util.Random;
+
+import joining.join.wcoj.LFTJiter;
+import joining.join.wcoj.LFTJoin;
+import joining.join.wcoj.RunIntersection;
+
+/**
+ * Compares intersection strategies for runs of sorted keys at
+ * the last trie level: leapfrog search (alternating seeks, as
+ * done by the join), merging runs, and bitmap intersection.
+ * Runs contain random keys from a value range whose size
+ * determines their density.
+ */
+public class IntersectionBench {
+	/**
+	 * Names of intersection strategies (indexed by strategy).
+	 */
+	static final String[] STRATEGY_NAMES = {"leapfrog", "merge", "bitmap"};
+	/**
+	 * Runs benchmark.
+	 *
+	 * @param args	first argument is the number of runs, second
+	 * 				argument the length of the shortest run, third
+	 * 				argument the length ratio between the longest
+	 * 				and the shortest run, fourth argument the size
+	 * 				of the value range, fifth argument the number
+	 * 				of repetitions
+	 */
+	public static void main(String[] args) {
+		int nrRuns = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+		int minLength = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int skew = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+		int range = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+		int nrReps = args.length > 4 ? Integer.parseInt(args[4]) : 10000;
+		// Generate runs, with lengths growing geometrically up to skew
+		Random random = new Random(0);
+		LFTJoin[] iters = new LFTJoin[nrRuns];
+		for (int runCtr = 0; runCtr < nrRuns; ++runCtr) {
+			double factor = nrRuns == 1 ? 1 : Math.pow(
+					skew, (double) runCtr / (nrRuns - 1));
+			int length = Math.min(range, (int) (minLength * factor));
+			iters[runCtr] = new LFTJoin(new LFTJiter(
+					randomKeys(random, length, range)));
+		}
+		RunIntersection intersection = new RunIntersection();
+		System.out.println("Intersecting " + nrRuns + " runs (min. length " +
+				minLength + ", skew " + skew + ", range " + range + ")");
+		for (int strategy = RunIntersection.LEAPFROG;
+				strategy <= RunIntersection.BITMAP; ++strategy) {
+			long nrShared = 0;
+			long cost = 0;
+			// Warm up before measuring
+			for (int repCtr = 0; repCtr < nrReps / 10; ++repCtr) {
+				intersect(iters, intersection, strategy, range);
+			}
+			long startNanos = System.nanoTime();
+			for (int repCtr = 0; repCtr < nrReps; ++repCtr) {
+				nrShared += intersect(iters, intersection, strategy, range);
+				cost += strategy == RunIntersection.LEAPFROG ?
+						0 : intersection.cost;
+			}
+			long nanos = System.nanoTime() - startNanos;
+			System.out.println(STRATEGY_NAMES[strategy] + ":\t" +
+					nanos / nrReps + " ns per intersection, " +
+					nrShared / nrReps + " shared keys" + (cost > 0 ?
+					", cost " + cost / nrReps : ""));
+		}
+		positionIters(iters, 0);
+		int strategy = intersection.strategy(iters, range);
+		System.out.println("Selected strategy: " + STRATEGY_NAMES[strategy]);
+	}
+	/**
+	 * Generates sorted run of distinct random keys.
+	 *
+	 * @param random	random generator
+	 * @param length	number of keys
+	 * @param range		keys are drawn from zero to range (exclusive)
+	 * @return			sorted keys
+	 */
+	static int[] randomKeys(Random random, int length, int range) {
+		int[] keys = new int[length];
+		int nrKeys = 0;
+		// Select each value with the required probability
+		for (int value = 0; value < range && nrKeys < length; ++value) {
+			if (random.nextInt(range - value) < length - nrKeys) {
+				keys[nrKeys++] = value;
+			}
+		}
+		return keys;
+	}
+	/**
+	 * Opens iterators and positions them at the given key.
+	 *
+	 * @param iters		iterators to position
+	 * @param startKey	first key to consider
+	 */
+	static void positionIters(LFTJoin[] iters, int startKey) {
+		for (LFTJoin iter : iters) {
+			iter.reset();
+			iter.open();
+			iter.seek(startKey);
+		}
+	}
+	/**
+	 * Intersects all runs with the given strategy.
+	 *
+	 * @param iters			iterators over runs
+	 * @param intersection	intersects runs in one pass
+	 * @param strategy		intersection strategy
+	 * @param range			size of value range
+	 * @return				number of shared keys
+	 */
+	static int intersect(LFTJoin[] iters, RunIntersection intersection,
+			int strategy, int range) {
+		positionIters(iters, 0);
+		if (strategy == RunIntersection.LEAPFROG) {
+			return leapfrog(iters, range - 1);
+		}
+		intersection.strategy(iters, range - 1);
+		intersection.intersect(iters, range - 1, strategy);
+		return intersection.nrKeys;
+	}
+	/**
+	 * Counts keys shared by iterators via leapfrog search
+	 * (iterators must be positioned at their first key).
+	 *
+	 * @param iters		iterators over runs
+	 * @param endKey	last key to consider
+	 * @return			number of shared keys
+	 */
+	static int leapfrog(LFTJoin[] iters, int endKey) {
+		int nrIters = iters.length;
+		for (LFTJoin iter : iters) {
+			if (iter.atEnd()) {
+				return 0;
+			}
+		}
+		// Sort iterators by their keys
+		for (int i = 1; i < nrIters; ++i) {
+			LFTJoin iter = iters[i];
+			int j = i - 1;
+			while (j >= 0 && iters[j].key() > iter.key()) {
+				iters[j + 1] = iters[j];
+				--j;
+			}
+			iters[j + 1] = iter;
+		}
+		int maxKey = iters[nrIters - 1].key();
+		int nrShared = 0;
+		int p = 0;
+		while (true) {
+			LFTJoin minIter = iters[p];
+			if (minIter.key() == maxKey) {
+				++nrShared;
+				minIter.seek(maxKey + 1);
+			} else {
+				minIter.seek(maxKey);
+			}
+			if (minIter.atEnd() || minIter.key() > endKey) {
+				return nrShared;
+			}
+			maxKey = minIter.key();
+			p = (p + 1) % nrIters;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import data.IntData;
+import indexing.TupleSorter;
+import joining.join.wcoj.CSRTrie;
+import joining.join.wcoj.HashTrie;
+import query.ColumnRef;
+
+/**
+ * Compares the time for building compressed tries over
+ * random integer columns by sorting all tuples (as done
+ * for tries that are reused) and by hashing (as done for
+ * tries over filtered tables).
+ */
+public class TrieBuildBench {
+	/**
+	 * Runs benchmark.
+	 *
+	 * @param args	first argument is the number of rows, second
+	 * 				argument the number of columns, third argument
+	 * 				the number of distinct values per column, fourth
+	 * 				argument the number of repetitions
+	 */
+	public static void main(String[] args) {
+		int card = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int nrColumns = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+		int range = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+		int nrReps = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+		// Generate columns with random values
+		Random random = new Random(0);
+		List<IntData> columns = new ArrayList<>();
+		List<ColumnRef> columnRefs = new ArrayList<>();
+		for (int colCtr = 0; colCtr < nrColumns; ++colCtr) {
+			IntData column = new IntData(card);
+			for (int row = 0; row < card; ++row) {
+				column.data[row] = random.nextInt(range);
+			}
+			columns.add(column);
+			columnRefs.add(new ColumnRef("bench", "c" + colCtr));
+		}
+		System.out.println("Building tries over " + card + " rows, " +
+				nrColumns + " columns, " + range + " values per column");
+		long sortNanos = 0;
+		long hashNanos = 0;
+		CSRTrie sortedTrie = null;
+		CSRTrie hashTrie = null;
+		for (int repCtr = 0; repCtr < nrReps; ++repCtr) {
+			long startNanos = System.nanoTime();
+			int[] order = TupleSorter.sortedOrder(columnRefs, columns, card);
+			int[][] levels = new int[nrColumns][];
+			for (int colCtr = 0; colCtr < nrColumns; ++colCtr) {
+				int[] data = columns.get(colCtr).data;
+				levels[colCtr] = new int[card];
+				Arrays.parallelSetAll(levels[colCtr], i -> data[order[i]]);
+			}
+			sortedTrie = new CSRTrie(levels, card);
+			sortNanos += System.nanoTime() - startNanos;
+			startNanos = System.nanoTime();
+			hashTrie = HashTrie.build(columns, card);
+			hashNanos += System.nanoTime() - startNanos;
+		}
+		System.out.println("sorted trie:\t" + sortNanos / nrReps / 1000000 + " ms");
+		System.out.println("hash trie:\t" + hashNanos / nrReps / 1000000 + " ms");
+		for (int colCtr = 0; colCtr < nrColumns; ++colCtr) {
+			System.out.println("level " + colCtr + " nodes:\t" +
+					sortedTrie.nrNodes(colCtr) + " / " + hashTrie.nrNodes(colCtr));
+		}
+	}
+}
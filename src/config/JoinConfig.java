@@ -17,6 +17,25 @@ public class JoinConfig {
 	 * Number of steps performed per episode.
 	 */
 	public static int BUDGET_PER_EPISODE = 500000;
+	/**
+	 * Whether episode budgets are calibrated to take a targeted
+	 * wall time, based on the measured time per step (otherwise,
+	 * each episode uses the budget above, which also serves as
+	 * budget before the first measurement and as reference for
+	 * scaling rewards).
+	 */
+	public static boolean CALIBRATE_BUDGET = true;
+	/**
+	 * Default for the targeted time per episode in milliseconds,
+	 * reached once the best attribute order is stable (queries
+	 * may override this target).
+	 */
+	public static double EPISODE_MILLIS = 5;
+	/**
+	 * Targeted time per episode in milliseconds while the
+	 * best attribute order changes.
+	 */
+	public static double EPISODE_START_MILLIS = 0.25;
 	/**
 	 * Weight for UCT exploration term (used to select
 	 * most interesting action to try next). This
@@ -35,14 +54,151 @@ public class JoinConfig {
 	 * selected as opposed to the maximum reward action).
 	 */
 	public static final double EPSILON = 0.1;
+	/**
+	 * Number of tries without reward that are added for an
+	 * action of the UCT tree while a thread samples it.
+	 */
+	public static int VIRTUAL_LOSS = 1;
+	/**
+	 * Whether to store UCT statistics of the best attribute
+	 * order per join structure and to initialize the UCT tree
+	 * of queries with the same join structure from them.
+	 */
+	public static boolean LEARNED_ORDERS = true;
+	/**
+	 * Maximal number of tries per action that are taken over
+	 * from learned statistics (tries are scaled down so that
+	 * new samples can still change the best order).
+	 */
+	public static int PRIOR_TRIES = 100;
+	/**
+	 * Maximal number of join structures for which learned
+	 * statistics are stored (statistics used least recently
+	 * are removed first).
+	 */
+	public static int MAX_LEARNED_ORDERS = 1000;
 
 	public static int NTHREAD = 32;
+	/**
+	 * Number of worker processes that lease cubes from this
+	 * process over TCP (only for queries whose join result
+	 * tuples are only counted; 0 disables remote workers).
+	 */
+	public static int REMOTE_WORKERS = 0;
+	/**
+	 * Port on which the coordinator accepts worker processes.
+	 */
+	public static int COORDINATOR_PORT = 7321;
+	/**
+	 * Maximal time in milliseconds the coordinator waits
+	 * for missing worker processes to connect.
+	 */
+	public static int WORKER_WAIT_MILLIS = 30000;
 
 	public static int INITCUBE = 100;
+	/**
+	 * Whether to divide the space of join values into initial
+	 * cubes of approximately equal estimated join work (based
+	 * on the value distribution of join columns) instead of
+	 * cubes of equal width in the first dimension.
+	 */
+	public static boolean PARTITION_BY_DISTRIBUTION = true;
+	/**
+	 * Number of (leading) join attributes to divide when
+	 * creating initial cubes based on value distributions.
+	 */
+	public static int PARTITION_DIMS = 1;
+	/**
+	 * Number of initial cubes per join thread when dividing
+	 * based on value distributions (cubes carry similar work,
+	 * hence fewer cubes are needed than for equal width while
+	 * each additional cube boundary causes redundant seeks).
+	 */
+	public static int PARTITION_CUBES_PER_THREAD = 4;
+	/**
+	 * Whether join threads interrupt their current episode
+	 * early if other threads wait for cubes, so the remainder
+	 * of their cube can be shared.
+	 */
+	public static boolean SPLIT_ON_IDLE = true;
+	/**
+	 * Minimal number of steps in an episode before it may be
+	 * interrupted to share work with idle threads (avoids
+	 * passing small cubes back and forth between threads).
+	 */
+	public static int MIN_STEPS_BEFORE_SPLIT = 10000;
+	/**
+	 * Whether join threads collect record IDs of result
+	 * tuples to materialize the join result (otherwise,
+	 * result tuples are only counted).
+	 */
+	public static boolean MATERIALIZE_RESULT = true;
+	/**
+	 * Whether join threads collect result tuples of queries
+	 * with aggregates in factorized form (sharing common
+	 * prefixes of attribute values), in which case the join
+	 * result is materialized as weighted rows.
+	 */
+	public static boolean FACTORIZE_RESULT = true;
+	/**
+	 * Whether join threads count result tuples for a suffix of
+	 * the attribute order whose variables are not bound by the
+	 * same table as a product of per-variable key counts (only
+	 * applies if no result tuples need to be collected).
+	 */
+	public static boolean COUNT_SUFFIX = true;
+	/**
+	 * Whether runs of the last join variable are intersected
+	 * in one pass (by merging or via bitmaps) if their lengths
+	 * make this cheaper than leapfrog search.
+	 */
+	public static boolean BLOCK_INTERSECTION = true;
+	/**
+	 * Runs longer than that are intersected by leapfrog search
+	 * (which can be interrupted between keys).
+	 */
+	public static int BLOCK_INTERSECTION_MAX_RUN = 1 << 16;
+	/**
+	 * Whether iterators choose between linear, exponential,
+	 * and binary search based on observed seek distances
+	 * (otherwise, they always use exponential search).
+	 */
+	public static boolean ADAPTIVE_SEEK = true;
 
 	public static final boolean DISTINCT_START = false;
 
 	public static final boolean DISTINCT_END = false;
 
-	public static final boolean CACHE_ENABLE = false;
+	/**
+	 * Whether to cache result counts of attribute order suffixes
+	 * that do not depend on all prior variables (applies only
+	 * to queries whose join result tuples are only counted).
+	 */
+	public static boolean CACHE_ENABLE = true;
+	/**
+	 * Memory limit of the suffix count cache in megabytes.
+	 */
+	public static int CACHE_MB = 16;
+	/**
+	 * Memory limit in kilobytes for the evaluation tasks
+	 * (iterators and frames per attribute order) that each
+	 * join thread keeps for reuse.
+	 */
+	public static int TASK_CACHE_KB = 256;
+	/**
+	 * Whether to represent tries in compressed form (distinct
+	 * keys per level with offsets to child nodes) instead of
+	 * sorted runs over all tuples.
+	 */
+	public static boolean CSR_TRIE = false;
+	/**
+	 * Whether to build tries that are only used by the current
+	 * query (over filtered tables) by hashing instead of sorting.
+	 */
+	public static boolean HASH_TRIE = true;
+	/**
+	 * Tables with more rows are sorted even if their
+	 * tries are only used by the current query.
+	 */
+	public static int HASH_TRIE_MAX_CARD = 1 << 18;
 }
@@ -24,10 +24,27 @@ public class NamingConfig {
 	 * Prefix to add to table names after filtering them.
 	 */
 	public static final String FILTERED_PRE = "filtered.";
+	/**
+	 * Prefix to add to table names after removing dangling
+	 * tuples via semijoins (contains the prefix of filtered
+	 * tables since reduced tables are query-specific).
+	 */
+	public static final String REDUCED_PRE = "reduced." + FILTERED_PRE;
+	/**
+	 * Prefix to add to edge tables whose edges were oriented
+	 * by vertex degree (contains the prefix of filtered tables
+	 * since edges are restricted by query predicates).
+	 */
+	public static final String ORIENTED_PRE = "oriented." + FILTERED_PRE;
 	/**
 	 * Name of table containing result after join phase.
 	 */
 	public static final String JOINED_NAME = "joined.";
+	/**
+	 * Name of column containing for each row of a factorized
+	 * join result the number of result tuples it represents.
+	 */
+	public static final String JOIN_WEIGHT_COL = "joined.weight";
 	/**
 	 * Name of table containing for each join result row
 	 * the associated group (and potentially columns used
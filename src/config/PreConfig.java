@@ -22,4 +22,14 @@ public class PreConfig {
 	 * Whether to make the join key distinct
 	 */
 	public static final boolean PRE_DISTINCT = true;
+	/**
+	 * Whether to remove dangling tuples from filtered
+	 * tables via semijoins along a join tree.
+	 */
+	public static boolean SEMIJOIN_REDUCTION = true;
+	/**
+	 * Whether to orient edges from lower to higher degree
+	 * vertices for queries counting cliques in a graph.
+	 */
+	public static boolean DEGREE_ORIENTATION = true;
 }
@@ -11,4 +11,18 @@ public class StartupConfig {
 	 * How to select columns on which to create indices at startup.
 	 */
 	public static final IndexingMode INDEX_CRITERIA = IndexingMode.ALL;
+	/**
+	 * Whether sort orders of base tables that are sorted during
+	 * query processing are stored on disk as well (sort orders
+	 * are always stored when indexing or loading tables and
+	 * reused after restarts instead of sorting again).
+	 */
+	public static boolean PERSIST_SORT_ORDERS = false;
+	/**
+	 * Memory budget (in megabytes) for sort orders and
+	 * trie levels of base tables that are kept in memory
+	 * across queries (negative to use half of the maximal
+	 * heap size).
+	 */
+	public static long SORT_INDEX_BUDGET_MB = -1;
 }
@@ -20,6 +20,7 @@ import diskio.LoadCSV;
 import diskio.PathUtil;
 import execution.Master;
 import indexing.Indexer;
+import indexing.SortIndexAdvisor;
 import net.sf.jsqlparser.parser.CCJSqlParserUtil;
 import net.sf.jsqlparser.statement.Statement;
 import net.sf.jsqlparser.statement.create.table.CreateTable;
@@ -319,6 +320,8 @@ public class SkinnerCmd {
 					+ "<Plot Frequency> <Query>' to visualize query execution");
 			System.out.println("'help' for help");
 			System.out.println("'index all' to index each column");
+			System.out.println("'index sort [<budget MB>]' to keep sort orders "
+					+ "requested most frequently by joins in memory");
 			System.out.println("'list' to list database tables");
 			System.out.println("'load <table> <CSV file> <separator> <NULL representation>' "
 					+ "to load table data from .csv file");
@@ -326,6 +329,13 @@ public class SkinnerCmd {
 			System.out.println("Write SQL queries in a single line");
 		} else if (input.equals("index all")) {
 			Indexer.indexAll(StartupConfig.INDEX_CRITERIA);
+		} else if (input.startsWith("index sort")) {
+			String[] inputFrags = input.split("\\s+");
+			if (inputFrags.length > 2) {
+				StartupConfig.SORT_INDEX_BUDGET_MB = Long.parseLong(inputFrags[2]);
+			}
+			SortIndexAdvisor.buildAdvisedIndices(
+					StartupConfig.SORT_INDEX_BUDGET_MB);
 		} else if (input.equals("list")) {
 			// Show overview of the database
 			System.out.println(CatalogManager.currentDB.toString());
@@ -12,6 +12,11 @@ import java.util.List;
  *
  */
 public abstract class ColumnData implements Serializable {
+	/**
+	 * Fixed to remain compatible with columns stored
+	 * on disk when methods are added to this class.
+	 */
+	private static final long serialVersionUID = -739207940676172296L;
 	/**
 	 * Cardinality of this column.
 	 */
@@ -92,6 +97,15 @@ public abstract class ColumnData implements Serializable {
 	 */
 	public abstract ColumnData copyRows(
 			List<int[]> tuples, int tableIdx);
+	/**
+	 * Produces new column by copying rows whose indices
+	 * are given in consecutive chunks (e.g., join result
+	 * tuple indices for one table in columnar form).
+	 * 
+	 * @param rowChunks	chunks of indices of rows to copy
+	 * @return			new column with copied rows
+	 */
+	public abstract ColumnData copyRowChunks(List<int[]> rowChunks);
 	/**
 	 * Returns number of rows stored for column.
 	 * 
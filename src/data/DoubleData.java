@@ -18,6 +18,10 @@ import java.util.List;
  *
  */
 public class DoubleData extends ColumnData implements Serializable {
+	/**
+	 * Serialization version (see {@link ColumnData}).
+	 */
+	private static final long serialVersionUID = 294734032847503748L;
 	/**
 	 * Holds double data.
 	 */
@@ -97,6 +101,24 @@ public class DoubleData extends ColumnData implements Serializable {
 		return copyColumn;
 	}
 
+	@Override
+	public ColumnData copyRowChunks(List<int[]> rowChunks) {
+		int nrRows = 0;
+		for (int[] rowChunk : rowChunks) {
+			nrRows += rowChunk.length;
+		}
+		DoubleData copyColumn = new DoubleData(nrRows);
+		int copiedRowCtr = 0;
+		for (int[] rowChunk : rowChunks) {
+			for (int row : rowChunk) {
+				copyColumn.data[copiedRowCtr] = data[row];
+				copyColumn.isNull.set(copiedRowCtr, isNull.get(row));
+				++copiedRowCtr;
+			}
+		}
+		return copyColumn;
+	}
+
 	@Override
 	public ColumnData copyRows(BitSet rowsToCopy) {
 		DoubleData copyColumn = new DoubleData(rowsToCopy.cardinality());
@@ -18,6 +18,10 @@ import java.util.List;
  *
  */
 public class LongData extends ColumnData implements Serializable {
+	/**
+	 * Serialization version (see {@link ColumnData}).
+	 */
+	private static final long serialVersionUID = -981737576390796175L;
 	/**
 	 * Holds long data.
 	 */
@@ -97,6 +101,24 @@ public class LongData extends ColumnData implements Serializable {
 		return copyColumn;
 	}
 
+	@Override
+	public ColumnData copyRowChunks(List<int[]> rowChunks) {
+		int nrRows = 0;
+		for (int[] rowChunk : rowChunks) {
+			nrRows += rowChunk.length;
+		}
+		LongData copyColumn = new LongData(nrRows);
+		int copiedRowCtr = 0;
+		for (int[] rowChunk : rowChunks) {
+			for (int row : rowChunk) {
+				copyColumn.data[copiedRowCtr] = data[row];
+				copyColumn.isNull.set(copiedRowCtr, isNull.get(row));
+				++copiedRowCtr;
+			}
+		}
+		return copyColumn;
+	}
+
 	@Override
 	public ColumnData copyRows(BitSet rowsToCopy) {
 		LongData copyColumn = new LongData(rowsToCopy.cardinality());
@@ -19,6 +19,10 @@ import java.util.Map;
  *
  */
 public class StringData extends ColumnData implements Serializable {
+	/**
+	 * Serialization version (see {@link ColumnData}).
+	 */
+	private static final long serialVersionUID = 9038824664764265719L;
 	/**
 	 * Holds actual string data.
 	 */
@@ -99,6 +103,24 @@ public class StringData extends ColumnData implements Serializable {
 		return copyColumn;
 	}
 
+	@Override
+	public ColumnData copyRowChunks(List<int[]> rowChunks) {
+		int nrRows = 0;
+		for (int[] rowChunk : rowChunks) {
+			nrRows += rowChunk.length;
+		}
+		StringData copyColumn = new StringData(nrRows);
+		int copiedRowCtr = 0;
+		for (int[] rowChunk : rowChunks) {
+			for (int row : rowChunk) {
+				copyColumn.data[copiedRowCtr] = data[row];
+				copyColumn.isNull.set(copiedRowCtr, isNull.get(row));
+				++copiedRowCtr;
+			}
+		}
+		return copyColumn;
+	}
+
 	@Override
 	public ColumnData copyRows(BitSet rowsToCopy) {
 		StringData copyColumn = new StringData(rowsToCopy.cardinality());
@@ -1,7 +1,13 @@
 package diskio;
 
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 /**
  * Implements utility methods for loading
@@ -31,4 +37,27 @@ public class DiskUtil {
 			throw new Exception("Error loading object at path '" + path + "'");
 		}
 	}
+	/**
+	 * Stores an object at specified path on hard disk. The
+	 * object is written to a temporary file first, which
+	 * then replaces the target file atomically (so that a
+	 * crash while writing keeps the previous version).
+	 * 
+	 * @param object	object to store
+	 * @param path		path on hard disk
+	 * @throws Exception
+	 */
+	public static void storeObject(Object object, String path) throws Exception {
+		Path target = Paths.get(path);
+		Path tmpPath = Paths.get(path + ".tmp");
+		Files.createDirectories(target.toAbsolutePath().getParent());
+		try (FileOutputStream fileOut = new FileOutputStream(tmpPath.toFile());
+				ObjectOutputStream objOut = new ObjectOutputStream(fileOut)) {
+			objOut.writeObject(object);
+			objOut.flush();
+			fileOut.getFD().sync();
+		}
+		Files.move(tmpPath, target, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
 }
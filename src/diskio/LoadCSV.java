@@ -21,6 +21,8 @@ import data.DoubleData;
 import data.IntData;
 import data.LongData;
 import data.StringData;
+import indexing.SortIndexAdvisor;
+import joining.join.wcoj.LFTJiter;
 import query.ColumnRef;
 import types.JavaType;
 import types.SQLtype;
@@ -226,8 +228,11 @@ public class LoadCSV {
 		// Store column data to hard disk
 		storeData(table, data);
 		System.out.println("Stored table on disk");
-		// Update cardinality estimates
+		// Sort orders of previous table content are outdated
 		String tableName = table.name;
+		SortOrderStore.remove(tableName);
+		LFTJiter.clearBaseCache(tableName);
+		// Update cardinality estimates
 		CatalogManager.updateStats(tableName);
 		TableStats tableStats = CatalogManager.currentStats.tableToStats.get(tableName);
 		System.out.println("Updated table statistics: ");
@@ -238,6 +243,8 @@ public class LoadCSV {
 				ColumnRef colRef = new ColumnRef(tableName, col);
 				BufferManager.loadColumn(colRef);
 			}
+			// Store sort orders requested by previous queries
+			SortIndexAdvisor.tableLoaded(tableName);
 		}
 	}
 }
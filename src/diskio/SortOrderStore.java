@@ -0,0 +1,236 @@
+package diskio;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import catalog.CatalogManager;
+import query.ColumnRef;
+
+/**
+ * Stores sort orders (i.e., row indices sorted by the
+ * values in a sequence of columns) of base tables on
+ * disk, next to the column data, and reads them back
+ * into the heap (copying memory-mapped segments of the
+ * file in parallel). This avoids sorting base tables
+ * again after each restart.
+ *
+ * Each sort order is stored in a separate file whose
+ * name lists the sort columns. The file starts with
+ * the number of rows and a fingerprint of the sort
+ * column files (their lengths and modification times),
+ * followed by the row indices (little-endian four byte
+ * integers). Stored orders whose fingerprint does not
+ * match the current column files are ignored.
+ */
+public class SortOrderStore {
+	/**
+	 * Number of integers read per memory-mapped segment.
+	 */
+	static final int SEGMENT_INTS = 1 << 24;
+	/**
+	 * Number of bytes of file header.
+	 */
+	static final int HEADER_BYTES = 12;
+	/**
+	 * Returns directory containing sort orders of given table.
+	 *
+	 * @param table	name of base table
+	 * @return		path to directory with sort orders
+	 */
+	static Path tableDir(String table) {
+		return Paths.get(PathUtil.dbDir, "sortorders", table);
+	}
+	/**
+	 * Returns path of file storing sort order by given columns.
+	 *
+	 * @param columns	sort columns (all from the same base table)
+	 * @return			path of associated file
+	 */
+	static Path orderPath(List<ColumnRef> columns) {
+		List<String> columnNames = new ArrayList<>();
+		for (ColumnRef column : columns) {
+			columnNames.add(column.columnName);
+		}
+		String table = columns.get(0).aliasName;
+		return tableDir(table).resolve(String.join(".", columnNames));
+	}
+	/**
+	 * Calculates fingerprint of the data files of given columns
+	 * from their lengths and last modification times.
+	 *
+	 * @param columns	sort columns (all from the same base table)
+	 * @return			fingerprint of current column data
+	 * @throws Exception
+	 */
+	static long fingerprint(List<ColumnRef> columns) throws Exception {
+		long fingerprint = 0;
+		for (ColumnRef column : columns) {
+			String colPath = PathUtil.colToPath.get(
+					CatalogManager.getColumn(column));
+			File colFile = new File(colPath);
+			fingerprint = 31 * fingerprint + colFile.length();
+			fingerprint = 31 * fingerprint + colFile.lastModified();
+		}
+		return fingerprint;
+	}
+	/**
+	 * Stores sort order by given columns on disk. The file
+	 * is written under a temporary name first so that readers
+	 * never see incomplete files.
+	 *
+	 * @param columns	sort columns (all from the same base table)
+	 * @param order		row indices in sort order
+	 */
+	public static void store(List<ColumnRef> columns, int[] order) {
+		Path path = orderPath(columns);
+		Path tmpPath = Paths.get(path.toString() + ".tmp");
+		try {
+			Files.createDirectories(path.getParent());
+			try (FileChannel channel = FileChannel.open(tmpPath,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer buffer = ByteBuffer.allocateDirect(
+						SEGMENT_INTS * 4).order(ByteOrder.LITTLE_ENDIAN);
+				buffer.putInt(order.length);
+				buffer.putLong(fingerprint(columns));
+				int nrRows = order.length;
+				int pos = 0;
+				while (pos < nrRows || buffer.position() > 0) {
+					int nrInts = Math.min(nrRows - pos,
+							buffer.remaining() / 4);
+					buffer.asIntBuffer().put(order, pos, nrInts);
+					buffer.position(buffer.position() + nrInts * 4);
+					pos += nrInts;
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+					buffer.clear();
+				}
+			}
+			Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (Exception e) {
+			System.err.println("Error storing sort order for " + columns);
+			e.printStackTrace();
+		}
+	}
+	/**
+	 * Checks whether the file opened by the given channel
+	 * contains a sort order matching the current cardinality
+	 * and column files.
+	 *
+	 * @param channel	channel of sort order file
+	 * @param columns	sort columns (all from the same base table)
+	 * @param card		current cardinality of the base table
+	 * @return			true iff the stored order is up to date
+	 * @throws Exception
+	 */
+	static boolean upToDate(FileChannel channel, List<ColumnRef> columns,
+			int card) throws Exception {
+		long expectedBytes = HEADER_BYTES + 4L * card;
+		if (channel.size() != expectedBytes) {
+			return false;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).
+				order(ByteOrder.LITTLE_ENDIAN);
+		channel.read(header, 0);
+		return header.getInt(0) == card &&
+				header.getLong(4) == fingerprint(columns);
+	}
+	/**
+	 * Returns true iff an up-to-date sort order by the given
+	 * columns is stored on disk.
+	 *
+	 * @param columns	sort columns (all from the same base table)
+	 * @param card		current cardinality of the base table
+	 * @return			true iff a valid sort order is stored
+	 */
+	public static boolean isStored(List<ColumnRef> columns, int card) {
+		Path path = orderPath(columns);
+		if (!Files.exists(path)) {
+			return false;
+		}
+		try (FileChannel channel = FileChannel.open(
+				path, StandardOpenOption.READ)) {
+			return upToDate(channel, columns, card);
+		} catch (Exception e) {
+			return false;
+		}
+	}
+	/**
+	 * Loads sort order by given columns from disk if available.
+	 *
+	 * @param columns	sort columns (all from the same base table)
+	 * @param card		current cardinality of the base table
+	 * @return			row indices in sort order or null if no
+	 * 					valid sort order was stored
+	 */
+	public static int[] load(List<ColumnRef> columns, int card) {
+		Path path = orderPath(columns);
+		if (!Files.exists(path)) {
+			return null;
+		}
+		long startMillis = System.currentTimeMillis();
+		try (FileChannel channel = FileChannel.open(
+				path, StandardOpenOption.READ)) {
+			// Check whether stored order is outdated
+			if (!upToDate(channel, columns, card)) {
+				return null;
+			}
+			// Copy segments in parallel via memory mapping
+			int[] order = new int[card];
+			int nrSegments = (card + SEGMENT_INTS - 1) / SEGMENT_INTS;
+			IntStream.range(0, nrSegments).parallel().forEach(segment -> {
+				int start = segment * SEGMENT_INTS;
+				int nrInts = Math.min(SEGMENT_INTS, card - start);
+				try {
+					MappedByteBuffer mapped = channel.map(
+							FileChannel.MapMode.READ_ONLY,
+							HEADER_BYTES + 4L * start, 4L * nrInts);
+					IntBuffer ints = mapped.order(
+							ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+					ints.get(order, start, nrInts);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			});
+			long totalMillis = System.currentTimeMillis() - startMillis;
+			System.out.println("Loaded sort order by " + columns +
+					" in " + totalMillis + " ms");
+			return order;
+		} catch (Exception e) {
+			System.err.println("Error loading sort order for " + columns);
+			e.printStackTrace();
+			return null;
+		}
+	}
+	/**
+	 * Deletes all stored sort orders for given table
+	 * (e.g., after its content changed).
+	 *
+	 * @param table	name of base table
+	 */
+	public static void remove(String table) {
+		File dir = tableDir(table).toFile();
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+}
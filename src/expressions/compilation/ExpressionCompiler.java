@@ -933,6 +933,13 @@ public class ExpressionCompiler extends SkinnerVisitor {
 			String column = aggRef.columnName;
 			Column aggCol = new Column(table, column);
 			visit(aggCol);
+			// Aggregate may have wider type than expected
+			// (e.g., weighted sums over integer columns).
+			SQLtype aggType = CatalogManager.getColumn(aggRef).type;
+			SQLtype fctType = expressionInfo.expressionToType.get(arg0);
+			if (!aggType.equals(fctType)) {
+				cast(aggType, fctType);
+			}
 			break;
 		default:
 			/*
@@ -1754,6 +1761,17 @@ public class ExpressionCompiler extends SkinnerVisitor {
 		SQLtype targetType = expressionInfo.expressionToType.get(arg0);
 		// Put result of left expression on stack
 		arg0.getLeftExpression().accept(this);
+		// Convert value on top of stack
+		cast(sourceType, targetType);
+	}
+	/**
+	 * Converts value on top of stack (followed by null flag)
+	 * from source into target type.
+	 * 
+	 * @param sourceType	type of value on stack
+	 * @param targetType	convert value into this type
+	 */
+	void cast(SQLtype sourceType, SQLtype targetType) {
 		// (value, null) -> (null, value)
 		JavaType jSourceType = TypeUtil.toJavaType(sourceType);
 		smartSwap(jSourceType, JavaType.INT);
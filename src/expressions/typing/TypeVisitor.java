@@ -315,7 +315,7 @@ public class TypeVisitor extends SkinnerVisitor {
 	public void visit(Function arg0) {
 		// Treat parameter expressions
 		if (arg0.getName().equalsIgnoreCase("count")) {
-			outputType.put(arg0, SQLtype.INT);
+			outputType.put(arg0, SQLtype.LONG);
 			outputScope.put(arg0, ExpressionScope.PER_GROUP);
 		} else {
 			List<Expression> paramExprs = arg0.getParameters().getExpressions();
@@ -329,6 +329,12 @@ public class TypeVisitor extends SkinnerVisitor {
 				commonType = TypeUtil.commonType(commonType, type);
 			}
 			outputType.put(arg0, commonType);
+			// Integer sums may exceed integer range (e.g., counts
+			// over factorized join results are weighted sums).
+			if (arg0.getName().equalsIgnoreCase("sum") &&
+					commonType == SQLtype.INT) {
+				outputType.put(arg0, SQLtype.LONG);
+			}
 			// Calculate output scope
 			ExpressionScope paramScope = outputScope.get(paramExprs.get(0));
 			if (paramExprs.size() == 1) {
@@ -655,17 +661,17 @@ public class TypeVisitor extends SkinnerVisitor {
 					+ "statement: " + arg0));
 		}
 		// Add casts to as required type if necessary
-		List<Expression> castedWhens = new ArrayList<>();
 		for (Expression expr : arg0.getWhenClauses()) {
 			SQLtype thisType = outputType.get(expr);
 			if (!thisType.equals(resultType)) {
-				Expression cast = newCast(expr, resultType);
-				castedWhens.add(cast);
-			} else {
-				castedWhens.add(expr);
+				// Cast result of when clause
+				WhenClause whenClause = (WhenClause)expr;
+				Expression cast = newCast(
+						whenClause.getThenExpression(), resultType);
+				whenClause.setThenExpression(cast);
+				outputType.put(whenClause, resultType);
 			}
 		}
-		arg0.setWhenClauses(castedWhens);
 		if (elseExpr != null) {
 			SQLtype elseType = outputType.get(elseExpr);
 			if (!elseType.equals(resultType)) {
@@ -3,15 +3,15 @@ package indexing;
 import buffer.BufferManager;
 import catalog.CatalogManager;
 import config.IndexingMode;
+import config.StartupConfig;
 import data.ColumnData;
 import data.DoubleData;
 import data.IntData;
+import diskio.SortOrderStore;
 import joining.join.wcoj.LFTJiter;
-import operators.Materialize;
 import query.ColumnRef;
 
 import java.util.*;
-import java.util.stream.IntStream;
 
 /**
  * Features utility functions for creating indexes.
@@ -72,101 +72,56 @@ public class Indexer {
 		System.out.println("Indexing took " + totalMillis + " ms.");
 	}
 
-	public static void buildSortIndices() {
-		System.out.println("Build sorted indices ...");
-		long startMillis = System.currentTimeMillis();
-		Map<String, List<String>> tableToAlias = new HashMap<>();
-		List<String> tableAlias = new ArrayList<>();
-		for (int i = 0; i < 100; i++)
-			tableAlias.add("e" + i);
-
-		tableToAlias.put("edge", tableAlias);
-		int l_card = CatalogManager.getCardinality("edge");
-
-		ColumnRef k_column1 = new ColumnRef("edge", "sid");
-		ColumnRef k_column2 = new ColumnRef("edge", "tid");
-
-		buildSortIndices(Arrays.asList(k_column1, k_column2), l_card, tableToAlias, LFTJiter.baseOrderCache);
-		buildSortIndices(Arrays.asList(k_column2, k_column1), l_card, tableToAlias, LFTJiter.baseOrderCache);
-
+	/**
+	 * Creates sort order of base table by given columns, reusing
+	 * the sort order stored on disk if available, and stores it
+	 * on disk unless stored already.
+	 *
+	 * @param columnRefs	sort by those (base table) columns
+	 * @param card			cardinality of base table
+	 */
+	public static void buildBaseSortIndex(List<ColumnRef> columnRefs, int card) {
 		try {
-
-			IntData columnData1 = (IntData) BufferManager.getData(k_column1);
-			IntData columnData2 = (IntData) BufferManager.getData(k_column2);
-			List<Integer> satisfyingRows = new ArrayList<>();
-			String tableName = "edge";
-			String filteredName = "filtered.edge";
-			List<String> columnNames = Arrays.asList("sid", "tid");
-			for (int i = 0; i < l_card; i++) {
-				if (columnData1.data[i] < columnData2.data[i]) {
-					satisfyingRows.add(i);
+			int[] tupleOrder = LFTJiter.baseOrderCache.computeIfAbsent(
+					columnRefs, columns -> {
+				List<ColumnData> trieCols = new ArrayList<>();
+				for (ColumnRef columnRef : columns) {
+					trieCols.add(BufferManager.getData(columnRef));
 				}
+				return baseSortOrder(columns, trieCols, card);
+			});
+			// Order may have been sorted during query processing
+			if (!SortOrderStore.isStored(columnRefs, card)) {
+				SortOrderStore.store(columnRefs, tupleOrder);
 			}
-
-			System.out.println("satisfyingRows:" + satisfyingRows.size());
-			Materialize.execute(tableName, columnNames,
-					satisfyingRows, null, filteredName, true);
-
-			l_card = CatalogManager.getCardinality(filteredName);
-
-			System.out.println("l_card:" + l_card);
-			k_column1 = new ColumnRef(filteredName, "sid");
-			k_column2 = new ColumnRef(filteredName, "tid");
-
-			tableToAlias = new HashMap<>();
-			tableToAlias.put(filteredName, tableAlias);
-
-			buildSortIndices(Arrays.asList(k_column1, k_column2), l_card, tableToAlias, LFTJiter.queryOrderCache);
-			buildSortIndices(Arrays.asList(k_column2, k_column1), l_card, tableToAlias, LFTJiter.queryOrderCache);
-
 		} catch (Exception e) {
+			System.err.println("Error sort indexing " + columnRefs);
 			e.printStackTrace();
 		}
-
-		long totalMillis = System.currentTimeMillis() - startMillis;
-		System.out.println("Sort Indexing took " + totalMillis + " ms.");
 	}
 
-	public static void buildSortIndices(List<ColumnRef> columnRefs, int card, Map<String, List<String>> tableToAlias, Map<List<ColumnRef>, int[]> cache) {
-		List<ColumnData> trieCols = new ArrayList<>();
-		//List<ColumnRef> trieRefs = new ArrayList<>();
-		for (ColumnRef columnRef : columnRefs) {
-			try {
-				trieCols.add(BufferManager.getData(columnRef));
-				//trieRefs.add(new ColumnRef(tableToAlias.get(columnRef.aliasName), columnRef.columnName));
-			} catch (Exception e) {
-				System.err.println("Error sort indexing " + columnRef);
-				e.printStackTrace();
-			}
-		}
-		int[] tupleOrder = IntStream.range(0, card).boxed().parallel().sorted(new Comparator<Integer>() {
-			@Override
-			public int compare(Integer row1, Integer row2) {
-				for (ColumnData colData : trieCols) {
-					int cmp = colData.compareRows(row1, row2);
-					if (cmp == 2) {
-						boolean row1null = colData.isNull.get(row1);
-						boolean row2null = colData.isNull.get(row2);
-						if (row1null && !row2null) {
-							return -1;
-						} else if (!row1null && row2null) {
-							return 1;
-						}
-					} else if (cmp != 0) {
-						return cmp;
-					}
-				}
-				return 0;
-			}
-		}).mapToInt(i -> i).toArray();
-		int n = tableToAlias.get(columnRefs.get(0).aliasName).size();
-		for (int i = 0; i < n; i++) {
-			List<ColumnRef> trieRefs = new ArrayList<>();
-			for (ColumnRef columnRef : columnRefs) {
-				trieRefs.add(new ColumnRef(tableToAlias.get(columnRef.aliasName).get(i), columnRef.columnName));
+	/**
+	 * Loads sort order of base table by given columns from disk
+	 * or sorts (and stores the result on disk if persisting sort
+	 * orders during query processing is activated).
+	 *
+	 * @param columnRefs	sort by those (base table) columns
+	 * @param columns		data of sort columns
+	 * @param card			cardinality of base table
+	 * @return				row indices in sort order
+	 */
+	public static int[] baseSortOrder(List<ColumnRef> columnRefs,
+			List<? extends ColumnData> columns, int card) {
+		int[] tupleOrder = SortOrderStore.load(columnRefs, card);
+		if (tupleOrder == null) {
+			long startMillis = System.currentTimeMillis();
+			tupleOrder = TupleSorter.sortedOrder(columnRefs, columns, card);
+			LFTJiter.sortTime += System.currentTimeMillis() - startMillis;
+			if (StartupConfig.PERSIST_SORT_ORDERS) {
+				SortOrderStore.store(columnRefs, tupleOrder);
 			}
-			cache.put(trieRefs, tupleOrder);
 		}
+		return tupleOrder;
 	}
 
 }
@@ -0,0 +1,292 @@
+package indexing;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import catalog.CatalogManager;
+import catalog.info.TableInfo;
+import config.StartupConfig;
+import diskio.DiskUtil;
+import diskio.PathUtil;
+import joining.join.wcoj.LFTJiter;
+import query.ColumnRef;
+
+/**
+ * Records which base table tries (i.e., sort orders by
+ * column sequences) are requested during join processing
+ * and keeps the most valuable sort orders in memory,
+ * within a configurable memory budget. Request statistics
+ * are stored on disk periodically and at shutdown so that
+ * they survive restarts.
+ */
+public class SortIndexAdvisor {
+	/**
+	 * Number of queries after which request
+	 * statistics are stored on disk.
+	 */
+	static final int STORE_INTERVAL = 100;
+	/**
+	 * Maps base table columns (table name followed by the
+	 * names of the sort columns) to the number of requests
+	 * for tries over those columns.
+	 */
+	static ConcurrentHashMap<List<String>, Long> requestCounts = null;
+	/**
+	 * Base table columns of tries requested by the current
+	 * query (those tries are never evicted after the query).
+	 */
+	static final Set<List<String>> queryRequests =
+			ConcurrentHashMap.newKeySet();
+	/**
+	 * Number of queries finished since request
+	 * statistics were last stored.
+	 */
+	static int nrUnstoredQueries = 0;
+	/**
+	 * Returns path of file storing request statistics.
+	 *
+	 * @return	path to statistics file
+	 */
+	static String statsPath() {
+		return Paths.get(PathUtil.dbDir, "sortorders", "requests.sdb").toString();
+	}
+	/**
+	 * Returns request statistics, loading them from
+	 * disk when accessed for the first time.
+	 *
+	 * @return	map from base table columns to request counts
+	 */
+	@SuppressWarnings("unchecked")
+	static synchronized Map<List<String>, Long> requestCounts() {
+		if (requestCounts == null) {
+			requestCounts = new ConcurrentHashMap<>();
+			if (new File(statsPath()).exists()) {
+				try {
+					requestCounts.putAll((Map<List<String>, Long>)
+							DiskUtil.loadObject(statsPath()));
+				} catch (Exception e) {
+					System.err.println("Error loading sort index statistics");
+				}
+			}
+			Runtime.getRuntime().addShutdownHook(
+					new Thread(SortIndexAdvisor::storeStats));
+		}
+		return requestCounts;
+	}
+	/**
+	 * Registers request for a trie over the given
+	 * base table columns.
+	 *
+	 * @param baseColumns	trie columns (all from the same base table)
+	 */
+	public static void recordRequest(List<ColumnRef> baseColumns) {
+		if (baseColumns.isEmpty()) {
+			return;
+		}
+		List<String> key = new ArrayList<>();
+		key.add(baseColumns.get(0).aliasName);
+		for (ColumnRef columnRef : baseColumns) {
+			key.add(columnRef.columnName);
+		}
+		requestCounts().merge(key, 1L, Long::sum);
+		queryRequests.add(key);
+	}
+	/**
+	 * Stores request statistics on disk.
+	 */
+	public static synchronized void storeStats() {
+		if (requestCounts == null || PathUtil.dbDir == null) {
+			return;
+		}
+		nrUnstoredQueries = 0;
+		try {
+			DiskUtil.storeObject(requestCounts, statsPath());
+		} catch (Exception e) {
+			System.err.println("Error storing sort index statistics");
+			e.printStackTrace();
+		}
+	}
+	/**
+	 * Returns sort columns associated with statistics key
+	 * or null if the columns do not (or no longer) exist.
+	 *
+	 * @param key	table name followed by column names
+	 * @return		list of column references or null
+	 */
+	static List<ColumnRef> columnRefs(List<String> key) {
+		TableInfo tableInfo = CatalogManager.currentDB.nameToTable.get(key.get(0));
+		if (tableInfo == null) {
+			return null;
+		}
+		List<ColumnRef> columnRefs = new ArrayList<>();
+		for (String columnName : key.subList(1, key.size())) {
+			if (!tableInfo.nameToCol.containsKey(columnName)) {
+				return null;
+			}
+			columnRefs.add(new ColumnRef(key.get(0), columnName));
+		}
+		return columnRefs;
+	}
+	/**
+	 * Estimates main memory consumption of a warm trie
+	 * (tuple order and sorted trie levels).
+	 *
+	 * @param columnRefs	trie columns
+	 * @return				estimated number of bytes
+	 */
+	static long memoryBytes(List<ColumnRef> columnRefs) {
+		int card = CatalogManager.getCardinality(columnRefs.get(0).aliasName);
+		return 4L * card * (1 + columnRefs.size());
+	}
+	/**
+	 * Returns memory budget for warm tries in bytes.
+	 *
+	 * @param budgetMB	budget in megabytes (negative to use
+	 * 					half of the maximal heap size)
+	 * @return			budget in bytes
+	 */
+	static long budgetBytes(long budgetMB) {
+		return budgetMB < 0 ? Runtime.getRuntime().maxMemory() / 2 :
+			budgetMB << 20;
+	}
+	/**
+	 * Estimates benefit of keeping trie warm per byte of
+	 * memory: requests times sorting cost per row.
+	 *
+	 * @param columnRefs	trie columns
+	 * @param nrRequests	number of requests for that trie
+	 * @return				estimated benefit per byte
+	 */
+	static double benefitPerByte(List<ColumnRef> columnRefs, long nrRequests) {
+		int card = CatalogManager.getCardinality(columnRefs.get(0).aliasName);
+		double sortCost = (double)card * Math.log(Math.max(card, 2)) *
+				columnRefs.size();
+		return nrRequests * sortCost / memoryBytes(columnRefs);
+	}
+	/**
+	 * Selects tries with highest benefit per byte (greedily)
+	 * until the memory budget is exhausted.
+	 *
+	 * @param budgetBytes	memory budget in bytes
+	 * @param candidates	consider those tries with request counts
+	 * @return				selected tries
+	 */
+	static List<List<ColumnRef>> select(long budgetBytes,
+			Map<List<ColumnRef>, Long> candidates) {
+		List<List<ColumnRef>> ranked = new ArrayList<>(candidates.keySet());
+		ranked.sort((cols1, cols2) -> Double.compare(
+				benefitPerByte(cols2, candidates.get(cols2)),
+				benefitPerByte(cols1, candidates.get(cols1))));
+		List<List<ColumnRef>> selected = new ArrayList<>();
+		long usedBytes = 0;
+		for (List<ColumnRef> columnRefs : ranked) {
+			long bytes = memoryBytes(columnRefs);
+			if (usedBytes + bytes <= budgetBytes) {
+				selected.add(columnRefs);
+				usedBytes += bytes;
+			}
+		}
+		return selected;
+	}
+	/**
+	 * Returns valid tries from the request statistics,
+	 * associated with their number of requests.
+	 *
+	 * @return	map from trie columns to request counts
+	 */
+	static Map<List<ColumnRef>, Long> requestedTries() {
+		Map<List<ColumnRef>, Long> tries = new ConcurrentHashMap<>();
+		for (Entry<List<String>, Long> entry : requestCounts().entrySet()) {
+			List<ColumnRef> columnRefs = columnRefs(entry.getKey());
+			if (columnRefs != null) {
+				tries.put(columnRefs, entry.getValue());
+			}
+		}
+		return tries;
+	}
+	/**
+	 * Precomputes sort orders for the most frequently requested
+	 * tries that fit into the memory budget and evicts all other
+	 * base table tries from memory.
+	 *
+	 * @param budgetMB	memory budget in megabytes (negative to
+	 * 					use half of the maximal heap size)
+	 */
+	public static void buildAdvisedIndices(long budgetMB) {
+		System.out.println("Build advised sort indices ...");
+		long startMillis = System.currentTimeMillis();
+		Map<List<ColumnRef>, Long> tries = requestedTries();
+		List<List<ColumnRef>> selected = select(budgetBytes(budgetMB), tries);
+		for (List<ColumnRef> columnRefs : selected) {
+			System.out.println("Sort index on " + columnRefs +
+					" (" + tries.get(columnRefs) + " requests)");
+			int card = CatalogManager.getCardinality(columnRefs.get(0).aliasName);
+			Indexer.buildBaseSortIndex(columnRefs, card);
+		}
+		LFTJiter.retainBaseCache(new HashSet<>(selected));
+		long totalMillis = System.currentTimeMillis() - startMillis;
+		System.out.println("Sort Indexing took " + totalMillis + " ms.");
+	}
+	/**
+	 * Builds and stores sort orders of the given table for the
+	 * most frequently requested tries that fit into the memory
+	 * budget (called after loading new table content).
+	 *
+	 * @param table	name of base table
+	 */
+	public static void tableLoaded(String table) {
+		Map<List<ColumnRef>, Long> tries = requestedTries();
+		tries.keySet().removeIf(columnRefs ->
+				!columnRefs.get(0).aliasName.equals(table));
+		int card = CatalogManager.getCardinality(table);
+		long budgetBytes = budgetBytes(StartupConfig.SORT_INDEX_BUDGET_MB);
+		for (List<ColumnRef> columnRefs : select(budgetBytes, tries)) {
+			System.out.println("Sort index on " + columnRefs +
+					" (" + tries.get(columnRefs) + " requests)");
+			Indexer.buildBaseSortIndex(columnRefs, card);
+		}
+	}
+	/**
+	 * Evicts base table tries with lowest benefit per byte if
+	 * cached tries exceed the memory budget, keeping all tries
+	 * requested by the finished query, and stores statistics
+	 * periodically (called after each query).
+	 */
+	public static void queryFinished() {
+		synchronized (SortIndexAdvisor.class) {
+			if (++nrUnstoredQueries >= STORE_INTERVAL) {
+				storeStats();
+			}
+		}
+		Map<List<ColumnRef>, Long> tries = requestedTries();
+		Set<List<ColumnRef>> cached = new HashSet<>(
+				LFTJiter.baseOrderCache.keySet());
+		tries.keySet().retainAll(cached);
+		// Tries of finished query count against the budget first
+		long budgetBytes = budgetBytes(StartupConfig.SORT_INDEX_BUDGET_MB);
+		Set<List<ColumnRef>> selected = new HashSet<>();
+		for (List<String> key : queryRequests) {
+			List<ColumnRef> columnRefs = columnRefs(key);
+			if (columnRefs != null && tries.remove(columnRefs) != null) {
+				selected.add(columnRefs);
+				budgetBytes -= memoryBytes(columnRefs);
+			}
+		}
+		queryRequests.clear();
+		selected.addAll(select(Math.max(budgetBytes, 0), tries));
+		if (!selected.containsAll(cached)) {
+			cached.removeAll(selected);
+			System.out.println("Evicting sort indices " +
+					Arrays.toString(cached.toArray()));
+			LFTJiter.retainBaseCache(selected);
+		}
+	}
+}
@@ -0,0 +1,383 @@
+package indexing;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+import data.ColumnData;
+import data.DoubleData;
+import data.IntData;
+import data.LongData;
+import query.ColumnRef;
+
+/**
+ * Sorts table rows by the values in a sequence of
+ * columns and returns the resulting row order. Integer
+ * columns are sorted via a parallel LSD radix sort on
+ * primitive keys; other columns are sorted via a
+ * parallel merge sort. Both sorts are stable (i.e.,
+ * rows with equal keys appear in ascending row order).
+ * Rows with NULL values in numerical columns are sorted
+ * by the value stored for them, like tries iterating
+ * over the raw column data expect.
+ */
+public class TupleSorter {
+	/**
+	 * Number of key bits processed per radix sort pass.
+	 */
+	static final int RADIX_BITS = 11;
+	/**
+	 * Number of buckets per radix sort pass.
+	 */
+	static final int NR_BUCKETS = 1 << RADIX_BITS;
+	/**
+	 * Mask to extract bucket from shifted key.
+	 */
+	static final int BUCKET_MASK = NR_BUCKETS - 1;
+	/**
+	 * Minimal number of rows per parallel sort task.
+	 */
+	static final int MIN_CHUNK_SIZE = 1 << 16;
+	/**
+	 * Use insertion sort for ranges up to that size
+	 * when merge sorting.
+	 */
+	static final int INSERTION_SORT_SIZE = 32;
+	/**
+	 * Accumulated time spent sorting in milliseconds.
+	 */
+	public static long sortMillis = 0;
+	/**
+	 * Compares two rows.
+	 */
+	interface RowComparator {
+		/**
+		 * Compares two rows by their values.
+		 *
+		 * @param row1	first row
+		 * @param row2	second row
+		 * @return		negative, zero, or positive number if the first
+		 * 				row is smaller, equal, or larger than the second
+		 */
+		int compare(int row1, int row2);
+	}
+	/**
+	 * Returns row indices of the given columns sorted by
+	 * the column values (in the order of columns) and
+	 * reports sort throughput for this column set.
+	 *
+	 * @param columnRefs	references to columns (for reporting)
+	 * @param columns		sort by data in those columns
+	 * @param card			number of rows to sort
+	 * @return				row indices in sort order
+	 */
+	public static int[] sortedOrder(List<ColumnRef> columnRefs,
+			List<? extends ColumnData> columns, int card) {
+		long startMillis = System.currentTimeMillis();
+		int nrColumns = columns.size();
+		// Try to encode columns as unsigned integer keys
+		boolean useRadix = true;
+		IntData[] intCols = new IntData[nrColumns];
+		int[] minValues = new int[nrColumns];
+		long[] keyRanges = new long[nrColumns];
+		for (int colCtr=0; colCtr<nrColumns && useRadix; ++colCtr) {
+			ColumnData column = columns.get(colCtr);
+			if (column instanceof IntData) {
+				IntData intCol = (IntData)column;
+				intCols[colCtr] = intCol;
+				int minValue = IntStream.range(0, card).parallel().
+						map(row -> intCol.data[row]).min().orElse(0);
+				int maxValue = IntStream.range(0, card).parallel().
+						map(row -> intCol.data[row]).max().orElse(0);
+				minValues[colCtr] = minValue;
+				keyRanges[colCtr] = (long)maxValue - minValue;
+				useRadix = keyRanges[colCtr] <= 0xFFFFFFFFL;
+			} else {
+				useRadix = false;
+			}
+		}
+		int[] order = useRadix ?
+				radixSort(intCols, minValues, keyRanges, card) :
+				mergeSort(rowComparator(columns), card);
+		long totalMillis = System.currentTimeMillis() - startMillis;
+		sortMillis += totalMillis;
+		System.out.println("Sorted " + card + " rows by " + columnRefs +
+				(useRadix ? " (radix sort)" : " (merge sort)") +
+				" in " + totalMillis + " ms (" +
+				card / Math.max(totalMillis, 1) + " rows/ms)");
+		return order;
+	}
+	/**
+	 * Derives sort order of a filtered table from the sort
+	 * order of its base table (by the same columns) in linear
+	 * time. Requires that the filtered table contains base
+	 * rows in ascending order, so the result is the same as
+	 * (stably) sorting the filtered table itself.
+	 *
+	 * @param baseOrder	base table rows in sort order
+	 * @param baseRows	base row of each filtered row (ascending)
+	 * @return			filtered table rows in sort order
+	 */
+	public static int[] restrictedOrder(int[] baseOrder, int[] baseRows) {
+		long startMillis = System.currentTimeMillis();
+		int[] baseToFiltered = new int[baseOrder.length];
+		Arrays.fill(baseToFiltered, -1);
+		IntStream.range(0, baseRows.length).parallel().forEach(
+				row -> baseToFiltered[baseRows[row]] = row);
+		int[] order = IntStream.of(baseOrder).parallel().
+				map(row -> baseToFiltered[row]).filter(row -> row >= 0).toArray();
+		long totalMillis = System.currentTimeMillis() - startMillis;
+		sortMillis += totalMillis;
+		System.out.println("Derived order of " + order.length +
+				" rows from base order in " + totalMillis + " ms");
+		return order;
+	}
+	/**
+	 * Returns comparator that compares rows by values in
+	 * given columns.
+	 *
+	 * @param columns	compare rows by values in those columns
+	 * @return			comparator for rows
+	 */
+	static RowComparator rowComparator(List<? extends ColumnData> columns) {
+		return (row1, row2) -> {
+			for (ColumnData colData : columns) {
+				int cmp = compareValues(colData, row1, row2);
+				if (cmp != 0) {
+					return cmp;
+				}
+			}
+			return 0;
+		};
+	}
+	/**
+	 * Compares values stored for two rows in a column. Numerical
+	 * values are compared regardless of NULL flags (consistent
+	 * with the radix sort), NULL strings are sorted first.
+	 *
+	 * @param colData	column containing rows
+	 * @param row1		first row
+	 * @param row2		second row
+	 * @return			negative, zero, or positive number if the first
+	 * 					row is smaller, equal, or larger than the second
+	 */
+	static int compareValues(ColumnData colData, int row1, int row2) {
+		if (colData instanceof IntData) {
+			int[] data = ((IntData)colData).data;
+			return Integer.compare(data[row1], data[row2]);
+		} else if (colData instanceof LongData) {
+			long[] data = ((LongData)colData).data;
+			return Long.compare(data[row1], data[row2]);
+		} else if (colData instanceof DoubleData) {
+			double[] data = ((DoubleData)colData).data;
+			return Double.compare(data[row1], data[row2]);
+		}
+		int cmp = colData.compareRows(row1, row2);
+		if (cmp == 2) {
+			boolean row1null = colData.isNull.get(row1);
+			boolean row2null = colData.isNull.get(row2);
+			if (row1null && !row2null) {
+				return -1;
+			} else if (!row1null && row2null) {
+				return 1;
+			}
+			return 0;
+		}
+		return cmp;
+	}
+	/**
+	 * Returns number of chunks into which to divide
+	 * given number of rows for parallel processing.
+	 *
+	 * @param card	number of rows
+	 * @return		number of chunks
+	 */
+	static int nrChunks(int card) {
+		int maxChunks = ForkJoinPool.getCommonPoolParallelism() * 4;
+		int chunks = (card + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE;
+		return Math.max(1, Math.min(maxChunks, chunks));
+	}
+	/**
+	 * Sorts rows via LSD radix sort, starting with the least
+	 * significant column. Each column value is encoded as
+	 * unsigned key (value minus column minimum).
+	 *
+	 * @param columns	integer columns to sort by
+	 * @param minValues	minimal value in each column
+	 * @param keyRanges	maximal encoded key for each column
+	 * @param card		number of rows to sort
+	 * @return			row indices in sort order
+	 */
+	static int[] radixSort(IntData[] columns, int[] minValues,
+			long[] keyRanges, int card) {
+		int[] order = new int[card];
+		Arrays.parallelSetAll(order, row -> row);
+		int[] keys = new int[card];
+		int[] tmpOrder = new int[card];
+		int[] tmpKeys = new int[card];
+		int nrChunks = nrChunks(card);
+		int chunkSize = (card + nrChunks - 1) / nrChunks;
+		int[][] bucketOffsets = new int[nrChunks][NR_BUCKETS];
+		for (int colCtr=columns.length-1; colCtr>=0; --colCtr) {
+			int nrBits = 64 - Long.numberOfLeadingZeros(keyRanges[colCtr]);
+			if (nrBits == 0) {
+				// All keys are equal
+				continue;
+			}
+			// Encode keys in current row order
+			int[] data = columns[colCtr].data;
+			int minValue = minValues[colCtr];
+			final int[] curOrder = order;
+			Arrays.parallelSetAll(keys, i -> data[curOrder[i]] - minValue);
+			// One stable counting sort pass per digit
+			for (int shift=0; shift<nrBits; shift+=RADIX_BITS) {
+				final int curShift = shift;
+				final int[] srcKeys = keys;
+				final int[] srcOrder = order;
+				final int[] dstKeys = tmpKeys;
+				final int[] dstOrder = tmpOrder;
+				// Count bucket sizes per chunk
+				IntStream.range(0, nrChunks).parallel().forEach(chunk -> {
+					int[] counts = bucketOffsets[chunk];
+					Arrays.fill(counts, 0);
+					int end = Math.min(card, (chunk + 1) * chunkSize);
+					for (int i=chunk*chunkSize; i<end; ++i) {
+						++counts[(srcKeys[i] >>> curShift) & BUCKET_MASK];
+					}
+				});
+				// Calculate write offsets (bucket-major order)
+				int offset = 0;
+				for (int bucket=0; bucket<NR_BUCKETS; ++bucket) {
+					for (int chunk=0; chunk<nrChunks; ++chunk) {
+						int count = bucketOffsets[chunk][bucket];
+						bucketOffsets[chunk][bucket] = offset;
+						offset += count;
+					}
+				}
+				// Scatter keys and rows
+				IntStream.range(0, nrChunks).parallel().forEach(chunk -> {
+					int[] offsets = bucketOffsets[chunk];
+					int end = Math.min(card, (chunk + 1) * chunkSize);
+					for (int i=chunk*chunkSize; i<end; ++i) {
+						int key = srcKeys[i];
+						int pos = offsets[(key >>> curShift) & BUCKET_MASK]++;
+						dstKeys[pos] = key;
+						dstOrder[pos] = srcOrder[i];
+					}
+				});
+				// Swap source and target
+				tmpKeys = keys;
+				keys = dstKeys;
+				tmpOrder = order;
+				order = dstOrder;
+			}
+		}
+		return order;
+	}
+	/**
+	 * Sorts rows via parallel merge sort using the
+	 * given comparator.
+	 *
+	 * @param comparator	compares rows
+	 * @param card			number of rows to sort
+	 * @return				row indices in sort order
+	 */
+	static int[] mergeSort(RowComparator comparator, int card) {
+		int[] order = new int[card];
+		Arrays.parallelSetAll(order, row -> row);
+		int[] buffer = new int[card];
+		ForkJoinPool.commonPool().invoke(
+				new MergeSortTask(comparator, order, buffer, 0, card));
+		return order;
+	}
+	/**
+	 * Sorts a range of rows via merge sort, sorting
+	 * both halves in parallel for large ranges.
+	 */
+	static class MergeSortTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final RowComparator comparator;
+		final int[] order;
+		final int[] buffer;
+		final int from;
+		final int to;
+		/**
+		 * Initializes task for sorting rows in range.
+		 *
+		 * @param comparator	compares rows
+		 * @param order			rows to sort (sorted in place)
+		 * @param buffer		buffer of same size as order
+		 * @param from			start of range (inclusive)
+		 * @param to			end of range (exclusive)
+		 */
+		MergeSortTask(RowComparator comparator, int[] order,
+				int[] buffer, int from, int to) {
+			this.comparator = comparator;
+			this.order = order;
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+		}
+		@Override
+		protected void compute() {
+			if (to - from <= MIN_CHUNK_SIZE) {
+				sortSequential(from, to);
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new MergeSortTask(comparator, order, buffer, from, middle),
+						new MergeSortTask(comparator, order, buffer, middle, to));
+				merge(from, middle, to);
+			}
+		}
+		/**
+		 * Sorts range sequentially.
+		 *
+		 * @param from	start of range (inclusive)
+		 * @param to	end of range (exclusive)
+		 */
+		void sortSequential(int from, int to) {
+			if (to - from <= INSERTION_SORT_SIZE) {
+				for (int i=from+1; i<to; ++i) {
+					int row = order[i];
+					int j = i - 1;
+					while (j >= from && comparator.compare(order[j], row) > 0) {
+						order[j + 1] = order[j];
+						--j;
+					}
+					order[j + 1] = row;
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				sortSequential(from, middle);
+				sortSequential(middle, to);
+				merge(from, middle, to);
+			}
+		}
+		/**
+		 * Merges two adjacent sorted ranges.
+		 *
+		 * @param from		start of first range
+		 * @param middle	start of second range
+		 * @param to		end of second range
+		 */
+		void merge(int from, int middle, int to) {
+			// Already in order?
+			if (comparator.compare(order[middle - 1], order[middle]) <= 0) {
+				return;
+			}
+			System.arraycopy(order, from, buffer, from, to - from);
+			int left = from;
+			int right = middle;
+			for (int i=from; i<to; ++i) {
+				if (right >= to || (left < middle &&
+						comparator.compare(buffer[left], buffer[right]) <= 0)) {
+					order[i] = buffer[left++];
+				} else {
+					order[i] = buffer[right++];
+				}
+			}
+		}
+	}
+}
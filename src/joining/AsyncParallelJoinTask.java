@@ -1,14 +1,12 @@
 package joining;
 
 import config.JoinConfig;
-import joining.join.wcoj.Hypercube;
 import joining.join.wcoj.HypercubeManager;
-import joining.join.wcoj.LFTJoin;
+import joining.result.ResultBuffer;
 import joining.uct.ParallelUctNodeLFTJ;
 import joining.uct.SelectionPolicy;
 import query.QueryInfo;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -26,10 +24,29 @@ public class AsyncParallelJoinTask implements Callable<ParallelJoinResult> {
     final int threadId;
 
     public AsyncParallelJoinTask(QueryInfo query, ParallelUctNodeLFTJ uctNodeLFTJ, int threadId) {
+        this(query, uctNodeLFTJ, threadId, null, false);
+    }
+
+    public AsyncParallelJoinTask(QueryInfo query, ParallelUctNodeLFTJ uctNodeLFTJ, int threadId,
+                                 ResultBuffer resultBuffer, boolean factorize) {
+        this(query, uctNodeLFTJ, new ParallelLFTJ(threadId, resultBuffer,
+                factorize, query.episodeMillis));
+    }
+
+    /**
+     * Initializes task sampling the given tree and executing
+     * episodes via the given join operator.
+     *
+     * @param query        query to process
+     * @param uctNodeLFTJ  root of UCT tree shared by all tasks
+     * @param parallelLFTJ executes episodes for attribute orders
+     */
+    public AsyncParallelJoinTask(QueryInfo query, ParallelUctNodeLFTJ uctNodeLFTJ,
+                                 ParallelLFTJ parallelLFTJ) {
         this.query = query;
-        this.parallelLFTJ = new ParallelLFTJ();
+        this.parallelLFTJ = parallelLFTJ;
         this.root = uctNodeLFTJ;
-        this.threadId = threadId;
+        this.threadId = parallelLFTJ.threadId;
     }
 
     @Override
@@ -41,35 +58,18 @@ public class AsyncParallelJoinTask implements Callable<ParallelJoinResult> {
         long totalExecMillis = 0;
         long startMillis = System.currentTimeMillis();
         while (!this.parallelLFTJ.isFinish) {
-            // sample attribute order
+            // sample attribute order (all threads share the tree)
             long beforeSampleMillis = System.nanoTime();
-            if (threadId == 0) {
-                int roundCtrInt = roundCtr.incrementAndGet();
-                root.sample(roundCtrInt, attributeOrder, policy, parallelLFTJ, threadId);
-            } else {
-                int[] optimalOrder = new int[query.nrAttribute];
-                Arrays.fill(optimalOrder, -1);
-                root.getOptimalOrder(optimalOrder);
-                boolean existOptimalOrder = true;
-                for (int attribute:optimalOrder) {
-                    if (attribute == -1) {
-                        existOptimalOrder = false;
-                        break;
-                    }
-                }
-                if (existOptimalOrder) {
-                    parallelLFTJ.execute(optimalOrder);
-                } else {
-                    long roundCtrInt = roundCtr.incrementAndGet();
-                    root.sample(roundCtrInt, attributeOrder, policy, parallelLFTJ, threadId);
-                }
-            }
+            int roundCtrInt = roundCtr.incrementAndGet();
+            root.sample(roundCtrInt, attributeOrder, policy, parallelLFTJ);
             long afterSampleMillis = System.nanoTime();
+            // Grow episodes while best order remains stable
+            int[] bestOrder = new int[query.nrAttribute];
+            Arrays.fill(bestOrder, -1);
+            root.getOptimalOrder(bestOrder);
+            parallelLFTJ.episodeBudget.bestOrder(bestOrder);
             if (HypercubeManager.nrCube.get() == 0 && HypercubeManager.isFinished()) {
-                // notify other thread to terminate
-                for (int i = 0; i < JoinConfig.NTHREAD; i++) {
-                    HypercubeManager.hypercubes.add(new Hypercube(new ArrayList<>()));
-                }
+                // other threads detect termination when allocating cubes
                 break;
             }
             totalExecMillis += (afterSampleMillis - beforeSampleMillis);
@@ -86,14 +86,14 @@ public class AsyncParallelJoinTask implements Callable<ParallelJoinResult> {
         System.out.println("thread:" + Thread.currentThread().getId() + ", best join order:" + Arrays.toString(optimalOrder));
         System.out.println("thread:" + Thread.currentThread().getId() + ", most frequent join order:" + Arrays.toString(bestFreqOrder));
         System.out.println("thread:" + Thread.currentThread().getId() + ", wait time in ms:" + parallelLFTJ.waitTime);
-        System.out.println("thread:" + Thread.currentThread().getId() + ", seek time in ms:" + parallelLFTJ.orderToLFTJ.values().stream().mapToLong(i -> {
-            long ts = 0;
-            for (LFTJoin join : i.joins) {
-                ts += join.seekTime;
-            }
-            return ts;
-        }).sum());
-        return new ParallelJoinResult(parallelLFTJ.resultTuple);
+        System.out.println("thread:" + Thread.currentThread().getId() + ", episode budget:" +
+                parallelLFTJ.episodeBudget.nextBudget() + " (" + parallelLFTJ.episodeBudget.targetMillis() +
+                " ms, " + parallelLFTJ.episodeBudget.nanosPerStep() + " ns per step)");
+        System.out.println("thread:" + Thread.currentThread().getId() + ", nr. steals:" + HypercubeManager.nrSteals[threadId]);
+        System.out.println("thread:" + Thread.currentThread().getId() + ", idle time in ms:" + HypercubeManager.idleNanos[threadId] / 1000000);
+        System.out.println("thread:" + Thread.currentThread().getId() + ", nr. seeks:" + parallelLFTJ.orderToLFTJ.nrSeeks());
+        return new ParallelJoinResult(parallelLFTJ.resultTuple,
+                parallelLFTJ.resultBuffer, parallelLFTJ.factorizedResults());
     }
 
 }
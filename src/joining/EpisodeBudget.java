@@ -0,0 +1,121 @@
+package joining;
+
+import config.JoinConfig;
+
+import java.util.Arrays;
+
+/**
+ * Calibrates the budget (in search steps) of join episodes
+ * executed by one thread such that episodes take a targeted
+ * amount of wall time. The time per search step is measured
+ * over past episodes. The targeted time per episode starts
+ * small, allowing to try many attribute orders quickly, and
+ * grows while the best attribute order remains the same.
+ */
+public class EpisodeBudget {
+    /**
+     * Episodes never receive fewer steps than that.
+     */
+    static final int MIN_BUDGET = 1000;
+    /**
+     * Weight of the last episode when averaging
+     * the time per step.
+     */
+    static final double NANOS_DECAY = 0.2;
+    /**
+     * Targeted episode time is multiplied by this
+     * factor whenever the best order is confirmed.
+     */
+    static final double GROWTH = 2;
+    /**
+     * Targeted time per episode once the best
+     * attribute order is stable (in milliseconds).
+     */
+    final double maxMillis;
+    /**
+     * Currently targeted time per episode in milliseconds.
+     */
+    double targetMillis;
+    /**
+     * Average wall time per search step in nanoseconds
+     * (negative until first measurement).
+     */
+    double nanosPerStep = -1;
+    /**
+     * Best attribute order after the last episode.
+     */
+    int[] bestOrder = null;
+
+    /**
+     * Initializes budget with given target time per episode.
+     *
+     * @param maxMillis targeted time per episode (in ms) once
+     *                  the best attribute order is stable
+     */
+    public EpisodeBudget(double maxMillis) {
+        this.maxMillis = maxMillis;
+        this.targetMillis = Math.min(maxMillis, JoinConfig.EPISODE_START_MILLIS);
+    }
+
+    /**
+     * Returns number of steps for the next episode (the
+     * default budget as long as no time was measured).
+     *
+     * @return budget of next episode
+     */
+    public int nextBudget() {
+        if (!JoinConfig.CALIBRATE_BUDGET || nanosPerStep <= 0) {
+            return JoinConfig.BUDGET_PER_EPISODE;
+        }
+        double budget = targetMillis * 1E6 / nanosPerStep;
+        return (int) Math.max(MIN_BUDGET, Math.min(budget, Integer.MAX_VALUE / 2));
+    }
+
+    /**
+     * Updates average time per step after an episode.
+     *
+     * @param nrSteps number of steps in episode
+     * @param nanos   duration of episode in nanoseconds
+     */
+    public void episodeDone(long nrSteps, long nanos) {
+        if (nrSteps > 0) {
+            double nanosPerStep = (double) nanos / nrSteps;
+            this.nanosPerStep = this.nanosPerStep <= 0 ? nanosPerStep :
+                    this.nanosPerStep + NANOS_DECAY * (nanosPerStep - this.nanosPerStep);
+        }
+    }
+
+    /**
+     * Grows targeted episode time if the best attribute order
+     * did not change since the last episode and resets it to
+     * the initial time otherwise.
+     *
+     * @param order best attribute order after last episode
+     */
+    public void bestOrder(int[] order) {
+        if (bestOrder != null && Arrays.equals(bestOrder, order)) {
+            targetMillis = Math.min(maxMillis, targetMillis * GROWTH);
+        } else {
+            targetMillis = Math.min(maxMillis, JoinConfig.EPISODE_START_MILLIS);
+            bestOrder = order.clone();
+        }
+    }
+
+    /**
+     * Returns currently targeted time per episode.
+     *
+     * @return targeted episode time in milliseconds
+     */
+    public double targetMillis() {
+        return targetMillis;
+    }
+
+    /**
+     * Returns average time per step.
+     *
+     * @return nanoseconds per step (negative if unknown)
+     */
+    public double nanosPerStep() {
+        return nanosPerStep;
+    }
+}
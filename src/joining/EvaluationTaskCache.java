@@ -0,0 +1,211 @@
+package joining;
+
+import config.JoinConfig;
+import joining.join.wcoj.HyperCubeEvaluationTask;
+import joining.join.wcoj.LFTJoin;
+import joining.plan.AttributeOrder;
+import joining.result.FactorizedResult;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the evaluation tasks created by one join thread for the
+ * attribute orders it executed, so that iterators and frames are
+ * reused when an order is selected again. Tries are shared by all
+ * tasks of an order (via StaticLFTJCollections), hence tasks only
+ * hold per-thread iteration state. The cache is bounded by an
+ * estimate of the memory used by tasks and evicts the least
+ * recently used task once the limit is exceeded. Statistics and
+ * factorized results of evicted tasks are retained.
+ */
+public class EvaluationTaskCache {
+    /**
+     * Cached tasks in order of their last access.
+     */
+    final LinkedHashMap<AttributeOrder, HyperCubeEvaluationTask> tasks =
+            new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Memory limit for cached tasks in bytes.
+     */
+    final long maxBytes;
+    /**
+     * Estimated memory used by cached tasks in bytes.
+     */
+    long nrBytes = 0;
+    /**
+     * Maximal memory used by cached tasks in bytes.
+     */
+    public long maxUsedBytes = 0;
+    /**
+     * Number of lookups that found a cached task.
+     */
+    public long nrHits = 0;
+    /**
+     * Number of lookups that found no cached task.
+     */
+    public long nrMisses = 0;
+    /**
+     * Number of tasks evicted from the cache.
+     */
+    public long nrEvictions = 0;
+    /**
+     * Factorized results collected by evicted tasks.
+     */
+    final List<FactorizedResult> evictedResults = new ArrayList<>();
+    /**
+     * Number of seeks per table and strategy performed
+     * by iterators of evicted tasks (null until the
+     * first task is evicted).
+     */
+    long[][] evictedSeeks = null;
+
+    /**
+     * Initializes cache with the configured memory limit.
+     */
+    public EvaluationTaskCache() {
+        this.maxBytes = JoinConfig.TASK_CACHE_KB * 1024L;
+    }
+
+    /**
+     * Returns cached task for the given attribute order
+     * and marks it as most recently used.
+     *
+     * @param order attribute order
+     * @return cached task or null
+     */
+    public HyperCubeEvaluationTask get(AttributeOrder order) {
+        HyperCubeEvaluationTask task = tasks.get(order);
+        if (task != null) {
+            ++nrHits;
+        } else {
+            ++nrMisses;
+        }
+        return task;
+    }
+
+    /**
+     * Inserts task for the given attribute order and evicts
+     * least recently used tasks while the memory limit is
+     * exceeded (the new task is always kept).
+     *
+     * @param order attribute order
+     * @param task  evaluation task for that order
+     */
+    public void put(AttributeOrder order, HyperCubeEvaluationTask task) {
+        tasks.put(order, task);
+        nrBytes += task.estimatedBytes;
+        maxUsedBytes = Math.max(maxUsedBytes, nrBytes);
+        Iterator<Map.Entry<AttributeOrder, HyperCubeEvaluationTask>> entries =
+                tasks.entrySet().iterator();
+        while (nrBytes > maxBytes && tasks.size() > 1) {
+            HyperCubeEvaluationTask evicted = entries.next().getValue();
+            entries.remove();
+            nrBytes -= evicted.estimatedBytes;
+            retain(evicted);
+            ++nrEvictions;
+        }
+    }
+
+    /**
+     * Keeps factorized result and seek counts of a task
+     * that is removed from the cache.
+     *
+     * @param task evicted task
+     */
+    void retain(HyperCubeEvaluationTask task) {
+        if (task.factorizedResult != null) {
+            evictedResults.add(task.factorizedResult);
+        }
+        LFTJoin[] joins = task.joins;
+        if (evictedSeeks == null) {
+            evictedSeeks = new long[joins.length][];
+            for (int aliasCtr = 0; aliasCtr < joins.length; ++aliasCtr) {
+                evictedSeeks[aliasCtr] = new long[joins[aliasCtr].nrSeeksByStrategy.length];
+            }
+        }
+        for (int aliasCtr = 0; aliasCtr < joins.length; ++aliasCtr) {
+            long[] seeks = joins[aliasCtr].nrSeeksByStrategy;
+            for (int strategy = 0; strategy < seeks.length; ++strategy) {
+                evictedSeeks[aliasCtr][strategy] += seeks[strategy];
+            }
+        }
+    }
+
+    /**
+     * Returns tasks that are currently cached.
+     *
+     * @return cached tasks
+     */
+    public Collection<HyperCubeEvaluationTask> cached() {
+        return tasks.values();
+    }
+
+    /**
+     * Returns factorized results of all tasks
+     * created by this thread (cached or evicted).
+     *
+     * @return list of factorized results
+     */
+    public List<FactorizedResult> factorizedResults() {
+        List<FactorizedResult> results = new ArrayList<>(evictedResults);
+        for (HyperCubeEvaluationTask task : tasks.values()) {
+            if (task.factorizedResult != null) {
+                results.add(task.factorizedResult);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Adds the number of seeks per table and strategy of
+     * all tasks created by this thread to given counts.
+     *
+     * @param nrSeeksByStrategy seeks by table and strategy ordinal
+     */
+    public void addSeeksByStrategy(long[][] nrSeeksByStrategy) {
+        if (evictedSeeks != null) {
+            for (int aliasCtr = 0; aliasCtr < evictedSeeks.length; ++aliasCtr) {
+                for (int strategy = 0; strategy < evictedSeeks[aliasCtr].length; ++strategy) {
+                    nrSeeksByStrategy[aliasCtr][strategy] += evictedSeeks[aliasCtr][strategy];
+                }
+            }
+        }
+        for (HyperCubeEvaluationTask task : tasks.values()) {
+            LFTJoin[] joins = task.joins;
+            for (int aliasCtr = 0; aliasCtr < joins.length; ++aliasCtr) {
+                long[] seeks = joins[aliasCtr].nrSeeksByStrategy;
+                for (int strategy = 0; strategy < seeks.length; ++strategy) {
+                    nrSeeksByStrategy[aliasCtr][strategy] += seeks[strategy];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of seeks performed by iterators
+     * of all tasks created by this thread.
+     *
+     * @return total number of seeks
+     */
+    public long nrSeeks() {
+        long nrSeeks = 0;
+        if (evictedSeeks != null) {
+            for (long[] seeks : evictedSeeks) {
+                for (long seeksByStrategy : seeks) {
+                    nrSeeks += seeksByStrategy;
+                }
+            }
+        }
+        for (HyperCubeEvaluationTask task : tasks.values()) {
+            for (LFTJoin join : task.joins) {
+                nrSeeks += join.nrSeeks;
+            }
+        }
+        return nrSeeks;
+    }
+}
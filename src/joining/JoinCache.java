@@ -1,17 +1,214 @@
-//package joining;
-//
-//import joining.plan.AttributeOrder;
-//import util.Pair;
-//
-//import java.util.HashMap;
-//import java.util.HashSet;
-//import java.util.Set;
-//import java.util.concurrent.ConcurrentHashMap;
-//
-//public class JoinCache {
-//
-//    public static HashMap<AttributeOrder, HashMap<Integer, Pair<Set<Integer>, Set<Integer>>>> hashMetaData;
-//
-//    public static ConcurrentHashMap<Set<Pair<Integer, Integer>>, Long> cacheResult;
-//
-//}
+package joining;
+
+import config.JoinConfig;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the number of join result tuples obtained for a suffix
+ * of an attribute order, given the values of the prior variables
+ * on which that suffix depends. Entries are shared by all join
+ * threads and attribute orders: the count only depends on the
+ * set of suffix variables, not on their order.
+ * <p>
+ * Keys are stored as primitive words: the first word is a bit
+ * mask of the global attribute indices in the suffix, followed
+ * by the values of the dependencies and by the hypercube bounds
+ * of the suffix variables (see CacheAttribute).
+ * The cache is set-associative with a fixed number of slots,
+ * determined by the configured memory limit, and evicts the
+ * least recently used entry of a set when inserting into a full
+ * set. Sets are protected by striped locks.
+ */
+public class JoinCache {
+    /**
+     * Number of entries per set.
+     */
+    static final int WAYS = 4;
+    /**
+     * Number of locks protecting sets.
+     */
+    static final int NR_LOCKS = 64;
+    /**
+     * Locks protecting sets (sets are assigned
+     * to locks by their index modulo the number
+     * of locks).
+     */
+    static final Object[] locks = new Object[NR_LOCKS];
+    /**
+     * Access counter for each lock, used to
+     * order entries by their last access.
+     */
+    static final long[] clocks = new long[NR_LOCKS];
+    /**
+     * Number of words per key.
+     */
+    static int keyWidth;
+    /**
+     * Number of sets (a power of two).
+     */
+    static int nrSets;
+    /**
+     * Keys of all slots (keyWidth words per slot).
+     */
+    static long[] keys;
+    /**
+     * Cached count of each slot (negative for empty slots).
+     */
+    static long[] counts;
+    /**
+     * Last access of each slot (according to the clock
+     * of the lock protecting its set).
+     */
+    static long[] lastAccess;
+    /**
+     * Number of lookups since the cache was allocated.
+     */
+    public static final LongAdder nrLookups = new LongAdder();
+    /**
+     * Number of lookups that found a cached count.
+     */
+    public static final LongAdder nrHits = new LongAdder();
+    /**
+     * Number of entries that were replaced by new entries.
+     */
+    public static final LongAdder nrEvictions = new LongAdder();
+
+    static {
+        for (int lockCtr = 0; lockCtr < NR_LOCKS; ++lockCtr) {
+            locks[lockCtr] = new Object();
+        }
+    }
+
+    /**
+     * Allocates the cache for keys of the given width, unless it
+     * was already allocated for the current query (all keys of
+     * one query must have the same width).
+     *
+     * @param width number of words per key
+     */
+    public static synchronized void allocate(int width) {
+        if (counts != null) {
+            return;
+        }
+        long slotBytes = 8L * (width + 2);
+        long nrSlots = Math.max(WAYS, ((long) JoinConfig.CACHE_MB << 20) / slotBytes);
+        nrSets = Integer.highestOneBit((int) Math.min(nrSlots / WAYS, 1 << 28));
+        keyWidth = width;
+        keys = new long[nrSets * WAYS * width];
+        counts = new long[nrSets * WAYS];
+        lastAccess = new long[nrSets * WAYS];
+        Arrays.fill(counts, -1);
+    }
+
+    /**
+     * Releases all entries and resets statistics
+     * (invoked after processing a query).
+     */
+    public static synchronized void clear() {
+        keys = null;
+        counts = null;
+        lastAccess = null;
+        nrLookups.reset();
+        nrHits.reset();
+        nrEvictions.reset();
+    }
+
+    /**
+     * Returns the set in which the given key is stored.
+     *
+     * @param key cache key
+     * @return set index
+     */
+    static int setOf(long[] key) {
+        long hash = 0;
+        for (int wordCtr = 0; wordCtr < keyWidth; ++wordCtr) {
+            hash = (hash + key[wordCtr]) * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 29;
+        }
+        return (int) (hash ^ (hash >>> 32)) & (nrSets - 1);
+    }
+
+    /**
+     * Returns true iff the given slot stores the given key.
+     *
+     * @param slot slot index
+     * @param key  cache key
+     * @return true iff keys are equal
+     */
+    static boolean matches(int slot, long[] key) {
+        if (counts[slot] < 0) {
+            return false;
+        }
+        int offset = slot * keyWidth;
+        for (int wordCtr = 0; wordCtr < keyWidth; ++wordCtr) {
+            if (keys[offset + wordCtr] != key[wordCtr]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns cached count for the given key.
+     *
+     * @param key cache key (keyWidth words)
+     * @return cached count or -1 if the key is not cached
+     */
+    public static long get(long[] key) {
+        nrLookups.increment();
+        int set = setOf(key);
+        int lockIdx = set & (NR_LOCKS - 1);
+        synchronized (locks[lockIdx]) {
+            for (int slot = set * WAYS; slot < (set + 1) * WAYS; ++slot) {
+                if (matches(slot, key)) {
+                    lastAccess[slot] = ++clocks[lockIdx];
+                    nrHits.increment();
+                    return counts[slot];
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Caches count for the given key, replacing the least
+     * recently used entry of its set if the set is full.
+     *
+     * @param key   cache key (keyWidth words)
+     * @param count number of result tuples
+     */
+    public static void put(long[] key, long count) {
+        int set = setOf(key);
+        int lockIdx = set & (NR_LOCKS - 1);
+        synchronized (locks[lockIdx]) {
+            int victim = set * WAYS;
+            for (int slot = set * WAYS; slot < (set + 1) * WAYS; ++slot) {
+                if (counts[slot] < 0 || matches(slot, key)) {
+                    victim = slot;
+                    break;
+                }
+                if (lastAccess[slot] < lastAccess[victim]) {
+                    victim = slot;
+                }
+            }
+            if (counts[victim] >= 0 && !matches(victim, key)) {
+                nrEvictions.increment();
+            }
+            System.arraycopy(key, 0, keys, victim * keyWidth, keyWidth);
+            counts[victim] = count;
+            lastAccess[victim] = ++clocks[lockIdx];
+        }
+    }
+
+    /**
+     * Returns the fraction of lookups that found a cached count.
+     *
+     * @return hit rate (zero if there were no lookups)
+     */
+    public static double hitRate() {
+        long lookups = nrLookups.sum();
+        return lookups == 0 ? 0 : (double) nrHits.sum() / lookups;
+    }
+}
@@ -1,11 +0,0 @@
-//package joining;
-//
-//import util.Pair;
-//
-//import java.util.*;
-//
-//public class JoinCacheKey {
-//
-//    Set<Pair<Integer, Long>> joinAttributeValue = new HashSet<>();
-//
-//}
@@ -10,12 +10,25 @@ import java.util.stream.IntStream;
 import config.LoggingConfig;
 import config.NamingConfig;
 import config.JoinConfig;
+import expressions.ExpressionInfo;
+import indexing.SortIndexAdvisor;
+import joining.distributed.Coordinator;
+import joining.distributed.RemoteLFTJ;
+import joining.distributed.WorkerConnection;
 import joining.join.wcoj.*;
+import joining.result.FactorizedResult;
+import joining.result.JoinResult;
+import joining.result.ResultBuffer;
+import joining.uct.LearnedOrderStore;
 import joining.uct.ParallelUctNodeLFTJ;
+import joining.uct.QueryFingerprint;
 import operators.Distinct;
+import operators.Materialize;
 import preprocessing.Context;
+import query.AggregationType;
 import query.ColumnRef;
 import query.QueryInfo;
+import statistics.JoinStats;
 
 public class JoinProcessor {
     /**
@@ -68,29 +81,101 @@ public class JoinProcessor {
         long joinStartMillis = System.currentTimeMillis();
         // Initialize UCT join order search tree
         StaticLFTJCollections.init(query, context);
-        HypercubeManager.init(StaticLFTJCollections.joinValueBound, JoinConfig.INITCUBE);
+        // Factorize result if only aggregates are required
+        boolean factorize = JoinConfig.MATERIALIZE_RESULT &&
+                JoinConfig.FACTORIZE_RESULT && factorizable(query);
+        // Only count result tuples if no columns are required
+        boolean countOnly = factorize && countOnly(query);
+        // Worker processes only report result counts
+        List<WorkerConnection> workers = JoinConfig.REMOTE_WORKERS > 0 && countOnly ?
+                Coordinator.startQuery(query) : new ArrayList<>();
+        HypercubeManager.init(StaticLFTJCollections.joinValueBound,
+                StaticLFTJCollections.joinColumns, JoinConfig.INITCUBE,
+                JoinConfig.NTHREAD + workers.size());
         long resultTuple = 0;
-        ParallelUctNodeLFTJ root = new ParallelUctNodeLFTJ(0, query, true, JoinConfig.NTHREAD);
+        ParallelUctNodeLFTJ root = new ParallelUctNodeLFTJ(0, query, true);
+        QueryFingerprint fingerprint = JoinConfig.LEARNED_ORDERS ?
+                new QueryFingerprint(query) : null;
+        if (fingerprint != null) {
+            boolean warm = LearnedOrderStore.warmStart(fingerprint, root);
+            System.out.println("learned order statistics:" + (warm ? "found" : "none"));
+        }
 
         List<AsyncParallelJoinTask> tasks = new ArrayList<>();
         System.out.println("start join");
-        System.out.println("start cube number:" + HypercubeManager.hypercubes.size());
+        System.out.println("start cube number:" + HypercubeManager.nrQueued());
+        Set<ColumnRef> resultCols = countOnly ?
+                new HashSet<>() : resultColumns(query, factorize);
         for (int i = 0; i < JoinConfig.NTHREAD; i++) {
-            tasks.add(new AsyncParallelJoinTask(query, root, i));
+            ResultBuffer resultBuffer = JoinConfig.MATERIALIZE_RESULT && !factorize ?
+                    new ResultBuffer(query.nrJoined) : null;
+            tasks.add(new AsyncParallelJoinTask(query, root, i,
+                    resultBuffer, factorize && !countOnly));
+        }
+
+        // Lease cubes to workers from additional join threads
+        List<RemoteLFTJ> remoteOps = new ArrayList<>();
+        List<Future<ParallelJoinResult>> remoteResults = new ArrayList<>();
+        for (int workerCtr = 0; workerCtr < workers.size(); workerCtr++) {
+            RemoteLFTJ remoteOp = new RemoteLFTJ(JoinConfig.NTHREAD + workerCtr,
+                    workers.get(workerCtr), query.episodeMillis);
+            AsyncParallelJoinTask remoteTask = new AsyncParallelJoinTask(query, root, remoteOp);
+            remoteOps.add(remoteOp);
+            tasks.add(remoteTask);
+            remoteResults.add(Coordinator.executorService.submit(remoteTask));
         }
 
-        List<Future<ParallelJoinResult>> evaluateResults = executorService.invokeAll(tasks);
+        List<Future<ParallelJoinResult>> evaluateResults = executorService.invokeAll(
+                tasks.subList(0, JoinConfig.NTHREAD));
+        evaluateResults.addAll(remoteResults);
         long joinEndMillis = System.currentTimeMillis();
+        boolean[] resultTables = new boolean[query.nrJoined];
+        for (ColumnRef resultCol : resultCols) {
+            resultTables[query.aliasToIndex.get(resultCol.aliasName)] = true;
+        }
+        JoinResult result = new JoinResult(query.nrJoined);
+        long nrFactorizedNodes = 0;
         for (Future<ParallelJoinResult> futureResult : evaluateResults) {
             ParallelJoinResult joinResult = futureResult.get();
             resultTuple += joinResult.result;
+            if (joinResult.resultBuffer != null) {
+                result.merge(joinResult.resultBuffer);
+            }
+            for (FactorizedResult factorizedResult : joinResult.factorizedResults) {
+                result.merge(factorizedResult, resultTables);
+                nrFactorizedNodes += factorizedResult.size();
+            }
+        }
+        if (countOnly) {
+            result.addCount(resultTuple);
+        }
+        if (JoinConfig.MATERIALIZE_RESULT) {
+            long mergeStartMillis = System.currentTimeMillis();
+            materialize(query, context, result, resultCols);
+            mergeMillis = System.currentTimeMillis() - mergeStartMillis;
+        }
+        if (factorize) {
+            System.out.println("factorized result nodes:" + nrFactorizedNodes);
         }
 
+        collectSeekStats(query, tasks);
+        if (!workers.isEmpty()) {
+            Coordinator.finishQuery(workers, remoteOps);
+            printRemoteStats(remoteOps);
+        }
+        if (fingerprint != null) {
+            LearnedOrderStore.record(fingerprint, root);
+        }
+        System.out.println("join cache lookups:" + JoinCache.nrLookups.sum() +
+                " hit rate:" + JoinCache.hitRate() + " evictions:" + JoinCache.nrEvictions.sum());
+        printTaskCacheStats(tasks);
+
         System.out.println("merge result time:" + mergeMillis);
         System.out.println("join time:" + (joinEndMillis - joinStartMillis));
         System.out.println("part 1:" + StaticLFTJ.part1);
         System.out.println("part 2:" + StaticLFTJ.part2);
         System.out.println("sort time:" + LFTJiter.sortTime);
+        System.out.println("hash trie time:" + LFTJiter.hashTrieTime);
         System.out.println("uniquify join value:" + (joinStartMillis - startMillis));
         System.out.println("LFTJiter 1:" + LFTJiter.lftTime1);
         System.out.println("LFTJiter 2:" + LFTJiter.lftTime2);
@@ -98,6 +183,7 @@ public class JoinProcessor {
         System.out.println("LFTJiter 4:" + LFTJiter.lftTime4);
 
         LFTJiter.sortTime = 0;
+        LFTJiter.hashTrieTime = 0;
         LFTJiter.lftTime1 = 0;
         LFTJiter.lftTime2 = 0;
         LFTJiter.lftTime3 = 0;
@@ -106,6 +192,8 @@ public class JoinProcessor {
         StaticLFTJ.part2 = 0;
 
         LFTJiter.clearCache();
+        JoinCache.clear();
+        SortIndexAdvisor.queryFinished();
         ParallelJoinTask.roundCtr = 0;
 
         System.out.println("------------");
@@ -113,6 +201,169 @@ public class JoinProcessor {
         System.out.println("------------");
     }
 
+    /**
+     * Returns true iff the result of the given query may be
+     * collected in factorized form: the query aggregates over
+     * the join result and each table is joined with another
+     * (i.e., its tuples are determined by join attributes).
+     *
+     * @param query query to process
+     * @return true iff join result can be factorized
+     */
+    static boolean factorizable(QueryInfo query) {
+        if (query.aggregationType == AggregationType.NONE) {
+            return false;
+        }
+        Set<String> joinedAliases = new HashSet<>();
+        for (Set<ColumnRef> joinAttribute : query.equiJoinAttribute) {
+            for (ColumnRef columnRef : joinAttribute) {
+                joinedAliases.add(columnRef.aliasName);
+            }
+        }
+        return joinedAliases.size() == query.nrJoined;
+    }
+
+    /**
+     * Returns true iff post-processing only requires the number
+     * of join result tuples: the query aggregates and none of its
+     * select, group by, having, or order by expressions refers to
+     * columns (e.g., if the query only counts result tuples).
+     *
+     * @param query query to process
+     * @return true iff only the join result cardinality is needed
+     */
+    static boolean countOnly(QueryInfo query) {
+        if (query.aggregationType == AggregationType.NONE) {
+            return false;
+        }
+        List<ExpressionInfo> expressions = new ArrayList<>();
+        expressions.addAll(query.selectExpressions);
+        expressions.addAll(query.groupByExpressions);
+        expressions.addAll(query.orderByExpressions);
+        if (query.havingExpression != null) {
+            expressions.add(query.havingExpression);
+        }
+        for (ExpressionInfo expression : expressions) {
+            if (!expression.columnsMentioned.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns columns to materialize from the join result.
+     *
+     * @param query     query to process
+     * @param factorize whether the join result is factorized
+     * @return set of columns required for post-processing
+     */
+    static Set<ColumnRef> resultColumns(QueryInfo query, boolean factorize) {
+        Set<ColumnRef> resultCols = new HashSet<>(query.colsForPostProcessing);
+        // Need at least one column to determine result cardinality
+        // (unless the cardinality is given by tuple weights).
+        if (!factorize && resultCols.isEmpty() && !query.colsForJoins.isEmpty()) {
+            resultCols.add(query.colsForJoins.iterator().next());
+        }
+        return resultCols;
+    }
+
+    /**
+     * Materializes columns required for post-processing
+     * from the join result and updates the mapping from
+     * query columns to buffered columns accordingly.
+     *
+     * @param query      query to process
+     * @param context    query execution context
+     * @param result     join result tuples in columnar form
+     * @param resultCols columns to materialize
+     * @throws Exception
+     */
+    static void materialize(QueryInfo query, Context context,
+                            JoinResult result, Set<ColumnRef> resultCols) throws Exception {
+        String resultRel = NamingConfig.JOINED_NAME;
+        Materialize.execute(result, query.aliasToIndex,
+                resultCols, context.columnMapping, resultRel);
+        // Update processing context
+        context.columnMapping.clear();
+        for (ColumnRef resultCol : resultCols) {
+            String newColName = resultCol.aliasName + "." + resultCol.columnName;
+            ColumnRef newRef = new ColumnRef(resultRel, newColName);
+            context.columnMapping.put(resultCol, newRef);
+        }
+        // Add weights if rows represent multiple result tuples
+        if (result.isWeighted()) {
+            ColumnRef weightRef = new ColumnRef(resultRel, NamingConfig.JOIN_WEIGHT_COL);
+            Materialize.addWeights(result, weightRef);
+            context.weightRef = weightRef;
+        }
+    }
+
+    /**
+     * Collects the number of seeks per table and seek strategy
+     * over all join threads and attribute orders, and prints
+     * the strategy used by most seeks for each table.
+     *
+     * @param query query that was processed
+     * @param tasks join tasks that processed the query
+     */
+    static void collectSeekStats(QueryInfo query, List<AsyncParallelJoinTask> tasks) {
+        SeekStrategy[] strategies = SeekStrategy.values();
+        long[][] nrSeeksByStrategy = new long[query.nrJoined][strategies.length];
+        for (AsyncParallelJoinTask task : tasks) {
+            task.parallelLFTJ.orderToLFTJ.addSeeksByStrategy(nrSeeksByStrategy);
+        }
+        JoinStats.nrSeeksByStrategy = nrSeeksByStrategy;
+        for (int aliasCtr = 0; aliasCtr < query.nrJoined; ++aliasCtr) {
+            long[] aliasSeeks = nrSeeksByStrategy[aliasCtr];
+            SeekStrategy mostUsed = strategies[0];
+            for (SeekStrategy strategy : strategies) {
+                if (aliasSeeks[strategy.ordinal()] > aliasSeeks[mostUsed.ordinal()]) {
+                    mostUsed = strategy;
+                }
+            }
+            System.out.println("seek strategy for " + query.aliases[aliasCtr] +
+                    ":" + mostUsed + " " + Arrays.toString(aliasSeeks));
+        }
+    }
+
+    /**
+     * Prints hits, misses, and evictions of the evaluation task
+     * caches over all join threads, together with the maximal
+     * estimated memory used by the cache of one thread.
+     *
+     * @param tasks join tasks that processed the query
+     */
+    static void printTaskCacheStats(List<AsyncParallelJoinTask> tasks) {
+        long nrHits = 0;
+        long nrMisses = 0;
+        long nrEvictions = 0;
+        long maxUsedBytes = 0;
+        for (AsyncParallelJoinTask task : tasks) {
+            EvaluationTaskCache taskCache = task.parallelLFTJ.orderToLFTJ;
+            nrHits += taskCache.nrHits;
+            nrMisses += taskCache.nrMisses;
+            nrEvictions += taskCache.nrEvictions;
+            maxUsedBytes = Math.max(maxUsedBytes, taskCache.maxUsedBytes);
+        }
+        System.out.println("task cache hits:" + nrHits + " misses:" + nrMisses +
+                " evictions:" + nrEvictions + " max KB per thread:" + maxUsedBytes / 1024);
+    }
+
+    /**
+     * Prints the number of episodes and result tuples
+     * processed by each worker process.
+     *
+     * @param remoteOps join operators used for workers
+     */
+    static void printRemoteStats(List<RemoteLFTJ> remoteOps) {
+        for (int workerCtr = 0; workerCtr < remoteOps.size(); workerCtr++) {
+            RemoteLFTJ remoteOp = remoteOps.get(workerCtr);
+            System.out.println("worker " + workerCtr + " episodes:" + remoteOp.nrEpisodes +
+                    " result tuples:" + remoteOp.resultTuple + (remoteOp.failed ? " (failed)" : ""));
+        }
+    }
+
     /**
      * Print out log entry if the maximal number of log
      * entries has not been reached yet.
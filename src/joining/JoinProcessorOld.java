@@ -73,15 +73,16 @@ public class JoinProcessorOld {
         long joinStartMillis = System.currentTimeMillis();
         // Initialize UCT join order search tree
         StaticLFTJCollections.init(query, context);
-        HypercubeManager.init(StaticLFTJCollections.joinValueBound, JoinConfig.NTHREAD);
+        HypercubeManager.init(StaticLFTJCollections.joinValueBound,
+                null, JoinConfig.NTHREAD, JoinConfig.NTHREAD);
         long resultTuple = 0;
         UctNodeLFTJ root = new UctNodeLFTJ(0, query, true);
 
         List<ParallelJoinTask> tasks = new ArrayList<>();
         System.out.println("start join");
-        System.out.println("start cube number:" + HypercubeManager.hypercubes.size());
+        System.out.println("start cube number:" + HypercubeManager.nrQueued());
         for (int i = 0; i < JoinConfig.NTHREAD; i++) {
-            tasks.add(new ParallelJoinTask(query, root));
+            tasks.add(new ParallelJoinTask(query, root, i));
         }
 
         List<Future<ParallelJoinResult>> evaluateResults = executorService.invokeAll(tasks);
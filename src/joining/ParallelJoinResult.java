@@ -1,12 +1,36 @@
 package joining;
 
+import joining.result.FactorizedResult;
+import joining.result.ResultBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
 
 public class ParallelJoinResult {
 
     public long result;
 
+    /**
+     * Result tuples generated by the join thread
+     * (null if result tuples were only counted).
+     */
+    public final ResultBuffer resultBuffer;
+
+    /**
+     * Result tuples generated by the join thread in
+     * factorized form (empty if not factorized).
+     */
+    public final List<FactorizedResult> factorizedResults;
+
     public ParallelJoinResult(long result) {
+        this(result, null, new ArrayList<>());
+    }
+
+    public ParallelJoinResult(long result, ResultBuffer resultBuffer,
+                              List<FactorizedResult> factorizedResults) {
         this.result = result;
+        this.resultBuffer = resultBuffer;
+        this.factorizedResults = factorizedResults;
     }
 
 }
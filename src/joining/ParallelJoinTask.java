@@ -1,9 +1,7 @@
 package joining;
 
 import config.JoinConfig;
-import joining.join.wcoj.Hypercube;
 import joining.join.wcoj.HypercubeManager;
-import joining.join.wcoj.LFTJoin;
 import joining.uct.SelectionPolicy;
 import joining.uct.UctNodeLFTJ;
 import query.QueryInfo;
@@ -22,9 +20,9 @@ public class ParallelJoinTask implements Callable<ParallelJoinResult> {
 
     static int roundCtr = 0;
 
-    public ParallelJoinTask(QueryInfo query, UctNodeLFTJ uctNodeLFTJ) {
+    public ParallelJoinTask(QueryInfo query, UctNodeLFTJ uctNodeLFTJ, int threadId) {
         this.query = query;
-        this.parallelLFTJ = new ParallelLFTJ();
+        this.parallelLFTJ = new ParallelLFTJ(threadId);
         this.root = uctNodeLFTJ;
     }
 
@@ -66,10 +64,7 @@ public class ParallelJoinTask implements Callable<ParallelJoinResult> {
 //            long endUpdateMillis = System.nanoTime();
 //            long testStartMillis = System.nanoTime();
             if (HypercubeManager.nrCube.get() == 0 && HypercubeManager.isFinished()) {
-                // notify other thread to terminate
-                for (int i = 0; i < JoinConfig.NTHREAD ; i++) {
-                    HypercubeManager.hypercubes.add(new Hypercube(new ArrayList<>()));
-                }
+                // other threads detect termination when allocating cubes
                 break;
             }
 //            long testEndMillis = System.nanoTime();
@@ -101,13 +96,7 @@ public class ParallelJoinTask implements Callable<ParallelJoinResult> {
         System.out.println("thread:"+ Thread.currentThread().getId() + ", best join order:" + Arrays.toString(optimalOrder));
         System.out.println("thread:"+ Thread.currentThread().getId() + ", most frequent join order:" + Arrays.toString(bestFreqOrder));
         System.out.println("thread:"+ Thread.currentThread().getId() + ", wait time in ms:" + parallelLFTJ.waitTime);
-        System.out.println("thread:"+ Thread.currentThread().getId() + ", seek time in ms:" + parallelLFTJ.orderToLFTJ.values().stream().mapToLong(i -> {
-            long ts = 0;
-            for (LFTJoin join : i.joins) {
-                ts += join.seekTime;
-            }
-            return ts;
-        }).sum());
+        System.out.println("thread:"+ Thread.currentThread().getId() + ", nr. seeks:" + parallelLFTJ.orderToLFTJ.nrSeeks());
 
 //        System.out.println("thread:"+ Thread.currentThread().getId() + ", start 1 in ms:" + parallelLFTJ.orderToLFTJ.values().stream().mapToLong(i -> i.ts1).sum());
 //        System.out.println("thread:"+ Thread.currentThread().getId() + ", start 2 in ms:" + parallelLFTJ.orderToLFTJ.values().stream().mapToLong(i -> i.ts2).sum());
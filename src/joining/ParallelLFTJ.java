@@ -3,16 +3,21 @@ package joining;
 import config.JoinConfig;
 import joining.join.wcoj.*;
 import joining.plan.AttributeOrder;
+import joining.result.FactorizedResult;
+import joining.result.ResultBuffer;
 import util.Pair;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class ParallelLFTJ {
 
-    public final HashMap<AttributeOrder, HyperCubeEvaluationTask> orderToLFTJ;
+    /**
+     * Evaluation tasks of attribute orders executed by this
+     * thread (bounded, least recently used tasks are evicted).
+     */
+    public final EvaluationTaskCache orderToLFTJ;
 
     public long executionTime = 0;
 
@@ -26,57 +31,147 @@ public class ParallelLFTJ {
 
     public long resultTuple = 0;
 
-    public ParallelLFTJ() {
-        this.orderToLFTJ = new HashMap<>();
+    /**
+     * ID of join thread using this instance (negative
+     * for tasks executed on behalf of a coordinator).
+     */
+    final int threadId;
+
+    /**
+     * Collects result tuples generated by this thread
+     * (null if result tuples are only counted).
+     */
+    public final ResultBuffer resultBuffer;
+
+    /**
+     * Whether result tuples are collected in factorized
+     * form (one trie per attribute order).
+     */
+    final boolean factorize;
+
+    /**
+     * Calibrates budgets of episodes executed by this thread.
+     */
+    public final EpisodeBudget episodeBudget;
+
+    public ParallelLFTJ(int threadId) {
+        this(threadId, null, false, JoinConfig.EPISODE_MILLIS);
+    }
+
+    public ParallelLFTJ(int threadId, ResultBuffer resultBuffer,
+                        boolean factorize, double episodeMillis) {
+        this.threadId = threadId;
+        this.resultBuffer = resultBuffer;
+        this.factorize = factorize;
+        this.episodeBudget = new EpisodeBudget(episodeMillis);
+        this.orderToLFTJ = new EvaluationTaskCache();
         this.executionTime = 0;
         this.waitTime = 0;
         this.isFinish = false;
         this.resultTuple = 0;
     }
 
+    /**
+     * Returns result tuples collected in factorized form
+     * by this thread (one trie per attribute order).
+     *
+     * @return list of factorized results
+     */
+    public List<FactorizedResult> factorizedResults() {
+        return orderToLFTJ.factorizedResults();
+    }
+
+    /**
+     * Executes one episode with a calibrated budget and
+     * updates the time measured per search step. Rewards
+     * are scaled to the default budget so that they are
+     * comparable across episodes with different budgets.
+     *
+     * @param hyperCubeTask join task for attribute order
+     * @param order         attribute order
+     * @param selectCube    hypercube to process
+     * @return reward of episode
+     */
+    double executeEpisode(HyperCubeEvaluationTask hyperCubeTask,
+                          int[] order, Hypercube selectCube) {
+        int budget = episodeBudget.nextBudget();
+        long startNanos = System.nanoTime();
+        double reward = hyperCubeTask.execute(budget, order, selectCube);
+        episodeBudget.episodeDone(hyperCubeTask.usedBudget,
+                System.nanoTime() - startNanos);
+        return reward * JoinConfig.BUDGET_PER_EPISODE / budget;
+    }
+
+    /**
+     * Creates evaluation task for given attribute order
+     * and adds it to the tasks kept by this thread.
+     *
+     * @param staticLFTJ     iterators for attribute order
+     * @param attributeOrder attribute order
+     * @return new evaluation task
+     */
+    HyperCubeEvaluationTask createTask(StaticLFTJ staticLFTJ, AttributeOrder attributeOrder) {
+        int[] order = attributeOrder.order;
+        List<Pair<Integer, Integer>> attributeValueBound = Arrays.stream(order).mapToObj(StaticLFTJCollections.joinValueBound::get).collect(Collectors.toList());
+        HyperCubeEvaluationTask hyperCubeTask = new HyperCubeEvaluationTask(staticLFTJ.idToIter, staticLFTJ.itersNumberByVar, order, attributeValueBound, threadId, resultBuffer, factorize);
+        orderToLFTJ.put(attributeOrder, hyperCubeTask);
+        return hyperCubeTask;
+    }
+
+    /**
+     * Returns evaluation task for given attribute order,
+     * creating it if it is not kept by this thread.
+     *
+     * @param order attribute order
+     * @return evaluation task
+     * @throws Exception
+     */
+    public HyperCubeEvaluationTask evaluationTask(int[] order) throws Exception {
+        AttributeOrder attributeOrder = new AttributeOrder(order);
+        HyperCubeEvaluationTask hyperCubeTask = orderToLFTJ.get(attributeOrder);
+        if (hyperCubeTask == null) {
+            hyperCubeTask = createTask(StaticLFTJCollections.generateLFTJ(
+                    attributeOrder), attributeOrder);
+        }
+        return hyperCubeTask;
+    }
+
     public double execute(int[] order) {
         AttributeOrder attributeOrder = new AttributeOrder(order);
         try {
-            if (orderToLFTJ.containsKey(attributeOrder)) {
-                long initStartMillis = System.currentTimeMillis();
-                HyperCubeEvaluationTask hyperCubeTask = orderToLFTJ.get(attributeOrder);
+            long initStartMillis = System.currentTimeMillis();
+            HyperCubeEvaluationTask hyperCubeTask = orderToLFTJ.get(attributeOrder);
+            if (hyperCubeTask != null) {
                 long initEndMillis = System.currentTimeMillis();
                 long startWaitMillis = System.currentTimeMillis();
-                Hypercube selectCube = HypercubeManager.allocateHypercube();
-                if(selectCube.intervals.size() == 0) {
+                Hypercube selectCube = HypercubeManager.allocateHypercube(threadId);
+                if(selectCube.dim == 0) {
                     // receive special hypercube (terminate hypercube)
                     this.isFinish = true;
                     return 0;
                 }
                 long startExecMillis = System.currentTimeMillis();
-                Pair<Double, Long> result = hyperCubeTask.execute(JoinConfig.BUDGET_PER_EPISODE, order, selectCube);
-                double reward = result.getFirst();
-                this.resultTuple += result.getSecond();
+                double reward = executeEpisode(hyperCubeTask, order, selectCube);
+                this.resultTuple += hyperCubeTask.resultTuple;
                 long endMillis = System.currentTimeMillis();
                 waitTime += startExecMillis - startWaitMillis;
                 executionTime += endMillis - startExecMillis;
                 initLFTJTime += initEndMillis - initStartMillis;
                 return reward;
             } else {
-                long initStartMillis = System.currentTimeMillis();
                 StaticLFTJ staticLFTJ = StaticLFTJCollections.generateLFTJ(attributeOrder);
                 long initEndMillis = System.currentTimeMillis();
-                List<Pair<Integer, Integer>> attributeValueBound = Arrays.stream(order).mapToObj(StaticLFTJCollections.joinValueBound::get).collect(Collectors.toList());
-//                HashMap<Integer, Pair<Set<Integer>, Set<Integer>>> cacheInfo = (HashMap<Integer, Pair<Set<Integer>, Set<Integer>>>) JoinCache.hashMetaData.get(attributeOrder).clone();
-//                HyperCubeEvaluationTask hyperCubeTask = new HyperCubeEvaluationTask(staticLFTJ.idToIter, staticLFTJ.itersNumberByVar, attributeValueBound, cacheInfo);
-                HyperCubeEvaluationTask hyperCubeTask = new HyperCubeEvaluationTask(staticLFTJ.idToIter, staticLFTJ.itersNumberByVar, attributeValueBound);
-                orderToLFTJ.put(attributeOrder, hyperCubeTask);
+                hyperCubeTask = createTask(staticLFTJ, attributeOrder);
                 long startWaitMillis = System.currentTimeMillis();
-                Hypercube selectCube = HypercubeManager.allocateHypercube();
-                if(selectCube.intervals.size() == 0) {
+                Hypercube selectCube = HypercubeManager.allocateHypercube(threadId);
+                if(selectCube.dim == 0) {
                     // finish all hypercubes
                     this.isFinish = true;
                     return 0;
                 }
                 long startExecMillis = System.currentTimeMillis();
-                Pair<Double, Long> result =  hyperCubeTask.execute(JoinConfig.BUDGET_PER_EPISODE, order, selectCube);
-                double reward = result.getFirst();
-                this.resultTuple += result.getSecond();
+                double reward = executeEpisode(hyperCubeTask, order, selectCube);
+                this.resultTuple += hyperCubeTask.resultTuple;
                 long endMillis = System.currentTimeMillis();
                 waitTime += startExecMillis - startWaitMillis;
                 executionTime += endMillis - startExecMillis;
@@ -11,34 +11,44 @@ import query.ColumnRef;
 import query.QueryInfo;
 import util.ArrayUtil;
 import util.Pair;
+import util.SingleFlightCache;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class StaticLFTJCollections {
 
-    static ConcurrentHashMap<AttributeOrder, StaticLFTJ> staticLFTJMap;
+    static SingleFlightCache<AttributeOrder, StaticLFTJ> staticLFTJMap;
 
     static QueryInfo query;
 
     static Context executionContext;
 
-    static List<Pair<Integer, Integer>> joinValueBound;
+    /**
+     * Range of join values for each join attribute.
+     */
+    public static List<Pair<Integer, Integer>> joinValueBound;
+
+    /**
+     * Columns joined via each join attribute.
+     */
+    static List<List<IntData>> joinColumns;
 
     static long initTime = 0;
 
     public static void init(QueryInfo query, Context executionContext) throws Exception {
         StaticLFTJCollections.query = query;
         StaticLFTJCollections.executionContext = executionContext;
-        StaticLFTJCollections.staticLFTJMap = new ConcurrentHashMap<>();
+        StaticLFTJCollections.staticLFTJMap = new SingleFlightCache<>();
         StaticLFTJCollections.joinValueBound = new ArrayList<>();
+        StaticLFTJCollections.joinColumns = new ArrayList<>();
         for (Set<ColumnRef> joinAttributes : query.equiJoinAttribute) {
             // lb is the max value among all iterators lower bound
             // ub is the min value among all iterators upper bound
             int lb = Integer.MIN_VALUE;
             int ub = Integer.MAX_VALUE;
+            List<IntData> attributeColumns = new ArrayList<>();
             for (ColumnRef attribute : joinAttributes) {
                 // Retrieve corresponding data
                 String alias = attribute.aliasName;
@@ -47,30 +57,36 @@ public class StaticLFTJCollections {
                     table = executionContext.aliasToDistinct.get(alias);
                 }
                 String column = attribute.columnName;
-                ColumnRef baseRef = new ColumnRef(table, column);
+                ColumnRef baseRef = JoinConfig.DISTINCT_START ?
+                        new ColumnRef(table, column) :
+                        executionContext.columnMapping.get(attribute);
                 ColumnData columnData = BufferManager.getData(baseRef);
                 System.out.println(columnData.getClass().getName());
                 if (columnData instanceof IntData) {
                     IntData columnIntData = (IntData) columnData;
+                    attributeColumns.add(columnIntData);
                     lb = Math.max(lb, ArrayUtil.getLowerBound(columnIntData.data));
                     ub = Math.min(ub, ArrayUtil.getUpperBound(columnIntData.data));
                     System.out.println("lb:" + lb + ", ub:" + ub +", card:" + columnIntData.cardinality);
                 }
             }
             joinValueBound.add(new Pair<>(lb, ub));
+            joinColumns.add(attributeColumns);
         }
     }
 
+    /**
+     * Returns iterators for given attribute order, creating
+     * them if necessary. If several threads request the same
+     * order concurrently, only one of them creates iterators.
+     *
+     * @param order attribute order
+     * @return      iterators for attribute order
+     * @throws Exception
+     */
     public static StaticLFTJ generateLFTJ(AttributeOrder order) throws Exception {
-        synchronized (staticLFTJMap) {
-            if (staticLFTJMap.contains(order)) {
-                return staticLFTJMap.get(order);
-            } else {
-                StaticLFTJ staticLFTJ = new StaticLFTJ(query, executionContext, order.order, joinValueBound);
-                staticLFTJMap.put(order, staticLFTJ);
-                return staticLFTJ;
-            }
-        }
+        return staticLFTJMap.computeIfAbsent(order, attributeOrder ->
+                new StaticLFTJ(query, executionContext, attributeOrder.order, joinValueBound));
     }
 
 }
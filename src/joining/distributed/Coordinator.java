@@ -0,0 +1,146 @@
+package joining.distributed;
+
+import config.JoinConfig;
+import joining.StaticLFTJCollections;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import query.QueryInfo;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Accepts connections from worker processes and prepares them
+ * for the join phase of each query. Workers stay connected
+ * across queries; workers whose connection fails are dropped.
+ * Join threads leasing cubes to workers run in a separate
+ * thread pool since they mostly wait for replies.
+ */
+public class Coordinator {
+    /**
+     * Accepts connections from workers (null until
+     * remote workers are used for the first time).
+     */
+    static ServerSocket serverSocket = null;
+    /**
+     * Connected workers.
+     */
+    static final List<WorkerConnection> workers = new ArrayList<>();
+    /**
+     * Runs join threads leasing cubes to workers.
+     */
+    public static final ExecutorService executorService = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Accepts workers until the configured number of workers is
+     * connected. Waits for the configured time when called for
+     * the first time, afterwards only accepts pending workers.
+     *
+     * @throws IOException
+     */
+    static void acceptWorkers() throws IOException {
+        int waitMillis = 1;
+        if (serverSocket == null) {
+            serverSocket = new ServerSocket(JoinConfig.COORDINATOR_PORT);
+            System.out.println("Waiting for workers on port " + JoinConfig.COORDINATOR_PORT);
+            waitMillis = JoinConfig.WORKER_WAIT_MILLIS;
+        }
+        serverSocket.setSoTimeout(waitMillis);
+        while (workers.size() < JoinConfig.REMOTE_WORKERS) {
+            try {
+                workers.add(new WorkerConnection(serverSocket.accept()));
+            } catch (SocketTimeoutException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Sends the given query to connected workers and returns
+     * workers that are ready to process episodes for it.
+     * Must be called after join attributes are initialized.
+     *
+     * @param query query whose join phase starts
+     * @return workers participating in the join phase
+     * @throws IOException
+     */
+    public static synchronized List<WorkerConnection> startQuery(QueryInfo query) throws IOException {
+        acceptWorkers();
+        System.out.println("Connected workers:" + workers.size());
+        String sql = queryText(query);
+        List<WorkerConnection> ready = new ArrayList<>();
+        for (WorkerConnection worker : new ArrayList<>(workers)) {
+            try {
+                if (worker.prepare(sql, StaticLFTJCollections.joinValueBound)) {
+                    ready.add(worker);
+                } else {
+                    // Worker needs to discard its preparation
+                    worker.finish();
+                }
+            } catch (IOException e) {
+                drop(worker);
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Returns text of the given query without its result
+     * relation (which is not created by workers and whose
+     * name is not necessarily valid SQL).
+     *
+     * @param query query whose join phase starts
+     * @return SQL text of query
+     */
+    static String queryText(QueryInfo query) {
+        PlainSelect select = query.plainSelect;
+        List<Table> intoTables = select.getIntoTables();
+        select.setIntoTables(null);
+        String sql = select.toString();
+        select.setIntoTables(intoTables);
+        return sql;
+    }
+
+    /**
+     * Notifies workers that the join phase of the
+     * current query is finished.
+     *
+     * @param ready workers participating in the join phase
+     * @param ops   join operators used for those workers
+     */
+    public static synchronized void finishQuery(List<WorkerConnection> ready, List<RemoteLFTJ> ops) {
+        for (RemoteLFTJ op : ops) {
+            if (op.failed) {
+                drop(op.worker);
+            }
+        }
+        for (WorkerConnection worker : ready) {
+            if (workers.contains(worker)) {
+                try {
+                    worker.finish();
+                } catch (IOException e) {
+                    drop(worker);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes connection to worker and stops using it.
+     *
+     * @param worker failed worker
+     */
+    static void drop(WorkerConnection worker) {
+        worker.close();
+        workers.remove(worker);
+    }
+}
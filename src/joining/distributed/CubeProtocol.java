@@ -0,0 +1,93 @@
+package joining.distributed;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Messages exchanged between the coordinator and worker
+ * processes. Each message sent by the coordinator starts
+ * with its type:
+ * <ul>
+ * <li>QUERY: SQL text of a query to prepare. The worker
+ * replies whether it could pre-process the query and, if
+ * so, the value range of each join attribute (to verify
+ * that both processes number attributes consistently).</li>
+ * <li>EPISODE: attribute order, bounds of the leased cube
+ * (by attribute index), and budget. The worker replies with
+ * reward, number of result tuples, used budget, and whether
+ * the cube was processed entirely (otherwise followed by the
+ * last processed point, in attribute order).</li>
+ * <li>DONE: the current query is finished (no reply).</li>
+ * </ul>
+ */
+public class CubeProtocol {
+    /**
+     * Prepare query for join episodes.
+     */
+    public static final int QUERY = 1;
+    /**
+     * Execute one episode on a leased cube.
+     */
+    public static final int EPISODE = 2;
+    /**
+     * Current query is finished.
+     */
+    public static final int DONE = 3;
+
+    /**
+     * Writes array length followed by its elements.
+     *
+     * @param out    output stream
+     * @param values integer array
+     * @throws IOException
+     */
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Reads array written by {@link #writeInts}.
+     *
+     * @param in input stream
+     * @return integer array
+     * @throws IOException
+     */
+    static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Writes text of arbitrary length as UTF-8 bytes.
+     *
+     * @param out  output stream
+     * @param text text to write
+     * @throws IOException
+     */
+    static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads text written by {@link #writeText}.
+     *
+     * @param in input stream
+     * @return text
+     * @throws IOException
+     */
+    static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,184 @@
+package joining.distributed;
+
+import buffer.BufferManager;
+import catalog.CatalogManager;
+import config.GeneralConfig;
+import config.JoinConfig;
+import diskio.PathUtil;
+import joining.JoinCache;
+import joining.ParallelLFTJ;
+import joining.StaticLFTJCollections;
+import joining.join.wcoj.Hypercube;
+import joining.join.wcoj.HyperCubeEvaluationTask;
+import joining.join.wcoj.LFTJiter;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import preprocessing.Context;
+import preprocessing.Preprocessor;
+import query.QueryInfo;
+import util.Pair;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * Worker process that executes join episodes on cubes leased
+ * by a coordinator. The worker loads its own copy of the
+ * database, pre-processes each query sent by the coordinator
+ * in the same way, and executes episodes for the attribute
+ * orders selected by the coordinator. Several workers may run
+ * on the same machine, e.g.:
+ * <pre>
+ * java joining.distributed.JoinWorker &lt;db dir&gt; localhost 7321
+ * </pre>
+ */
+public class JoinWorker {
+    /**
+     * Waiting time in milliseconds between attempts
+     * to connect to the coordinator.
+     */
+    static final int RETRY_MILLIS = 500;
+
+    /**
+     * Connects to the coordinator and processes its
+     * messages until the connection is closed.
+     *
+     * @param args database directory, coordinator host
+     *             (default localhost), coordinator port
+     *             (default as configured)
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        String dbDir = args[0];
+        String host = args.length > 1 ? args[1] : "localhost";
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : JoinConfig.COORDINATOR_PORT;
+        PathUtil.initSchemaPaths(dbDir);
+        CatalogManager.loadDB(PathUtil.schemaPath);
+        PathUtil.initDataPaths(CatalogManager.currentDB);
+        GeneralConfig.inMemory = true;
+        BufferManager.loadDB();
+        System.out.println("Data loaded - connecting to " + host + ":" + port);
+        try (Socket socket = connect(host, port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            serve(in, out);
+        } catch (EOFException e) {
+            System.out.println("Coordinator closed connection");
+        }
+    }
+
+    /**
+     * Connects to the coordinator, retrying while it does
+     * not accept connections yet (up to the configured
+     * waiting time for workers).
+     *
+     * @param host coordinator host
+     * @param port coordinator port
+     * @return socket connected to coordinator
+     * @throws Exception
+     */
+    static Socket connect(String host, int port) throws Exception {
+        long deadline = System.currentTimeMillis() + JoinConfig.WORKER_WAIT_MILLIS;
+        while (true) {
+            try {
+                return new Socket(host, port);
+            } catch (ConnectException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(RETRY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Processes messages of the coordinator.
+     *
+     * @param in  reads messages of coordinator
+     * @param out sends replies to coordinator
+     * @throws Exception
+     */
+    static void serve(DataInputStream in, DataOutputStream out) throws Exception {
+        ParallelLFTJ joinOp = null;
+        while (true) {
+            int messageType = in.readInt();
+            switch (messageType) {
+                case CubeProtocol.QUERY: {
+                    String sql = CubeProtocol.readText(in);
+                    joinOp = prepare(sql, out);
+                    out.flush();
+                    break;
+                }
+                case CubeProtocol.EPISODE: {
+                    int[] order = CubeProtocol.readInts(in);
+                    int[] lo = CubeProtocol.readInts(in);
+                    int[] hi = CubeProtocol.readInts(in);
+                    int budget = in.readInt();
+                    HyperCubeEvaluationTask task = joinOp.evaluationTask(order);
+                    double reward = task.execute(budget, order, new Hypercube(lo, hi));
+                    out.writeDouble(reward);
+                    out.writeLong(task.resultTuple);
+                    out.writeLong(task.usedBudget);
+                    out.writeBoolean(task.cubeFinished);
+                    if (!task.cubeFinished) {
+                        CubeProtocol.writeInts(out, task.endValues);
+                    }
+                    out.flush();
+                    break;
+                }
+                case CubeProtocol.DONE: {
+                    joinOp = null;
+                    JoinCache.clear();
+                    LFTJiter.clearCache();
+                    BufferManager.unloadTempData();
+                    CatalogManager.removeTempTables();
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown message type " + messageType);
+            }
+        }
+    }
+
+    /**
+     * Pre-processes query and initializes join attributes,
+     * then replies with the value range of each attribute.
+     *
+     * @param sql query text
+     * @param out sends reply to coordinator
+     * @return join operator executing episodes for the query
+     * (null if the query cannot be processed)
+     * @throws Exception
+     */
+    static ParallelLFTJ prepare(String sql, DataOutputStream out) throws Exception {
+        try {
+            PlainSelect select = (PlainSelect) ((Select) CCJSqlParserUtil.parse(sql)).getSelectBody();
+            QueryInfo query = new QueryInfo(select, false, -1, -1, null);
+            Context context = Preprocessor.process(query);
+            StaticLFTJCollections.init(query, context);
+        } catch (Exception e) {
+            System.err.println("Cannot process query: " + e.getMessage());
+            out.writeBoolean(false);
+            return null;
+        }
+        List<Pair<Integer, Integer>> joinValueBound = StaticLFTJCollections.joinValueBound;
+        int[] bounds = new int[2 * joinValueBound.size()];
+        for (int attribute = 0; attribute < joinValueBound.size(); attribute++) {
+            bounds[2 * attribute] = joinValueBound.get(attribute).getFirst();
+            bounds[2 * attribute + 1] = joinValueBound.get(attribute).getSecond();
+        }
+        out.writeBoolean(true);
+        CubeProtocol.writeInts(out, bounds);
+        return new ParallelLFTJ(-1);
+    }
+}
@@ -0,0 +1,85 @@
+package joining.distributed;
+
+import config.JoinConfig;
+import joining.ParallelLFTJ;
+import joining.join.wcoj.Hypercube;
+import joining.join.wcoj.HypercubeManager;
+
+import java.io.IOException;
+
+/**
+ * Executes join episodes selected by a join thread of the
+ * coordinator on a worker process: cubes are allocated from
+ * the deque of this thread and leased to the worker, which
+ * reports the number of result tuples, the reward, and where
+ * it stopped processing the cube. Remaining parts of the cube
+ * are scheduled by the coordinator. If the worker fails, its
+ * cube is returned to the deque and processed by other threads.
+ */
+public class RemoteLFTJ extends ParallelLFTJ {
+    /**
+     * ID of the join thread leasing cubes to the worker.
+     */
+    final int slotId;
+    /**
+     * Connection to worker process.
+     */
+    final WorkerConnection worker;
+    /**
+     * Number of episodes executed by the worker.
+     */
+    public long nrEpisodes = 0;
+    /**
+     * Whether the connection to the worker failed.
+     */
+    public boolean failed = false;
+
+    /**
+     * Initializes join operator for worker process.
+     *
+     * @param slotId        ID of join thread leasing cubes
+     * @param worker        connection to worker process
+     * @param episodeMillis targeted time per episode
+     */
+    public RemoteLFTJ(int slotId, WorkerConnection worker, double episodeMillis) {
+        super(slotId, null, false, episodeMillis);
+        this.slotId = slotId;
+        this.worker = worker;
+    }
+
+    @Override
+    public double execute(int[] order) {
+        long startWaitMillis = System.currentTimeMillis();
+        Hypercube selectCube = HypercubeManager.allocateHypercube(slotId);
+        if (selectCube.dim == 0) {
+            isFinish = true;
+            return 0;
+        }
+        int budget = episodeBudget.nextBudget();
+        long startExecMillis = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        try {
+            worker.execute(order, selectCube, budget);
+        } catch (IOException e) {
+            System.err.println("Lost connection to worker - returning cube");
+            worker.close();
+            HypercubeManager.addHypercube(selectCube, slotId);
+            failed = true;
+            isFinish = true;
+            return 0;
+        }
+        // Round trips are part of the time per step
+        episodeBudget.episodeDone(worker.usedBudget, System.nanoTime() - startNanos);
+        if (worker.cubeFinished) {
+            HypercubeManager.finishHyperCube(selectCube, slotId);
+        } else {
+            HypercubeManager.updateInterval(selectCube, worker.endValues, order, slotId);
+        }
+        ++nrEpisodes;
+        resultTuple += worker.resultTuple;
+        long endMillis = System.currentTimeMillis();
+        waitTime += startExecMillis - startWaitMillis;
+        executionTime += endMillis - startExecMillis;
+        return worker.reward * JoinConfig.BUDGET_PER_EPISODE / budget;
+    }
+}
@@ -0,0 +1,135 @@
+package joining.distributed;
+
+import joining.join.wcoj.Hypercube;
+import util.Pair;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * Coordinator side of the connection to one worker process.
+ * Each connection is used by at most one join thread at a time.
+ */
+public class WorkerConnection {
+    /**
+     * Socket connected to worker.
+     */
+    final Socket socket;
+    /**
+     * Reads replies of worker.
+     */
+    final DataInputStream in;
+    /**
+     * Sends messages to worker.
+     */
+    final DataOutputStream out;
+    /**
+     * Reward of the last episode.
+     */
+    double reward;
+    /**
+     * Number of result tuples generated in the last episode.
+     */
+    long resultTuple;
+    /**
+     * Number of search steps performed in the last episode.
+     */
+    long usedBudget;
+    /**
+     * Whether the last episode processed its cube entirely.
+     */
+    boolean cubeFinished;
+    /**
+     * Last processed point of an interrupted cube
+     * (in attribute order).
+     */
+    int[] endValues;
+
+    /**
+     * Initializes streams for connected worker.
+     *
+     * @param socket socket connected to worker
+     * @throws IOException
+     */
+    WorkerConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Asks worker to prepare the given query and checks that
+     * its join attributes have the same value ranges.
+     *
+     * @param sql            query text
+     * @param joinValueBound value range of each join attribute
+     * @return true iff the worker can process episodes
+     * @throws IOException
+     */
+    boolean prepare(String sql, List<Pair<Integer, Integer>> joinValueBound) throws IOException {
+        out.writeInt(CubeProtocol.QUERY);
+        CubeProtocol.writeText(out, sql);
+        out.flush();
+        if (!in.readBoolean()) {
+            return false;
+        }
+        int[] bounds = CubeProtocol.readInts(in);
+        boolean consistent = bounds.length == 2 * joinValueBound.size();
+        for (int attribute = 0; consistent && attribute < joinValueBound.size(); attribute++) {
+            Pair<Integer, Integer> bound = joinValueBound.get(attribute);
+            consistent = bounds[2 * attribute] == bound.getFirst() &&
+                    bounds[2 * attribute + 1] == bound.getSecond();
+        }
+        return consistent;
+    }
+
+    /**
+     * Lets worker execute one episode and stores its outcome
+     * in the fields of this connection.
+     *
+     * @param order  attribute order
+     * @param cube   leased cube
+     * @param budget number of search steps
+     * @throws IOException
+     */
+    void execute(int[] order, Hypercube cube, int budget) throws IOException {
+        out.writeInt(CubeProtocol.EPISODE);
+        CubeProtocol.writeInts(out, order);
+        CubeProtocol.writeInts(out, cube.lo);
+        CubeProtocol.writeInts(out, cube.hi);
+        out.writeInt(budget);
+        out.flush();
+        reward = in.readDouble();
+        resultTuple = in.readLong();
+        usedBudget = in.readLong();
+        cubeFinished = in.readBoolean();
+        endValues = cubeFinished ? null : CubeProtocol.readInts(in);
+    }
+
+    /**
+     * Notifies worker that the current query is finished.
+     *
+     * @throws IOException
+     */
+    void finish() throws IOException {
+        out.writeInt(CubeProtocol.DONE);
+        out.flush();
+    }
+
+    /**
+     * Closes connection after a failure.
+     */
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // connection is dropped anyway
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package joining.join.wcoj;
+
+/**
+ * Compressed trie representation (similar to the
+ * compressed sparse row format): each trie level
+ * stores each distinct key prefix once, together
+ * with offsets pointing to the children of that
+ * node in the next trie level.
+ */
+public class CSRTrie {
+    /**
+     * Contains for each trie level the keys of all
+     * nodes in that level (keys are sorted within
+     * the children of each parent node).
+     */
+    final int[][] keys;
+    /**
+     * Contains for each trie level except the last
+     * one the index of the first child node in the
+     * next level for each node (with one additional
+     * entry marking the end of the last node).
+     */
+    final int[][] offsets;
+    /**
+     * Contains for each node in the last trie level
+     * the index of its first tuple in tuple order
+     * (with one additional entry marking the end).
+     */
+    final int[] rows;
+
+    /**
+     * Initializes trie with given nodes.
+     *
+     * @param keys    keys of nodes per level
+     * @param offsets first child of nodes per level
+     * @param rows    first tuple of nodes in last level
+     */
+    CSRTrie(int[][] keys, int[][] offsets, int[] rows) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.rows = rows;
+    }
+
+    /**
+     * Builds compressed trie from keys of each
+     * level in tuple sort order.
+     *
+     * @param trieLevels keys of each level in tuple order
+     * @param card       number of tuples
+     */
+    public CSRTrie(int[][] trieLevels, int card) {
+        int nrLevels = trieLevels.length;
+        int lastLevel = nrLevels - 1;
+        // Count number of distinct prefixes per level
+        int[] nrNodes = new int[nrLevels];
+        for (int tupleCtr = 0; tupleCtr < card; ++tupleCtr) {
+            boolean newNode = tupleCtr == 0;
+            for (int levelCtr = 0; levelCtr < nrLevels; ++levelCtr) {
+                int[] levelKeys = trieLevels[levelCtr];
+                newNode = newNode ||
+                        levelKeys[tupleCtr] != levelKeys[tupleCtr - 1];
+                if (newNode) {
+                    ++nrNodes[levelCtr];
+                }
+            }
+        }
+        // Allocate arrays
+        keys = new int[nrLevels][];
+        offsets = new int[lastLevel][];
+        for (int levelCtr = 0; levelCtr < nrLevels; ++levelCtr) {
+            keys[levelCtr] = new int[nrNodes[levelCtr]];
+            if (levelCtr < lastLevel) {
+                offsets[levelCtr] = new int[nrNodes[levelCtr] + 1];
+            }
+        }
+        rows = new int[nrNodes[lastLevel] + 1];
+        // Fill in keys and offsets
+        int[] nodeCtrs = new int[nrLevels];
+        for (int tupleCtr = 0; tupleCtr < card; ++tupleCtr) {
+            boolean newNode = tupleCtr == 0;
+            for (int levelCtr = 0; levelCtr < nrLevels; ++levelCtr) {
+                int[] levelKeys = trieLevels[levelCtr];
+                newNode = newNode ||
+                        levelKeys[tupleCtr] != levelKeys[tupleCtr - 1];
+                if (newNode) {
+                    int node = nodeCtrs[levelCtr]++;
+                    keys[levelCtr][node] = levelKeys[tupleCtr];
+                    if (levelCtr < lastLevel) {
+                        // Child is created in the same iteration
+                        offsets[levelCtr][node] = nodeCtrs[levelCtr + 1];
+                    } else {
+                        rows[node] = tupleCtr;
+                    }
+                }
+            }
+        }
+        // Mark end of last node in each level
+        for (int levelCtr = 0; levelCtr < lastLevel; ++levelCtr) {
+            offsets[levelCtr][nrNodes[levelCtr]] = nrNodes[levelCtr + 1];
+        }
+        rows[nrNodes[lastLevel]] = card;
+    }
+
+    /**
+     * Returns the number of nodes in the given level.
+     *
+     * @param level trie level
+     * @return number of distinct key prefixes
+     */
+    public int nrNodes(int level) {
+        return keys[level].length;
+    }
+}
@@ -2,29 +2,67 @@ package joining.join.wcoj;
 
 import java.util.Arrays;
 
+/**
+ * Describes the cache key for result counts of the suffix of an
+ * attribute order starting at a given level. The count depends
+ * only on the values of prior variables that appear in a table
+ * together with some suffix variable, and on the bounds of the
+ * current hypercube for suffix variables. Keys list the suffix
+ * attributes, dependencies, and bounds in global attribute order,
+ * so attribute orders sharing the same suffix share entries.
+ */
 public class CacheAttribute {
+    /**
+     * Bit mask of global attribute indices in the suffix.
+     */
+    final long suffixMask;
 
-    int[] columnKeyIdx;
+    /**
+     * Levels of prior variables on which the suffix depends
+     * (ordered by their global attribute index).
+     */
+    final int[] columnKeyIdx;
 
-    int[] columnKeyValue;
+    /**
+     * Levels of suffix variables (ordered by their
+     * global attribute index).
+     */
+    final int[] columnValueIdx;
 
-    int[] columnValueIdx;
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        CacheAttribute that = (CacheAttribute) o;
-        return Arrays.equals(columnKeyIdx, that.columnKeyIdx) &&
-                Arrays.equals(columnKeyValue, that.columnKeyValue) &&
-                Arrays.equals(columnValueIdx, that.columnValueIdx);
+    /**
+     * Initializes cache key description.
+     *
+     * @param suffixMask     global attributes in suffix
+     * @param columnKeyIdx   levels whose values form the key
+     * @param columnValueIdx levels whose bounds form the key
+     */
+    CacheAttribute(long suffixMask, int[] columnKeyIdx, int[] columnValueIdx) {
+        this.suffixMask = suffixMask;
+        this.columnKeyIdx = columnKeyIdx;
+        this.columnValueIdx = columnValueIdx;
     }
 
-    @Override
-    public int hashCode() {
-        int result = Arrays.hashCode(columnKeyIdx);
-        result = 31 * result + Arrays.hashCode(columnKeyValue);
-        result = 31 * result + Arrays.hashCode(columnValueIdx);
-        return result;
+    /**
+     * Writes the cache key for the current binding of prior
+     * variables and the current hypercube into the given buffer
+     * (which must have one word per variable).
+     *
+     * @param joinFrames      frames storing current variable bindings
+     * @param cubeStartValues lower bounds of hypercube (by level)
+     * @param cubeEndValues   upper bounds of hypercube (by level)
+     * @param key             buffer receiving the key
+     */
+    void fillKey(JoinFrame[] joinFrames, int[] cubeStartValues,
+                 int[] cubeEndValues, long[] key) {
+        int pos = 0;
+        key[pos++] = suffixMask;
+        for (int level : columnKeyIdx) {
+            key[pos++] = joinFrames[level].maxKey;
+        }
+        for (int level : columnValueIdx) {
+            key[pos++] = ((long) cubeStartValues[level] << 32) |
+                    (cubeEndValues[level] & 0xFFFFFFFFL);
+        }
+        Arrays.fill(key, pos, key.length, 0);
     }
 }
@@ -0,0 +1,210 @@
+package joining.join.wcoj;
+
+import config.JoinConfig;
+import data.IntData;
+import util.Pair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Divides the space of join attribute values into initial
+ * hypercubes that carry roughly equal shares of the join
+ * work, based on the value distribution of the join columns.
+ * The work associated with a value of a join attribute is
+ * estimated as the product of its frequencies in all columns
+ * joined via that attribute (i.e., the number of tuple
+ * combinations sharing that value). Each partitioned
+ * dimension is divided into ranges of (approximately)
+ * equal estimated work; initial cubes are formed by
+ * the cross product of those ranges.
+ */
+public class CubePartitioner {
+    /**
+     * Maximal number of rows per column considered when
+     * estimating value frequencies (larger columns are
+     * sampled with a fixed stride).
+     */
+    static final int MAX_SAMPLE = 1 << 20;
+
+    /**
+     * Creates initial cubes for the given join value ranges.
+     *
+     * @param joinValues  value range of each join attribute
+     * @param joinColumns columns joined via each attribute
+     * @param nrCubes     targeted number of cubes
+     * @return list of initial cubes (may contain fewer cubes
+     * if values are too skewed to be split further)
+     */
+    public static List<Hypercube> partition(List<Pair<Integer, Integer>> joinValues,
+                                            List<List<IntData>> joinColumns, int nrCubes) {
+        int nrDims = joinValues.size();
+        int nrSplitDims = Math.max(1, Math.min(JoinConfig.PARTITION_DIMS, nrDims));
+        int partsPerDim = Math.max(1, (int) Math.round(
+                Math.pow(nrCubes, 1.0 / nrSplitDims)));
+        // Calculate start values of ranges for each partitioned dimension
+        int[][] rangeStarts = new int[nrSplitDims][];
+        for (int dimCtr = 0; dimCtr < nrSplitDims; ++dimCtr) {
+            int nrParts = dimCtr == 0 ? nrCubes / (int) Math.pow(
+                    partsPerDim, nrSplitDims - 1) : partsPerDim;
+            rangeStarts[dimCtr] = rangeStarts(joinColumns.get(dimCtr),
+                    joinValues.get(dimCtr).getFirst(),
+                    joinValues.get(dimCtr).getSecond(), Math.max(1, nrParts));
+        }
+        // Form cross product of ranges
+        List<Hypercube> cubes = new ArrayList<>();
+        int[] rangeCtrs = new int[nrSplitDims];
+        while (true) {
+            Hypercube cube = new Hypercube(nrDims);
+            for (int dimCtr = 0; dimCtr < nrDims; ++dimCtr) {
+                if (dimCtr < nrSplitDims) {
+                    int[] starts = rangeStarts[dimCtr];
+                    int rangeCtr = rangeCtrs[dimCtr];
+                    cube.lo[dimCtr] = starts[rangeCtr];
+                    cube.hi[dimCtr] = rangeCtr + 1 < starts.length ?
+                            starts[rangeCtr + 1] - 1 : joinValues.get(dimCtr).getSecond();
+                } else {
+                    cube.lo[dimCtr] = joinValues.get(dimCtr).getFirst();
+                    cube.hi[dimCtr] = joinValues.get(dimCtr).getSecond();
+                }
+            }
+            cubes.add(cube);
+            // Advance to next range combination
+            int dimCtr = nrSplitDims - 1;
+            while (dimCtr >= 0 && ++rangeCtrs[dimCtr] == rangeStarts[dimCtr].length) {
+                rangeCtrs[dimCtr] = 0;
+                --dimCtr;
+            }
+            if (dimCtr < 0) {
+                break;
+            }
+        }
+        return cubes;
+    }
+
+    /**
+     * Divides value range into ranges of approximately equal
+     * estimated work and returns the start value of each range.
+     * Falls back to ranges of equal width if no value appears
+     * in all columns.
+     *
+     * @param columns columns joined via the attribute
+     * @param lb      lower bound of value range
+     * @param ub      upper bound of value range
+     * @param nrParts targeted number of ranges
+     * @return start values of ranges (in ascending order)
+     */
+    static int[] rangeStarts(List<IntData> columns, int lb, int ub, int nrParts) {
+        // Estimate work for values that appear in all columns
+        int[] values = null;
+        double[] weights = null;
+        for (IntData column : columns) {
+            int[] sample = sortedSample(column);
+            // Count frequency of each distinct value
+            int nrDistinct = 0;
+            int[] colValues = new int[sample.length];
+            double[] colWeights = new double[sample.length];
+            double scale = stride(column.cardinality);
+            for (int i = 0; i < sample.length; ++i) {
+                if (i == 0 || sample[i] != sample[i - 1]) {
+                    colValues[nrDistinct++] = sample[i];
+                }
+                colWeights[nrDistinct - 1] += scale;
+            }
+            if (values == null) {
+                values = Arrays.copyOf(colValues, nrDistinct);
+                weights = Arrays.copyOf(colWeights, nrDistinct);
+            } else {
+                // Intersect with values of previous columns
+                int nrCommon = 0;
+                int pos = 0;
+                for (int i = 0; i < values.length; ++i) {
+                    while (pos < nrDistinct && colValues[pos] < values[i]) {
+                        ++pos;
+                    }
+                    if (pos < nrDistinct && colValues[pos] == values[i]) {
+                        values[nrCommon] = values[i];
+                        weights[nrCommon] = weights[i] * colWeights[pos];
+                        ++nrCommon;
+                    }
+                }
+                values = Arrays.copyOf(values, nrCommon);
+                weights = Arrays.copyOf(weights, nrCommon);
+            }
+        }
+        if (values == null || values.length == 0) {
+            return equalWidthStarts(lb, ub, nrParts);
+        }
+        // Start new range whenever accumulated work reaches next share
+        double totalWeight = 0;
+        for (double weight : weights) {
+            totalWeight += weight;
+        }
+        int[] starts = new int[nrParts];
+        int nrStarts = 1;
+        starts[0] = lb;
+        double accumulated = 0;
+        for (int i = 0; i < values.length && nrStarts < nrParts; ++i) {
+            if (accumulated >= totalWeight * nrStarts / nrParts &&
+                    values[i] > starts[nrStarts - 1] && values[i] <= ub) {
+                starts[nrStarts++] = values[i];
+            }
+            accumulated += weights[i];
+        }
+        return Arrays.copyOf(starts, nrStarts);
+    }
+
+    /**
+     * Returns sorted non-NULL values of the column (or of a
+     * sample of rows with fixed stride for large columns).
+     *
+     * @param column column to sample
+     * @return sorted sample of column values
+     */
+    static int[] sortedSample(IntData column) {
+        int card = column.cardinality;
+        int stride = stride(card);
+        int[] sample = new int[(card + stride - 1) / stride];
+        int nrSampled = 0;
+        for (int row = 0; row < card; row += stride) {
+            // NULL values do not satisfy equality predicates
+            if (!column.isNull.get(row)) {
+                sample[nrSampled++] = column.data[row];
+            }
+        }
+        sample = Arrays.copyOf(sample, nrSampled);
+        Arrays.parallelSort(sample);
+        return sample;
+    }
+
+    /**
+     * Returns stride with which rows are sampled.
+     *
+     * @param card cardinality of column
+     * @return distance between sampled rows
+     */
+    static int stride(int card) {
+        return Math.max(1, (card + MAX_SAMPLE - 1) / MAX_SAMPLE);
+    }
+
+    /**
+     * Divides value range into ranges of equal width.
+     *
+     * @param lb      lower bound of value range
+     * @param ub      upper bound of value range
+     * @param nrParts number of ranges
+     * @return start values of ranges
+     */
+    static int[] equalWidthStarts(int lb, int ub, int nrParts) {
+        long width = ((long) ub - lb) / nrParts;
+        if (width == 0) {
+            return new int[]{lb};
+        }
+        int[] starts = new int[nrParts];
+        for (int i = 0; i < nrParts; ++i) {
+            starts[i] = (int) (lb + i * width);
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,268 @@
+package joining.join.wcoj;
+
+import data.IntData;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Compressed trie that is built by hashing instead of sorting
+ * all tuples. Tuples are first partitioned by value ranges of
+ * the first trie column, then the trie of each partition is
+ * built in parallel, one level at a time: tuples are grouped
+ * by their parent node and key via a hash table, and only the
+ * distinct keys of each parent node are sorted. Build time is
+ * linear in the number of tuples, plus the time for sorting
+ * the children of each node (rather than all tuples), and
+ * iterators use the trie via the same interface as sorted
+ * tries.
+ */
+public class HashTrie extends CSRTrie {
+    /**
+     * Minimal number of tuples per partition.
+     */
+    static final int MIN_PARTITION_SIZE = 1 << 15;
+    /**
+     * Marks empty slots in hash tables.
+     */
+    static final long EMPTY = Long.MIN_VALUE;
+    /**
+     * Row IDs in trie order (i.e., grouped by
+     * trie nodes, with nodes in key order).
+     */
+    final int[] tupleOrder;
+
+    /**
+     * Initializes trie with given nodes and tuple order.
+     *
+     * @param keys       keys of nodes per level
+     * @param offsets    first child of nodes per level
+     * @param rows       first tuple of nodes in last level
+     * @param tupleOrder row IDs in trie order
+     */
+    HashTrie(int[][] keys, int[][] offsets, int[] rows, int[] tupleOrder) {
+        super(keys, offsets, rows);
+        this.tupleOrder = tupleOrder;
+    }
+
+    /**
+     * Trie built for one partition of the tuples
+     * (node indices and tuple positions are local
+     * to the partition).
+     */
+    static class Part {
+        final int[][] keys;
+        final int[][] offsets;
+        int[] rows;
+
+        Part(int nrLevels) {
+            keys = new int[nrLevels][];
+            offsets = new int[nrLevels - 1][];
+        }
+    }
+
+    /**
+     * Builds trie over the given columns.
+     *
+     * @param columns trie columns (in level order)
+     * @param card    number of rows
+     * @return trie indexing all rows
+     */
+    public static HashTrie build(List<IntData> columns, int card) {
+        int nrLevels = columns.size();
+        int[] firstCol = columns.get(0).data;
+        // Partition rows by value range of first column
+        int minValue = IntStream.range(0, card).parallel().map(row -> firstCol[row]).min().orElse(0);
+        int maxValue = IntStream.range(0, card).parallel().map(row -> firstCol[row]).max().orElse(0);
+        int maxParts = ForkJoinPool.getCommonPoolParallelism() * 4;
+        int nrParts = Integer.highestOneBit(Math.max(1, Math.min(maxParts, card / MIN_PARTITION_SIZE)));
+        int rangeBits = 64 - Long.numberOfLeadingZeros((long) maxValue - minValue);
+        int shift = Math.max(0, rangeBits - Integer.numberOfTrailingZeros(nrParts));
+        int[] partOf = new int[card];
+        Arrays.parallelSetAll(partOf, row -> (int) (((long) firstCol[row] - minValue) >>> shift));
+        int[] partStarts = new int[nrParts + 1];
+        for (int row = 0; row < card; ++row) {
+            ++partStarts[partOf[row] + 1];
+        }
+        for (int part = 0; part < nrParts; ++part) {
+            partStarts[part + 1] += partStarts[part];
+        }
+        int[] tupleOrder = new int[card];
+        int[] writePos = Arrays.copyOf(partStarts, nrParts);
+        for (int row = 0; row < card; ++row) {
+            tupleOrder[writePos[partOf[row]]++] = row;
+        }
+        // Build tries of partitions in parallel
+        Part[] parts = new Part[nrParts];
+        IntStream.range(0, nrParts).parallel().forEach(part -> parts[part] =
+                buildPart(columns, tupleOrder, partStarts[part], partStarts[part + 1]));
+        return concat(parts, partStarts, tupleOrder, nrLevels);
+    }
+
+    /**
+     * Builds trie for the rows at the given positions in the
+     * tuple order, reordering those rows into trie order.
+     *
+     * @param columns    trie columns
+     * @param tupleOrder row IDs (reordered in place)
+     * @param start      first position of partition
+     * @param end        position after partition
+     * @return trie of partition
+     */
+    static Part buildPart(List<IntData> columns, int[] tupleOrder, int start, int end) {
+        int nrLevels = columns.size();
+        int nrRows = end - start;
+        Part trie = new Part(nrLevels);
+        int[] order = Arrays.copyOfRange(tupleOrder, start, end);
+        int[] newOrder = new int[nrRows];
+        // Node of each row at the prior level (single root)
+        int[] parents = new int[nrRows];
+        int[] newParents = new int[nrRows];
+        int[] groups = new int[nrRows];
+        int capacity = Integer.highestOneBit(Math.max(1, nrRows)) << 2;
+        long[] slotKeys = new long[capacity];
+        int[] slotGroups = new int[capacity];
+        long[] groupKeys = new long[nrRows];
+        int mask = capacity - 1;
+        for (int level = 0; level < nrLevels; ++level) {
+            int[] data = columns.get(level).data;
+            // Group rows by parent node and key (groups of
+            // the same parent are numbered consecutively)
+            Arrays.fill(slotKeys, EMPTY);
+            int nrGroups = 0;
+            for (int pos = 0; pos < nrRows; ++pos) {
+                long groupKey = ((long) parents[pos] << 32) |
+                        ((data[order[pos]] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+                int slot = hash(groupKey) & mask;
+                while (slotKeys[slot] != EMPTY && slotKeys[slot] != groupKey) {
+                    slot = (slot + 1) & mask;
+                }
+                if (slotKeys[slot] == EMPTY) {
+                    slotKeys[slot] = groupKey;
+                    slotGroups[slot] = nrGroups;
+                    groupKeys[nrGroups++] = groupKey;
+                }
+                groups[pos] = slotGroups[slot];
+            }
+            // Sort children of each parent by key
+            int nrParents = level == 0 ? 1 : trie.keys[level - 1].length;
+            int[] parentOffsets = new int[nrParents + 1];
+            for (int group = 0; group < nrGroups; ++group) {
+                ++parentOffsets[(int) (groupKeys[group] >>> 32) + 1];
+            }
+            for (int parent = 0; parent < nrParents; ++parent) {
+                parentOffsets[parent + 1] += parentOffsets[parent];
+                Arrays.sort(groupKeys, parentOffsets[parent], parentOffsets[parent + 1]);
+            }
+            // Map groups to nodes and store node keys
+            int[] nodeOf = new int[nrGroups];
+            int[] nodeKeys = new int[nrGroups];
+            int[] nodeSizes = new int[nrGroups + 1];
+            for (int node = 0; node < nrGroups; ++node) {
+                long groupKey = groupKeys[node];
+                int slot = hash(groupKey) & mask;
+                while (slotKeys[slot] != groupKey) {
+                    slot = (slot + 1) & mask;
+                }
+                nodeOf[slotGroups[slot]] = node;
+                nodeKeys[node] = (int) groupKey ^ Integer.MIN_VALUE;
+            }
+            trie.keys[level] = nodeKeys;
+            if (level > 0) {
+                trie.offsets[level - 1] = parentOffsets;
+            }
+            // Reorder rows by node (stable)
+            for (int pos = 0; pos < nrRows; ++pos) {
+                ++nodeSizes[nodeOf[groups[pos]] + 1];
+            }
+            for (int node = 0; node < nrGroups; ++node) {
+                nodeSizes[node + 1] += nodeSizes[node];
+            }
+            if (level == nrLevels - 1) {
+                trie.rows = nodeSizes.clone();
+            }
+            for (int pos = 0; pos < nrRows; ++pos) {
+                int node = nodeOf[groups[pos]];
+                int newPos = nodeSizes[node]++;
+                newOrder[newPos] = order[pos];
+                newParents[newPos] = node;
+            }
+            int[] tmp = order;
+            order = newOrder;
+            newOrder = tmp;
+            tmp = parents;
+            parents = newParents;
+            newParents = tmp;
+        }
+        System.arraycopy(order, 0, tupleOrder, start, nrRows);
+        return trie;
+    }
+
+    /**
+     * Concatenates tries of partitions (which cover
+     * ascending value ranges of the first column).
+     *
+     * @param parts      tries of partitions
+     * @param partStarts first tuple position of each partition
+     * @param tupleOrder row IDs in trie order
+     * @param nrLevels   number of trie levels
+     * @return trie over all rows
+     */
+    static HashTrie concat(Part[] parts, int[] partStarts, int[] tupleOrder, int nrLevels) {
+        int nrParts = parts.length;
+        int lastLevel = nrLevels - 1;
+        int[][] keys = new int[nrLevels][];
+        int[][] offsets = new int[lastLevel][];
+        // First node of each partition per level
+        int[][] nodeBases = new int[nrLevels][nrParts + 1];
+        for (int level = 0; level < nrLevels; ++level) {
+            for (int part = 0; part < nrParts; ++part) {
+                nodeBases[level][part + 1] = nodeBases[level][part] +
+                        parts[part].keys[level].length;
+            }
+            keys[level] = new int[nodeBases[level][nrParts]];
+            for (int part = 0; part < nrParts; ++part) {
+                int[] partKeys = parts[part].keys[level];
+                System.arraycopy(partKeys, 0, keys[level],
+                        nodeBases[level][part], partKeys.length);
+            }
+        }
+        for (int level = 0; level < lastLevel; ++level) {
+            int nrNodes = keys[level].length;
+            offsets[level] = new int[nrNodes + 1];
+            for (int part = 0; part < nrParts; ++part) {
+                int[] partOffsets = parts[part].offsets[level];
+                int nodeBase = nodeBases[level][part];
+                int childBase = nodeBases[level + 1][part];
+                for (int node = 0; node < partOffsets.length - 1; ++node) {
+                    offsets[level][nodeBase + node] = childBase + partOffsets[node];
+                }
+            }
+            offsets[level][nrNodes] = keys[level + 1].length;
+        }
+        int nrLeaves = keys[lastLevel].length;
+        int[] rows = new int[nrLeaves + 1];
+        for (int part = 0; part < nrParts; ++part) {
+            int[] partRows = parts[part].rows;
+            int nodeBase = nodeBases[lastLevel][part];
+            for (int node = 0; node < partRows.length - 1; ++node) {
+                rows[nodeBase + node] = partStarts[part] + partRows[node];
+            }
+        }
+        rows[nrLeaves] = tupleOrder.length;
+        return new HashTrie(keys, offsets, rows, tupleOrder);
+    }
+
+    /**
+     * Hashes group key.
+     *
+     * @param key group key
+     * @return hash value
+     */
+    static int hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -1,16 +1,29 @@
 package joining.join.wcoj;
 
-//import joining.JoinCache;
+import config.JoinConfig;
+import joining.JoinCache;
+import joining.result.FactorizedResult;
+import joining.result.ResultBuffer;
 import util.Pair;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class HyperCubeEvaluationTask {
 
     public final LFTJoin[] joins;
 
-    private final List<Pair<Integer, Integer>> attributeValueBound;
+    /**
+     * Lower bound of join values for each variable
+     * (consistent with attribute order of this task).
+     */
+    private final int[] boundLBs;
+
+    /**
+     * Upper bound of join values for each variable
+     * (consistent with attribute order of this task).
+     */
+    private final int[] boundUBs;
 
     /**
      * Index of current variable in attribute order.
@@ -28,7 +41,7 @@ public class HyperCubeEvaluationTask {
      * Bookkeeping information associated
      * with attributes (needed to resume join).
      */
-    List<JoinFrame> joinFrames = new ArrayList<>();
+    final JoinFrame[] joinFrames;
 
     /**
      * Contains at i-th position the iterators
@@ -36,7 +49,7 @@ public class HyperCubeEvaluationTask {
      * variable (consistent with global
      * variable order).
      */
-    final List<List<LFTJoin>> joinsByVar;
+    final LFTJoin[][] joinsByVar;
 
     /**
      * Whether we backtracked in the last iteration
@@ -45,7 +58,179 @@ public class HyperCubeEvaluationTask {
      */
     boolean backtracked = false;
 
-//    HashMap<Integer, Pair<Set<Integer>, Set<Integer>>> cacheInfo;
+    /**
+     * Lower bounds of the hypercube processed in the
+     * current episode (in attribute order).
+     */
+    private final int[] cubeStartValues;
+
+    /**
+     * Upper bounds of the hypercube processed in the
+     * current episode (in attribute order).
+     */
+    private final int[] cubeEndValues;
+
+    /**
+     * Last processed point of the hypercube when
+     * the budget of the current episode runs out.
+     */
+    public final int[] endValues;
+
+    /**
+     * Whether the last episode processed its hypercube
+     * entirely (otherwise, endValues marks the point
+     * after which processing continues).
+     */
+    public boolean cubeFinished = false;
+
+    /**
+     * Number of result tuples generated in the
+     * last episode.
+     */
+    public long resultTuple = 0;
+
+    /**
+     * Number of search steps performed in the
+     * last episode.
+     */
+    public long usedBudget = 0;
+
+    /**
+     * ID of join thread executing this task (negative if
+     * remaining cubes are scheduled by a remote coordinator).
+     */
+    final int threadId;
+
+    /**
+     * Collects record IDs of result tuples (null
+     * if result tuples are only counted).
+     */
+    final ResultBuffer resultBuffer;
+
+    /**
+     * Record IDs of current result tuple (one
+     * entry per table in from clause).
+     */
+    final int[] ridBuffer;
+
+    /**
+     * Tables containing several tuples with the same values
+     * in all join columns (result tuples are expanded to all
+     * tuples in the leaf runs of those tables).
+     */
+    final int[] duplicateTables;
+
+    /**
+     * Tables containing duplicates whose join columns are
+     * all bound at each level of the attribute order.
+     */
+    final int[][] duplicatesByLevel;
+
+    /**
+     * Number of result tuples represented by the current
+     * binding of the variables before each level, i.e. the
+     * product of the leaf run lengths of tables completed
+     * at prior levels (one entry per level and one for the
+     * complete binding).
+     */
+    final long[] prefixWeights;
+
+    /**
+     * Length of the current leaf run of each table
+     * (one for tables without duplicates).
+     */
+    final int[] tableRunLengths;
+
+    /**
+     * First position of the leaf run of each table
+     * containing duplicates (in tuple sort order).
+     */
+    final int[] runStarts;
+
+    /**
+     * Position after the leaf run of each table
+     * containing duplicates.
+     */
+    final int[] runEnds;
+
+    /**
+     * Position of the currently added tuple in the
+     * leaf run of each table containing duplicates.
+     */
+    final int[] runPositions;
+
+    /**
+     * Collects result tuples in factorized form (null
+     * if result tuples are not factorized).
+     */
+    public final FactorizedResult factorizedResult;
+
+    /**
+     * Attribute values of current result tuple
+     * (consistent with attribute order of this task).
+     */
+    final int[] valueBuffer;
+
+    /**
+     * First level of the attribute order from which on result
+     * tuples are counted instead of enumerated (equals number
+     * of variables if all result tuples are enumerated).
+     */
+    final int countFromLevel;
+
+    /**
+     * Number of search steps performed by the last
+     * invocation of countSuffix().
+     */
+    int suffixCost;
+
+    /**
+     * Intersects runs of the last variable (or of suffix
+     * variables that are counted) in one pass.
+     */
+    final RunIntersection runIntersection = new RunIntersection();
+
+    /**
+     * Describes the cache key for result counts of the suffix
+     * starting at each level (null for levels whose suffix
+     * depends on all prior variables or is not cached).
+     */
+    final CacheAttribute[] cacheAttributes;
+
+    /**
+     * Whether result counts of any suffix are cached.
+     */
+    final boolean useCache;
+
+    /**
+     * Buffer for keys of cached suffix counts.
+     */
+    final long[] cacheKey;
+
+    /**
+     * Whether the count for the suffix starting at each level
+     * is stored once the current binding of prior variables
+     * is fully processed.
+     */
+    final boolean[] cachePending;
+
+    /**
+     * Value of resultTuple when entering the suffix starting
+     * at each level for the current prefix binding.
+     */
+    final long[] cacheStartCount;
+
+    /**
+     * Estimated memory used by iterators, frames, and
+     * buffers of this task in bytes (excluding tries,
+     * which are shared, and factorized results).
+     */
+    public final long estimatedBytes;
+
+    /**
+     * Approximate size of an object header in bytes.
+     */
+    static final int HEADER_BYTES = 16;
 
     /**
      * Advance to next variable in join order.
@@ -58,13 +243,155 @@ public class HyperCubeEvaluationTask {
      * Backtrack to previous variable in join order.
      */
     void backtrack() {
+        if (useCache && curVariableID < nrVars && cachePending[curVariableID]) {
+            // All result tuples for the current prefix were counted
+            cachePending[curVariableID] = false;
+            cacheAttributes[curVariableID].fillKey(joinFrames,
+                    cubeStartValues, cubeEndValues, cacheKey);
+            JoinCache.put(cacheKey, (resultTuple - cacheStartCount[curVariableID]) /
+                    prefixWeights[curVariableID]);
+        }
         curVariableID--;
         backtracked = true;
     }
 
-    public HyperCubeEvaluationTask(LFTJiter[] idToIter, List<List<Integer>> iterNumberByVar, List<Pair<Integer, Integer>> attributeValueBound) {
+    /**
+     * Adds result tuple at current iterator positions.
+     */
+    void addResultTuple() {
+        resultTuple += prefixWeights[nrVars];
+        if (resultBuffer != null) {
+            addResultRows();
+        }
+        if (factorizedResult != null) {
+            addFactorized();
+        }
+    }
+
+    /**
+     * Adds record IDs of all tuples matching the current
+     * iterator positions to the result buffer, i.e. the
+     * cross product of the leaf runs of all tables.
+     */
+    void addResultRows() {
+        for (int i = 0; i < joins.length; i++) {
+            ridBuffer[i] = joins[i].rid();
+        }
+        int nrDuplicates = duplicateTables.length;
+        if (nrDuplicates == 0) {
+            resultBuffer.add(ridBuffer);
+            return;
+        }
+        for (int dupCtr = 0; dupCtr < nrDuplicates; dupCtr++) {
+            int table = duplicateTables[dupCtr];
+            runStarts[dupCtr] = joins[table].runStart();
+            runEnds[dupCtr] = runStarts[dupCtr] + tableRunLengths[table];
+            runPositions[dupCtr] = runStarts[dupCtr];
+        }
+        int dupCtr = 0;
+        while (dupCtr >= 0) {
+            for (dupCtr = 0; dupCtr < nrDuplicates; dupCtr++) {
+                int table = duplicateTables[dupCtr];
+                ridBuffer[table] = joins[table].ridAt(runPositions[dupCtr]);
+            }
+            resultBuffer.add(ridBuffer);
+            // Advance to next combination of run positions
+            dupCtr = nrDuplicates - 1;
+            while (dupCtr >= 0 && ++runPositions[dupCtr] == runEnds[dupCtr]) {
+                runPositions[dupCtr] = runStarts[dupCtr];
+                --dupCtr;
+            }
+        }
+    }
+
+    /**
+     * Updates the number of result tuples represented by
+     * the binding of all variables up to the given level,
+     * after binding the variable at that level.
+     *
+     * @param level level of newly bound variable
+     */
+    void weigh(int level) {
+        long weight = prefixWeights[level];
+        for (int table : duplicatesByLevel[level]) {
+            int runLength = joins[table].runLength();
+            tableRunLengths[table] = runLength;
+            weight *= runLength;
+        }
+        prefixWeights[level + 1] = weight;
+    }
+
+    /**
+     * Returns the product of the leaf run lengths of the
+     * tables completed at the given level, for the keys
+     * at which iterators are currently positioned.
+     *
+     * @param level level in attribute order
+     * @return number of tuple combinations for current key
+     */
+    long runWeight(int level) {
+        long weight = 1;
+        for (int table : duplicatesByLevel[level]) {
+            weight *= joins[table].runLength();
+        }
+        return weight;
+    }
+
+    /**
+     * Adds result tuples for all keys shared by the runs
+     * of the given iterators of the last variable (after
+     * intersecting those runs).
+     *
+     * @param iters iterators of last variable
+     */
+    void addSharedKeys(LFTJoin[] iters) {
+        int nrKeys = runIntersection.nrKeys;
+        int lastLevel = nrVars - 1;
+        if (resultBuffer == null && factorizedResult == null &&
+                duplicatesByLevel[lastLevel].length == 0) {
+            resultTuple += nrKeys * prefixWeights[lastLevel];
+            return;
+        }
+        int[] keys = runIntersection.keys;
+        for (int keyCtr = 0; keyCtr < nrKeys; keyCtr++) {
+            int key = keys[keyCtr];
+            runIntersection.moveTo(iters, key);
+            joinFrames[lastLevel].maxKey = key;
+            if (factorizedResult != null) {
+                factorizedResult.bind(lastLevel);
+            }
+            weigh(lastLevel);
+            addResultTuple();
+        }
+    }
+
+    /**
+     * Adds current result tuple to the factorized result,
+     * retrieving only attribute values and leaf runs
+     * that are not stored in the trie yet.
+     */
+    void addFactorized() {
+        int firstPending = factorizedResult.firstPending();
+        for (int i = firstPending; i < nrVars; i++) {
+            valueBuffer[i] = joinFrames[i].maxKey;
+        }
+        int[] tableLevels = factorizedResult.tableLevels;
+        for (int i = 0; i < joins.length; i++) {
+            if (tableLevels[i] >= firstPending) {
+                ridBuffer[i] = joins[i].runStart();
+            }
+        }
+        factorizedResult.add(valueBuffer, ridBuffer, tableRunLengths);
+    }
+
+    public HyperCubeEvaluationTask(LFTJiter[] idToIter, List<List<Integer>> iterNumberByVar,
+                                   int[] attributeOrder, List<Pair<Integer, Integer>> attributeValueBound,
+                                   int threadId, ResultBuffer resultBuffer, boolean factorize) {
+        this.threadId = threadId;
+        this.resultBuffer = resultBuffer;
         // for every table in from clause
         int nrJoined = idToIter.length;
+        this.ridBuffer = new int[nrJoined];
         this.joins = new LFTJoin[nrJoined];
         for (int i = 0; i < nrJoined; i++) {
             this.joins[i] = new LFTJoin(idToIter[i]);
@@ -72,50 +399,169 @@ public class HyperCubeEvaluationTask {
         // Initialize stack for LFTJ algorithm
         this.nrVars = iterNumberByVar.size();
         this.curVariableID = 0;
+        this.joinFrames = new JoinFrame[nrVars];
+        for (int varCtr = 0; varCtr < nrVars; ++varCtr) {
+            joinFrames[varCtr] = new JoinFrame();
+        }
+        this.joinsByVar = new LFTJoin[nrVars][];
         for (int varCtr = 0; varCtr < nrVars; ++varCtr) {
-            JoinFrame joinFrame = new JoinFrame();
-            joinFrames.add(joinFrame);
-        }
-        this.joinsByVar = new ArrayList<>();
-        for (List<Integer> iters : iterNumberByVar) {
-            ArrayList<LFTJoin> joinByVar = new ArrayList<LFTJoin>();
-            for (Integer iter : iters) {
-                joinByVar.add(joins[iter]);
+            List<Integer> iters = iterNumberByVar.get(varCtr);
+            int nrIters = iters.size();
+            joinsByVar[varCtr] = new LFTJoin[nrIters];
+            for (int iterCtr = 0; iterCtr < nrIters; ++iterCtr) {
+                joinsByVar[varCtr][iterCtr] = joins[iters.get(iterCtr)];
             }
-            joinsByVar.add(joinByVar);
         }
-        this.attributeValueBound = attributeValueBound;
+        this.boundLBs = new int[nrVars];
+        this.boundUBs = new int[nrVars];
+        for (int varCtr = 0; varCtr < nrVars; ++varCtr) {
+            boundLBs[varCtr] = attributeValueBound.get(varCtr).getFirst();
+            boundUBs[varCtr] = attributeValueBound.get(varCtr).getSecond();
+        }
+        this.cubeStartValues = new int[nrVars];
+        this.cubeEndValues = new int[nrVars];
+        this.endValues = new int[nrVars];
+        this.valueBuffer = new int[nrVars];
+        // Tables are complete at the last level binding their attributes
+        int[] tableLevels = new int[nrJoined];
+        Arrays.fill(tableLevels, -1);
+        for (int varCtr = 0; varCtr < nrVars; ++varCtr) {
+            for (int iterCtr : iterNumberByVar.get(varCtr)) {
+                tableLevels[iterCtr] = varCtr;
+            }
+        }
+        // Result tuples of tables with duplicate join keys are expanded
+        boolean[] duplicates = new boolean[nrJoined];
+        List<List<Integer>> duplicatesByLevel = new ArrayList<>();
+        for (int varCtr = 0; varCtr < nrVars; ++varCtr) {
+            duplicatesByLevel.add(new ArrayList<>());
+        }
+        for (int i = 0; i < nrJoined; i++) {
+            if (tableLevels[i] >= 0 && !joins[i].uniqueTuples()) {
+                duplicates[i] = true;
+                duplicatesByLevel.get(tableLevels[i]).add(i);
+            }
+        }
+        this.duplicatesByLevel = new int[nrVars][];
+        for (int varCtr = 0; varCtr < nrVars; ++varCtr) {
+            this.duplicatesByLevel[varCtr] = duplicatesByLevel.get(varCtr).stream()
+                    .mapToInt(Integer::intValue).toArray();
+        }
+        this.duplicateTables = IntStream.range(0, nrJoined)
+                .filter(i -> duplicates[i]).toArray();
+        this.runStarts = new int[duplicateTables.length];
+        this.runEnds = new int[duplicateTables.length];
+        this.runPositions = new int[duplicateTables.length];
+        this.prefixWeights = new long[nrVars + 1];
+        this.prefixWeights[0] = 1;
+        this.tableRunLengths = new int[nrJoined];
+        Arrays.fill(tableRunLengths, 1);
+        if (factorize) {
+            int[][] tupleOrders = new int[nrJoined][];
+            for (int i = 0; i < nrJoined; i++) {
+                tupleOrders[i] = joins[i].lftJiter.tupleOrder;
+            }
+            this.factorizedResult = new FactorizedResult(nrVars,
+                    tableLevels, tupleOrders, duplicates);
+        } else {
+            this.factorizedResult = null;
+        }
+        // Variables in suffix are independent if no table binds two of them
+        int countFrom = nrVars;
+        if (JoinConfig.COUNT_SUFFIX && resultBuffer == null && !factorize) {
+            Set<LFTJoin> suffixIters = Collections.newSetFromMap(new IdentityHashMap<>());
+            boolean independent = true;
+            while (countFrom > 0 && independent) {
+                for (LFTJoin iter : joinsByVar[countFrom - 1]) {
+                    independent = independent && !suffixIters.contains(iter);
+                }
+                if (independent) {
+                    --countFrom;
+                    suffixIters.addAll(Arrays.asList(joinsByVar[countFrom]));
+                }
+            }
+        }
+        this.countFromLevel = countFrom;
+        // Cache counts of suffixes that do not depend on all prior variables
+        this.cacheAttributes = new CacheAttribute[nrVars];
+        boolean useCache = false;
+        if (JoinConfig.CACHE_ENABLE && resultBuffer == null && !factorize && nrVars <= 64) {
+            Set<Integer> suffixTables = new HashSet<>();
+            long suffixMask = 0;
+            for (int level = nrVars - 1; level > 0; --level) {
+                suffixTables.addAll(iterNumberByVar.get(level));
+                suffixMask |= 1L << attributeOrder[level];
+                List<Integer> keyLevels = new ArrayList<>();
+                for (int prior = 0; prior < level; ++prior) {
+                    if (!Collections.disjoint(iterNumberByVar.get(prior), suffixTables)) {
+                        keyLevels.add(prior);
+                    }
+                }
+                if (level < countFromLevel && keyLevels.size() < level) {
+                    Comparator<Integer> byAttribute = Comparator.comparingInt(l -> attributeOrder[l]);
+                    keyLevels.sort(byAttribute);
+                    List<Integer> suffixLevels = new ArrayList<>();
+                    for (int suffixLevel = level; suffixLevel < nrVars; ++suffixLevel) {
+                        suffixLevels.add(suffixLevel);
+                    }
+                    suffixLevels.sort(byAttribute);
+                    cacheAttributes[level] = new CacheAttribute(suffixMask,
+                            keyLevels.stream().mapToInt(Integer::intValue).toArray(),
+                            suffixLevels.stream().mapToInt(Integer::intValue).toArray());
+                    useCache = true;
+                }
+            }
+        }
+        this.useCache = useCache;
+        this.cacheKey = new long[nrVars];
+        this.cachePending = new boolean[nrVars];
+        this.cacheStartCount = new long[nrVars];
+        if (useCache) {
+            JoinCache.allocate(nrVars);
+        }
+        this.estimatedBytes = estimateBytes();
     }
 
-    double rewardFirstTupleScale(List<Integer>[] startTuplePosition, List<Integer>[] endTuplePosition, List<Integer>[] cardInfo, List<Integer> hypercubeValueStart, List<Integer> hypercubeValueEnd) {
-        double scaledReward = 0;
-        List<Integer> tupleStart = startTuplePosition[0];
-        List<Integer> tupleEnd = endTuplePosition[0];
-        List<Integer> tupleCard = cardInfo[0];
-        if (tupleStart != null && tupleEnd != null && tupleCard != null) {
-            for (int j = 0; j < tupleStart.size(); j++) {
-                double progressTuple = tupleEnd.get(j) - tupleStart.get(j);
-                scaledReward += progressTuple / (tupleCard.get(j) + 1);
-            }
-            scaledReward = scaledReward / tupleStart.size();
+    /**
+     * Estimates the memory used by iterator positions,
+     * frames, and buffers of this task.
+     *
+     * @return estimated size in bytes
+     */
+    long estimateBytes() {
+        // Task, arrays of iterators and frames, and record ID buffer
+        long bytes = 4 * HEADER_BYTES + 200 + 12L * joins.length + 8L * nrVars;
+        bytes += 4 * HEADER_BYTES + 16L * duplicateTables.length;
+        bytes += (nrVars + 3) * HEADER_BYTES + 12L * nrVars + 4L * joins.length +
+                4L * duplicateTables.length;
+        bytes += nrVars * (HEADER_BYTES + 32L);
+        for (LFTJoin join : joins) {
+            int nrLevels = join.curTuples.length;
+            bytes += 4 * HEADER_BYTES + 96 + 8L * nrLevels +
+                    8L * join.nrSeeksByStrategy.length;
         }
-        // scale with hypercube volume
-        for (int i = 1; i < hypercubeValueEnd.size(); i++) {
-            double hypercubeRange = hypercubeValueEnd.get(i) - hypercubeValueStart.get(i) + 1;
-            double dimRange = attributeValueBound.get(i).getSecond() - attributeValueBound.get(i).getFirst() + 1;
-            scaledReward = scaledReward * (hypercubeRange / dimRange);
+        for (LFTJoin[] iters : joinsByVar) {
+            bytes += 2 * HEADER_BYTES + 32 + 8L * iters.length;
         }
-        return scaledReward;
+        for (CacheAttribute cacheAttribute : cacheAttributes) {
+            if (cacheAttribute != null) {
+                bytes += 3 * HEADER_BYTES + 8 + 4L * (cacheAttribute.columnKeyIdx.length +
+                        cacheAttribute.columnValueIdx.length);
+            }
+        }
+        // Arrays of values per variable and run intersection buffers
+        bytes += 8 * HEADER_BYTES + 41L * nrVars + 4L * runIntersection.keys.length;
+        return bytes;
     }
 
-    double rewardFirstValueScale(List<Integer> attributesValueStart, List<Integer> attributesValueEnd, List<Integer> hypercubeValueEnd) {
-        double startInDim0 = attributesValueStart.get(0);
-        double endInDim0 = attributesValueEnd.get(0);
+    double rewardFirstValueScale(int[] attributesValueStart, int[] attributesValueEnd, int[] hypercubeValueEnd) {
+        double startInDim0 = attributesValueStart[0];
+        double endInDim0 = attributesValueEnd[0];
         double scaledReward = (endInDim0 - startInDim0);
-        scaledReward = scaledReward / (attributeValueBound.get(0).getSecond() - attributeValueBound.get(0).getFirst() + 1);
-        for (int i = 1; i < hypercubeValueEnd.size(); i++) {
-            double hypercubeRange = hypercubeValueEnd.get(i) - attributesValueStart.get(i) + 1;
-            double dimRange = attributeValueBound.get(i).getSecond() - attributeValueBound.get(i).getFirst() + 1;
+        scaledReward = scaledReward / (boundUBs[0] - boundLBs[0] + 1);
+        for (int i = 1; i < nrVars; i++) {
+            double hypercubeRange = hypercubeValueEnd[i] - attributesValueStart[i] + 1;
+            double dimRange = boundUBs[i] - boundLBs[i] + 1;
             scaledReward = scaledReward * (hypercubeRange / dimRange);
         }
         return scaledReward;
@@ -125,16 +571,142 @@ public class HyperCubeEvaluationTask {
         return ((double) nrProcessTuple) / ((double) budget);
     }
 
-    public Pair execute(int budget, int[] attributeOrder, Hypercube selectCube) {
+    /**
+     * Sorts iterators by their current keys, using
+     * insertion sort (the number of iterators per
+     * variable is small). The sort is stable.
+     *
+     * @param iters iterators to sort in place
+     */
+    static void sortByKey(LFTJoin[] iters) {
+        int nrIters = iters.length;
+        for (int i = 1; i < nrIters; ++i) {
+            LFTJoin iter = iters[i];
+            int key = iter.key();
+            int j = i - 1;
+            while (j >= 0 && iters[j].key() > key) {
+                iters[j + 1] = iters[j];
+                --j;
+            }
+            iters[j + 1] = iter;
+        }
+    }
 
-        List<Pair<Integer, Integer>> exploreDomain = selectCube.unfoldCube(attributeOrder);
+    /**
+     * Counts result tuples for the suffix of the attribute order
+     * starting at countFromLevel, given the values bound for prior
+     * variables. As no table binds two suffix variables, the count
+     * is the product of the number of matching tuple combinations
+     * per variable (scaled by the weight of the prefix binding).
+     * The search cost is stored in suffixCost.
+     *
+     * @return number of result tuples extending current prefix
+     */
+    long countSuffix() {
+        suffixCost = 0;
+        long count = prefixWeights[countFromLevel];
+        for (int level = countFromLevel; level < nrVars && count > 0; level++) {
+            count *= countKeys(level);
+        }
+        return count;
+    }
 
-        List<Integer> cubeStartValues = exploreDomain.stream().map(Pair::getFirst).collect(Collectors.toList());
-        List<Integer> cubeEndValues = exploreDomain.stream().map(Pair::getSecond).collect(Collectors.toList());
-        long resultTuple = 0;
-        int estimateBudget = budget;
+    /**
+     * Counts keys shared by all iterators of the variable at
+     * the given level within the bounds of the current cube.
+     * Keys of a single iterator are counted from range bounds
+     * if they are unique, keys of several iterators by a
+     * leapfrog intersection. Each key is weighted by the leaf
+     * run lengths of the tables completed at that level.
+     *
+     * @param level level in attribute order
+     * @return number of matching tuple combinations
+     */
+    long countKeys(int level) {
+        LFTJoin[] iters = joinsByVar[level];
+        int nrIters = iters.length;
+        int startKey = cubeStartValues[level];
+        int endKey = cubeEndValues[level];
+        boolean reachEnd = false;
+        for (LFTJoin iter : iters) {
+            iter.open();
+            suffixCost += iter.seek(startKey);
+            reachEnd = reachEnd || iter.atEnd() || iter.key() > endKey;
+        }
+        boolean weighted = duplicatesByLevel[level].length > 0;
+        long count = 0;
+        if (!reachEnd) {
+            if (nrIters == 1 && weighted) {
+                count = iters[0].nrTuplesUpTo(endKey);
+                suffixCost += iters[0].seekCost;
+            } else if (nrIters == 1 && iters[0].uniqueLeafKeys()) {
+                count = iters[0].nrKeysUpTo(endKey);
+                suffixCost += iters[0].seekCost;
+            } else if (nrIters > 1 && runIntersection.intersect(iters, endKey)) {
+                suffixCost += runIntersection.cost;
+                if (weighted) {
+                    int[] keys = runIntersection.keys;
+                    for (int keyCtr = 0; keyCtr < runIntersection.nrKeys; keyCtr++) {
+                        runIntersection.moveTo(iters, keys[keyCtr]);
+                        count += runWeight(level);
+                    }
+                } else {
+                    count = runIntersection.nrKeys;
+                }
+            } else {
+                sortByKey(iters);
+                int p = 0;
+                int maxKey = iters[nrIters - 1].key();
+                while (true) {
+                    LFTJoin minIter = iters[p];
+                    if (minIter.key() == maxKey) {
+                        count += weighted ? runWeight(level) : 1;
+                        if (maxKey == endKey) {
+                            break;
+                        }
+                        suffixCost += minIter.seek(maxKey + 1);
+                    } else {
+                        suffixCost += minIter.seek(maxKey);
+                    }
+                    if (minIter.atEnd() || minIter.key() > endKey) {
+                        break;
+                    }
+                    maxKey = minIter.key();
+                    p = (p + 1) % nrIters;
+                }
+            }
+        }
+        for (LFTJoin iter : iters) {
+            iter.up();
+        }
+        return count;
+    }
 
-        List<Integer>[] startTuplePosition = new ArrayList[nrVars];
+    /**
+     * Executes LFTJ on given hypercube until the budget is
+     * exhausted or the hypercube is fully processed. The
+     * number of result tuples generated is stored in
+     * resultTuple.
+     *
+     * @param budget         number of search steps in this episode
+     * @param attributeOrder order of join attributes
+     * @param selectCube     hypercube to process
+     * @return reward of this episode
+     */
+    public double execute(int budget, int[] attributeOrder, Hypercube selectCube) {
+
+        selectCube.unfold(attributeOrder, cubeStartValues, cubeEndValues);
+        resultTuple = 0;
+        if (useCache) {
+            Arrays.fill(cachePending, false);
+        }
+//        int estimateBudget = budget;
+        if (factorizedResult != null) {
+            factorizedResult.startEpisode();
+        }
+        // interrupt earlier if other threads wait for cubes
+        int initialBudget = budget;
+        int splitBudget = budget - JoinConfig.MIN_STEPS_BEFORE_SPLIT;
 
         // step one: reset the iterator
         for (LFTJoin join : joins) {
@@ -152,18 +724,18 @@ public class HyperCubeEvaluationTask {
             // Did we finish processing?
             // current position
             JoinFrame joinFrame = curVariableID >= nrVars ?
-                    null : joinFrames.get(curVariableID);
+                    null : joinFrames[curVariableID];
 
             // Go directly to point of interrupt?
             if (backtracked) {
                 // if it is backtracked
                 backtracked = false;
-                LFTJoin minIter = joinFrame.curIters.get(joinFrame.p);
+                LFTJoin minIter = joinFrame.curIters[joinFrame.p];
                 minIter.seek(joinFrame.maxKey + 1);
                 // budget -= minIter.seek(joinFrame.maxKey + 1);
                 // Check for early termination
                 // if iterator reach to the end of select hypercube
-                if (minIter.atEnd() || minIter.key() > exploreDomain.get(curVariableID).getSecond()) {
+                if (minIter.atEnd() || minIter.key() > cubeEndValues[curVariableID]) {
                     // Go one level up in each trie
                     for (LFTJoin iter : joinFrame.curIters) {
                         iter.up();
@@ -175,43 +747,44 @@ public class HyperCubeEvaluationTask {
                 joinFrame.maxKey = minIter.key();
                 joinFrame.p = (joinFrame.p + 1) % joinFrame.nrCurIters;
 
-                // cache result here
-//                if (this.cacheInfo.containsKey(curVariableID)) {
-//                    Set<Integer> keysToCache = this.cacheInfo.get(curVariableID).getFirst();
-//                    // obtain the seek value of cache key
-//                    Set<Pair<Integer, Integer>> cacheAttributeKeyAndValue = new HashSet<>();
-//                    for (Integer keyToCache : keysToCache) {
-//                        Integer valueToCache = joinFrames.get(keyToCache).maxKey;
-//                        cacheAttributeKeyAndValue.add(new Pair<>(keyToCache, valueToCache));
-//                    }
-//                    if (!JoinCache.cacheResult.contains(cacheAttributeKeyAndValue)) {
-//                        System.out.println("cache value:" + cacheResult[curVariableID]);
-//                        JoinCache.cacheResult.put(cacheAttributeKeyAndValue, cacheResult[curVariableID]);
-//                    }
-//                }
-                // end of cache
-
             } else {
                 // go to next level
                 // Have we completed a result tuple?
                 if (curVariableID >= nrVars) {
-                    resultTuple += 1;
+                    addResultTuple();
                     backtrack();
-                    // update cache information
-//                    for (int i = 0; i < nrVars; i++) {
-//                        cacheResult[i] += 1;
-//                    }
                     continue;
                 }
 
-                // Collect relevant iterators
-                joinFrame.curIters = joinsByVar.get(curVariableID);
-                joinFrame.nrCurIters = joinFrame.curIters.size();
+                // Count remaining result tuples without enumerating them?
+                if (curVariableID == countFromLevel) {
+                    resultTuple += countSuffix();
+                    budget -= suffixCost;
+                    backtrack();
+                    continue;
+                }
 
-                List<LFTJoin> iters = joinFrame.curIters;
+                // Reuse count of suffix for same values of its dependencies?
+                if (useCache && cacheAttributes[curVariableID] != null) {
+                    cacheAttributes[curVariableID].fillKey(joinFrames,
+                            cubeStartValues, cubeEndValues, cacheKey);
+                    long cachedCount = JoinCache.get(cacheKey);
+                    if (cachedCount >= 0) {
+                        resultTuple += cachedCount * prefixWeights[curVariableID];
+                        backtrack();
+                        continue;
+                    }
+                    cachePending[curVariableID] = true;
+                    cacheStartCount[curVariableID] = resultTuple;
+                }
 
-                int startKey = exploreDomain.get(curVariableID).getFirst();
-                int endKey = exploreDomain.get(curVariableID).getSecond();
+                // Collect relevant iterators
+                LFTJoin[] iters = joinsByVar[curVariableID];
+                joinFrame.curIters = iters;
+                joinFrame.nrCurIters = iters.length;
+
+                int startKey = cubeStartValues[curVariableID];
+                int endKey = cubeEndValues[curVariableID];
                 // open lftj iterator
                 for (LFTJoin iter : iters) {
                     iter.open();
@@ -238,115 +811,71 @@ public class HyperCubeEvaluationTask {
                     continue;
                 } else {
 
-//                    // before start join, check whether is cached
-//                    if(this.cacheInfo.containsKey(curVariableID)) {
-//                        Set<Integer> keysToCache = this.cacheInfo.get(curVariableID).getFirst();
-//                        // obtain the seek value of cache key
-//                        Set<Pair<Integer, Integer>> cacheAttributeKeyAndValue = new HashSet<>();
-//                        for (Integer keyToCache : keysToCache) {
-//                            Integer valueToCache = joinFrames.get(keyToCache).maxKey;
-//                            cacheAttributeKeyAndValue.add(new Pair<>(keyToCache, valueToCache));
-//                        }
-//                        if (JoinCache.cacheResult.contains(cacheAttributeKeyAndValue)) {
-//                            System.out.println("using cache value!");
-//                            resultTuple += JoinCache.cacheResult.get(cacheAttributeKeyAndValue);
-//                            // skip the next executions
-//                            backtrack();
-//                            continue;
-//                        }
-//                    }
-//
-//
-                    if (startTuplePosition[curVariableID] == null) {
-                        ArrayList<Integer> tuplePosition = new ArrayList<>();
-                        for (LFTJoin curJoin : joinsByVar.get(curVariableID)) {
-                            tuplePosition.add(curJoin.curTuples[curJoin.curTrieLevel]);
+                    // Intersect runs of last variable in one pass?
+                    if (curVariableID == nrVars - 1 && iters.length > 1 &&
+                            runIntersection.intersect(iters, endKey)) {
+                        budget -= runIntersection.cost;
+                        addSharedKeys(iters);
+                        for (LFTJoin iter : iters) {
+                            iter.up();
                         }
-                        startTuplePosition[curVariableID] = tuplePosition;
+                        backtrack();
+                        continue;
                     }
 
                     // Sort iterators by their keys
-                    Collections.sort(iters, new Comparator<LFTJoin>() {
-                        @Override
-                        public int compare(LFTJoin o1, LFTJoin o2) {
-                            return Integer.compare(o1.key(), o2.key());
-                        }
-                    });
+                    sortByKey(iters);
 
                     // Execute search procedure
                     joinFrame.p = 0;
                     joinFrame.maxIterPos = (joinFrame.nrCurIters + joinFrame.p - 1) % joinFrame.nrCurIters;
-                    joinFrame.maxKey = joinFrame.curIters.get(joinFrame.maxIterPos).key();
+                    joinFrame.maxKey = joinFrame.curIters[joinFrame.maxIterPos].key();
                 }
             }
 
-            int endKey = exploreDomain.get(curVariableID).getSecond();
+            int endKey = cubeEndValues[curVariableID];
             // execute join
             while (true) {
 
                 // Count current round
                 // Check for timeout and not in the last end
-                if (budget <= 0) {
+                if (budget <= 0 || HypercubeManager.splitRequested && budget <= splitBudget) {
 
                     // timeout, save final state
                     // hypercube
-                    List<Integer> endValues = new ArrayList<>();
                     for (int i = 0; i < curVariableID; i++) {
-                        int endValue = joinFrames.get(i).maxKey;
-                        endValues.add(endValue);
+                        endValues[i] = joinFrames[i].maxKey;
                     }
                     // for position curVariableID, [5, 9 ...], [5, 8, max, max]
                     // todo
-                    endValues.add(joinFrames.get(curVariableID).maxKey - 1);
+                    endValues[curVariableID] = joinFrames[curVariableID].maxKey - 1;
                     for (int i = curVariableID + 1; i < nrVars; i++) {
-                        endValues.add(exploreDomain.get(i).getSecond());
+                        endValues[i] = cubeEndValues[i];
                     }
 
-                    // final position of tuple
-                    List<Integer>[] endTuplePosition = new ArrayList[nrVars];
-                    List<Integer>[] cardInfo = new ArrayList[nrVars];
-                    Map<LFTJoin, Integer> tableTrieLevel = new HashMap<>();
-                    for (int i = 0; i < nrVars; i++) {
-                        List<LFTJoin> curJoins = joinsByVar.get(i);
-                        ArrayList<Integer> tuplePosition = new ArrayList<>();
-                        ArrayList<Integer> tupleCardEach = new ArrayList<>();
-                        for (LFTJoin curJoin : curJoins) {
-                            int trieLevel = tableTrieLevel.getOrDefault(curJoin, 0);
-                            tuplePosition.add(curJoin.curTuples[trieLevel]);
-                            tupleCardEach.add(curJoin.curUBs[trieLevel]);
-                            tableTrieLevel.put(curJoin, trieLevel + 1);
-                        }
-                        endTuplePosition[i] = tuplePosition;
-                        cardInfo[i] = tupleCardEach;
+                    if (threadId >= 0) {
+                        HypercubeManager.updateInterval(selectCube, endValues, attributeOrder, threadId);
                     }
-
-                    HypercubeManager.updateInterval(selectCube, endValues, attributeOrder);
+                    cubeFinished = false;
+                    usedBudget = initialBudget - budget;
 
 //                    double budgetScale = (estimateBudget) / (double) (estimateBudget - budget);
                     double reward = Math.max(rewardFirstValueScale(cubeStartValues, endValues, cubeEndValues), 0);
-//                    double reward = Math.max(rewardFirstTupleScale(startTuplePosition, endTuplePosition, tupleCard, cubeStartValues, cubeEndValues), 0);
 //                    double reward = rewardNrTuple((estimateBudget - budget), resultTuple);
 
-//                    System.out.println("1 join order:" + Arrays.toString(attributeOrder) +
-//                            ", startTuplePosition:" + Arrays.toString(startTuplePosition) +
-//                            ", endTuplePosition:" + Arrays.toString(endTuplePosition) +
-//                            ", tupleCard:" + Arrays.toString(tupleCard) +
-//                            ", start value:" + cubeStartValues +
-//                            ", end value:" + endValues +
-//                            ", hypercube:" + exploreDomain +
-//                            ", reward:" + reward
-//                    );
-
-                    return new Pair(reward, resultTuple);
+                    return reward;
                 }
 
                 // Get current key
-                LFTJoin minIter = joinFrame.curIters.get(joinFrame.p);
+                LFTJoin minIter = joinFrame.curIters[joinFrame.p];
                 int minKey = minIter.key();
 
                 // Did we find a match between iterators?
                 if (minKey == joinFrame.maxKey) {
-                    // test whether key are cached or not
+                    if (factorizedResult != null) {
+                        factorizedResult.bind(curVariableID);
+                    }
+                    weigh(curVariableID);
                     advance();
                     // go to next level
                     break;
@@ -370,41 +899,16 @@ public class HyperCubeEvaluationTask {
         }
 
         //  finish query
-        HypercubeManager.finishHyperCube();
-        double budgetScale = (estimateBudget) / (double) (estimateBudget - budget);
-
-        // final position of tuple
-        List<Integer>[] endTuplePosition = new ArrayList[nrVars];
-        List<Integer>[] cardInfo = new ArrayList[nrVars];
-        Map<LFTJoin, Integer> tableTrieLevel = new HashMap<>();
-        for (int i = 0; i < nrVars; i++) {
-            List<LFTJoin> curJoins = joinsByVar.get(i);
-            ArrayList<Integer> tuplePosition = new ArrayList<>();
-            ArrayList<Integer> tupleCardEach = new ArrayList<>();
-            for (LFTJoin curJoin : curJoins) {
-                int trieLevel = tableTrieLevel.getOrDefault(curJoin, 0);
-                tuplePosition.add(curJoin.curTuples[trieLevel]);
-                tupleCardEach.add(curJoin.curUBs[trieLevel]);
-                tableTrieLevel.put(curJoin, trieLevel + 1);
-            }
-            endTuplePosition[i] = tuplePosition;
-            cardInfo[i] = tupleCardEach;
+        if (threadId >= 0) {
+            HypercubeManager.finishHyperCube(selectCube, threadId);
         }
+        cubeFinished = true;
+        usedBudget = initialBudget - budget;
+//        double budgetScale = (estimateBudget) / (double) (estimateBudget - budget);
 
         double reward = Math.max(rewardFirstValueScale(cubeStartValues, cubeEndValues, cubeEndValues), 0);
-//        double reward = Math.max(rewardFirstTupleScale(startTuplePosition, endTuplePosition, tupleCard, cubeStartValues, cubeEndValues), 0);
 //        double reward = rewardNrTuple((estimateBudget - budget), resultTuple);
 
-//        System.out.println("2 join order:" + Arrays.toString(attributeOrder) +
-//                ", startTuplePosition:" + Arrays.toString(startTuplePosition) +
-//                ", endTuplePosition:" + Arrays.toString(endTuplePosition) +
-//                ", tupleCard:" + Arrays.toString(tupleCard) +
-//                ", start value:" + cubeStartValues +
-//                ", end value:" + cubeEndValues +
-//                ", hypercube:" + exploreDomain +
-//                ", reward:" + reward
-//        );
-
-        return new Pair(reward, resultTuple);
+        return reward;
     }
-}
\ No newline at end of file
+}
@@ -3,56 +3,82 @@ package joining.join.wcoj;
 import util.Pair;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
+/**
+ * Hypercube in the space of join attribute values, stored
+ * as lower and upper bound (both inclusive) per dimension.
+ * Dimensions follow the universal attribute order (i.e.,
+ * the order of equivalence classes in the query).
+ */
 public class Hypercube {
 
-    public List<Pair<Integer, Integer>> intervals;
-
-//    public boolean explore;
-
-    final int dim;
+    /**
+     * Lower bound of each dimension (inclusive).
+     */
+    public final int[] lo;
+
+    /**
+     * Upper bound of each dimension (inclusive).
+     */
+    public final int[] hi;
+
+    /**
+     * Number of dimensions (zero for the special
+     * cube signaling termination).
+     */
+    public final int dim;
+
+    public Hypercube(int dim) {
+        this.lo = new int[dim];
+        this.hi = new int[dim];
+        this.dim = dim;
+    }
 
-    public Hypercube(List<Pair<Integer, Integer>> intervals) {
-        this.intervals = intervals;
-        this.dim = intervals.size();
-//        this.explore = false;
+    public Hypercube(int[] lo, int[] hi) {
+        this.lo = lo;
+        this.hi = hi;
+        this.dim = lo.length;
     }
 
-//    public double getVolume() {
-//        double volume = 1;
-//        int toIndex = Math.min(3, intervals.size());
-//        for (Pair<Integer, Integer> interval: intervals.subList(0, toIndex)) {
-//            volume *= (interval.getSecond() - interval.getFirst() + 1);
-//        }
-////        System.out.println("volume:" + volume);
-//        return volume;
-//    }
-
-    public List<Pair<Integer, Integer>> unfoldCube(int[] order) {
-        return Arrays.stream(order).mapToObj(intervals::get).collect(Collectors.toList());
+    public Hypercube(List<Pair<Integer, Integer>> intervals) {
+        this(intervals.size());
+        for (int i = 0; i < dim; i++) {
+            lo[i] = intervals.get(i).getFirst();
+            hi[i] = intervals.get(i).getSecond();
+        }
     }
 
-    public void addDimension(int start, int end) {
-        intervals.add(new Pair<Integer, Integer>(start, end));
+    /**
+     * Copies bounds of given cube (with same number
+     * of dimensions) into this cube.
+     *
+     * @param cube copy bounds of this cube
+     */
+    public void copyFrom(Hypercube cube) {
+        System.arraycopy(cube.lo, 0, lo, 0, dim);
+        System.arraycopy(cube.hi, 0, hi, 0, dim);
     }
 
-    public void alignToUniversalOrder(int order[]) {
-        // [1, 0, 2], [[1, 3], [4, 5], [2, 6]] -> [[4, 5], [1, 3], [2, 6]]
-        Pair<Integer, Integer>[] reorderInterval = new Pair[dim];
+    /**
+     * Writes bounds in the given attribute order into
+     * the given buffers (i.e., the i-th buffer entry
+     * refers to dimension order[i]).
+     *
+     * @param order attribute order
+     * @param los   buffer for lower bounds
+     * @param his   buffer for upper bounds
+     */
+    public void unfold(int[] order, int[] los, int[] his) {
         for (int i = 0; i < dim; i++) {
-            reorderInterval[order[i]] = intervals.get(i);
+            los[i] = lo[order[i]];
+            his[i] = hi[order[i]];
         }
-        intervals = Arrays.asList(reorderInterval);
-//        intervals.sort(Comparator.comparing(s -> order[intervals.indexOf(s)]));
     }
 
     public boolean overlap(Hypercube cube) {
         for (int i = 0; i < dim; i++) {
-            Pair<Integer, Integer> interval1 = intervals.get(i);
-            Pair<Integer, Integer> interval2 = cube.intervals.get(i);
             // test whether interval1 overlap interval2
-            if (!(interval1.getFirst() <= interval2.getSecond() && interval2.getFirst() <= interval1.getSecond())){
+            if (!(lo[i] <= cube.hi[i] && cube.lo[i] <= hi[i])) {
                 return false;
             }
         }
@@ -60,117 +86,125 @@ public class Hypercube {
     }
 
     public List<Hypercube> subtract(Hypercube subtractCube) {
-        System.out.println("currentCube:" + this);
-        System.out.println("subtractCube:" + subtractCube);
         List<Hypercube> subCubes = new ArrayList<>();
         for (int i = 0; i < dim; i++) {
-            // interval on dimension i
-            Pair<Integer, Integer> intervalOnI = intervals.get(i);
-            Pair<Integer, Integer> subIntervalOnI = subtractCube.intervals.get(i);
-            int intervalOnIStart = intervalOnI.getFirst();
-            int intervalOnIEnd = intervalOnI.getSecond();
-            int subIntervalOnIStart = subIntervalOnI.getFirst();
-            int subIntervalOnIEnd = subIntervalOnI.getSecond();
-            if (intervalOnIStart < subIntervalOnIStart && intervalOnIEnd > subIntervalOnIEnd) {
-                // e.g., 1, 7; 3, 6
-                Pair<Integer, Integer> newIntervalOnI1 = new Pair<>(intervalOnIStart, subIntervalOnIStart - 1);
-                Pair<Integer, Integer> newIntervalOnI2 = new Pair<>(subIntervalOnIEnd + 1, intervalOnIEnd);
-                List<Pair<Integer, Integer>> subIntervals1 = new ArrayList<>(this.intervals);
-                subIntervals1.set(i, newIntervalOnI1);
-                Hypercube cube1 = new Hypercube(subIntervals1);
-                subCubes.add(cube1);
-                List<Pair<Integer, Integer>> subIntervals2 = new ArrayList<>(this.intervals);
-                subIntervals2.set(i, newIntervalOnI2);
-                Hypercube cube2 = new Hypercube(subIntervals2);
-                subCubes.add(cube2);
-            } else if (intervalOnIStart < subIntervalOnIStart && intervalOnIEnd == subIntervalOnIEnd) {
-                // e.g., 1, 5; 3, 5
-                Pair<Integer, Integer> newIntervalOnI = new Pair<>(intervalOnIStart, subIntervalOnIStart - 1);
-                List<Pair<Integer, Integer>> subIntervals = new ArrayList<>(this.intervals);
-                subIntervals.set(i, newIntervalOnI);
-                Hypercube cube = new Hypercube(subIntervals);
+            int intervalOnIStart = lo[i];
+            int intervalOnIEnd = hi[i];
+            int subIntervalOnIStart = subtractCube.lo[i];
+            int subIntervalOnIEnd = subtractCube.hi[i];
+            if (intervalOnIStart < subIntervalOnIStart) {
+                // e.g., 1, 7; 3, 6 or 1, 5; 3, 5
+                Hypercube cube = new Hypercube(dim);
+                cube.copyFrom(this);
+                cube.hi[i] = subIntervalOnIStart - 1;
                 subCubes.add(cube);
-            } else if (intervalOnIEnd > subIntervalOnIEnd && intervalOnIStart == subIntervalOnIStart) {
-                // e.g., 1, 5; 1, 4
-                Pair<Integer, Integer> newIntervalOnI = new Pair<>(subIntervalOnIEnd + 1, intervalOnIEnd);
-                List<Pair<Integer, Integer>> subIntervals = new ArrayList<>(this.intervals);
-                subIntervals.set(i, newIntervalOnI);
-                Hypercube cube = new Hypercube(subIntervals);
+            }
+            if (intervalOnIEnd > subIntervalOnIEnd) {
+                // e.g., 1, 7; 3, 6 or 1, 5; 1, 4
+                Hypercube cube = new Hypercube(dim);
+                cube.copyFrom(this);
+                cube.lo[i] = subIntervalOnIEnd + 1;
                 subCubes.add(cube);
             }
         }
         return subCubes;
     }
 
-    public List<Hypercube> subtractByPoint(List<Integer> points) {
-        List<Hypercube> subCubes = new ArrayList<>();
-        for (int i = 0; i < dim; i++) {
-            // point in i-th dimension
-            int vb = points.get(i);
-            int ub = this.intervals.get(i).getSecond();
+    /**
+     * Returns cubes covering the part of this cube that
+     * follows the given point in lexicographic order
+     * (with dimensions in the given attribute order).
+     * Cubes are allocated via the given pool; this cube
+     * is reused for one of the remaining cubes or released
+     * to the pool if no cube remains.
+     *
+     * @param points last processed point (in attribute order)
+     * @param order  attribute order
+     * @param pool   allocates and releases cubes
+     * @param out    add remaining cubes to this collection
+     * @return number of remaining cubes
+     */
+    public int subtractByPoint(int[] points, int[] order,
+                               HypercubePool pool, Collection<Hypercube> out) {
+        // Find last dimension with remaining values
+        int last = dim - 1;
+        while (last >= 0 && points[last] >= hi[order[last]]) {
+            --last;
+        }
+        if (last < 0) {
+            pool.release(this);
+            return 0;
+        }
+        int nrCubes = 0;
+        // Copy cube before this cube is modified
+        for (int i = 0; i < last; i++) {
+            int vb = points[i];
+            int ub = hi[order[i]];
             if (vb < ub) {
-                List<Pair<Integer, Integer>> subIntervals = new ArrayList<>(this.intervals);
+                Hypercube cube = pool.allocate(dim);
+                cube.copyFrom(this);
                 for (int j = 0; j < i; j++) {
-                    subIntervals.set(j, new Pair<Integer, Integer>(points.get(j), points.get(j)));
+                    cube.lo[order[j]] = points[j];
+                    cube.hi[order[j]] = points[j];
                 }
-                subIntervals.set(i, new Pair<Integer, Integer>(vb + 1, ub));
-                subCubes.add(new Hypercube(subIntervals));
+                cube.lo[order[i]] = vb + 1;
+                out.add(cube);
+                ++nrCubes;
             }
         }
+        // Reuse this cube for last dimension
+        for (int j = 0; j < last; j++) {
+            lo[order[j]] = points[j];
+            hi[order[j]] = points[j];
+        }
+        lo[order[last]] = points[last] + 1;
+        out.add(this);
+        return nrCubes + 1;
+    }
+
+    /**
+     * Returns cubes covering the part of this cube that
+     * follows the given point in lexicographic order
+     * (with dimensions in the universal order).
+     *
+     * @param points last processed point
+     * @return remaining cubes
+     */
+    public List<Hypercube> subtractByPoint(int[] points) {
+        int[] order = new int[dim];
+        for (int i = 0; i < dim; i++) {
+            order[i] = i;
+        }
+        Hypercube copy = new Hypercube(dim);
+        copy.copyFrom(this);
+        List<Hypercube> subCubes = new ArrayList<>();
+        copy.subtractByPoint(points, order, new HypercubePool(0), subCubes);
         return subCubes;
     }
 
     @Override
     public String toString() {
-        return String.format("hypercube:%s", intervals.toString());
+        StringBuilder builder = new StringBuilder("hypercube:[");
+        for (int i = 0; i < dim; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append("[").append(lo[i]).append(",").append(hi[i]).append("]");
+        }
+        return builder.append("]").toString();
     }
 
     public static void main(String[] args) {
-        List<Pair<Integer, Integer>> intervals = new ArrayList<>();
-        intervals.add(new Pair<>(1, 10));
-        intervals.add(new Pair<>(3, 7));
-        intervals.add(new Pair<>(2, 8));
-        Hypercube hypercube = new Hypercube(intervals);
-        //        List<Pair<Integer, Integer>> subIntervals = new ArrayList<>();
-        //        subIntervals.add(new Pair<>(2, 6));
-        //        subIntervals.add(new Pair<>(4, 5));
-        //        subIntervals.add(new Pair<>(2, 4));
-        //        Hypercube subCube = new Hypercube(subIntervals);
-        //        Hypercube{intervals=[Pair{key=1, value=1}, Pair{key=3, value=5}, Pair{key=2, value=8}], dim=3},
-        //        Hypercube{intervals=[Pair{key=7, value=10}, Pair{key=3, value=5}, Pair{key=2, value=8}], dim=3},
-        //        Hypercube{intervals=[Pair{key=1, value=10}, Pair{key=3, value=3}, Pair{key=2, value=8}], dim=3},
-        //        Hypercube{intervals=[Pair{key=1, value=10}, Pair{key=3, value=5}, Pair{key=5, value=8}], dim=3}
-
-        List<Integer> points1 = new ArrayList<>();
-        points1.add(5);
-        points1.add(4);
-        points1.add(8);
-        List<Integer> points2 = new ArrayList<>();
-        points2.add(3);
-        points2.add(6);
-        points2.add(2);
-        List<Integer> points3 = new ArrayList<>();
-        points3.add(10);
-        points3.add(4);
-        points3.add(5);
-        List<Integer> points4 = new ArrayList<>();
-        points4.add(9);
-        points4.add(7);
-        points4.add(5);
-        List<Integer> points5 = new ArrayList<>();
-        points5.add(10);
-        points5.add(7);
-        points5.add(8);
-        List<Integer> points6 = new ArrayList<>();
+        Hypercube hypercube = new Hypercube(new int[]{1, 3, 2}, new int[]{10, 7, 8});
+        int[] points1 = {5, 4, 8};
+        int[] points2 = {3, 6, 2};
+        int[] points3 = {10, 4, 5};
+        int[] points4 = {9, 7, 5};
+        int[] points5 = {10, 7, 8};
         // if reach to [5, 4]
-        points6.add(5);
-        points6.add(3);
-        points6.add(8);
-        List<Integer> points7 = new ArrayList<>();
+        int[] points6 = {5, 3, 8};
         // if reach to [5]
-        points7.add(4);
-        points7.add(7);
-        points7.add(8);
+        int[] points7 = {4, 7, 8};
         System.out.println(hypercube.subtractByPoint(points1));
         System.out.println(hypercube.subtractByPoint(points2));
         System.out.println(hypercube.subtractByPoint(points3));
@@ -178,20 +212,15 @@ public class Hypercube {
         System.out.println(hypercube.subtractByPoint(points5));
         System.out.println(hypercube.subtractByPoint(points6));
         System.out.println(hypercube.subtractByPoint(points7));
-        int[] order = {1, 2, 0};
-        hypercube.alignToUniversalOrder(order);
-        System.out.println(hypercube);
-
-        List<Pair<Integer, Integer>> intervals2 = new ArrayList<>();
-        intervals2.add(new Pair<>(3002, 4000));
-        intervals2.add(new Pair<>(2001, 3000));
-        intervals2.add(new Pair<>(1001, 2000));
-        intervals2.add(new Pair<>(2, 1000));
-        Hypercube hypercube2 = new Hypercube(intervals2);
+
+        Hypercube hypercube2 = new Hypercube(new int[]{3002, 2001, 1001, 2},
+                new int[]{4000, 3000, 2000, 1000});
         int[] order2 = {0, 3, 1, 2};
-        hypercube2.alignToUniversalOrder(order2);
-        System.out.println(hypercube2);
-//        after swap:hypercube:[[3002,4000], [1001,2000], [2,1000], [2001,3000]]
+        int[] los = new int[4];
+        int[] his = new int[4];
+        hypercube2.unfold(order2, los, his);
+        System.out.println(Arrays.toString(los) + " " + Arrays.toString(his));
+//        unfolded:[3002, 2, 2001, 1001] [4000, 1000, 3000, 2000]
 
     }
 }
@@ -1,34 +1,153 @@
 package joining.join.wcoj;
 
 
+import config.JoinConfig;
+import data.IntData;
 import util.Pair;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Schedules hypercubes among join threads. Each thread owns
+ * a deque of cubes: it takes cubes from the head of its own
+ * deque and appends the remainders of cubes it interrupted
+ * to the tail, so each thread keeps working on its own part
+ * of the value space (with warm iterator state) while cubes
+ * are still processed breadth-first, as with a single queue.
+ * Idle threads steal cubes from the head of other deques
+ * (i.e., the oldest and largest cubes).
+ * <p>
+ * Termination is detected by counting cubes that were not
+ * processed entirely: threads finding no cube to steal wait
+ * until cubes are published or the count drops to zero. While
+ * threads wait, busy threads are asked to interrupt their
+ * current episode so that the remainder of their cube is
+ * shared.
+ */
 public class HypercubeManager {
 
     /**
-     * hypercubes
+     * Deque of unprocessed cubes for each thread.
      */
-    public static BlockingDeque<Hypercube> hypercubes;
+    static ConcurrentLinkedDeque<Hypercube>[] deques;
 
 //    public static ConcurrentHashMap<Long, Boolean> isWorking;
 
     public static final CubeSelectionPolicy DEFAULT_CUBE_SELECTION =
             CubeSelectionPolicy.FIRST;
 
+    /**
+     * Number of cubes that were not processed
+     * entirely yet (including cubes in process).
+     */
     public static AtomicInteger nrCube;
 
+    /**
+     * Maximal number of processed cubes kept
+     * for reuse by each thread.
+     */
+    static final int POOL_CAPACITY = 1024;
+
+    /**
+     * Recycles processed cubes (one pool per thread).
+     */
+    static HypercubePool[] pools;
+
+    /**
+     * Number of cubes each thread stole from other threads.
+     */
+    public static long[] nrSteals;
+
+    /**
+     * Time in nanoseconds each thread spent waiting
+     * for cubes while all deques were empty.
+     */
+    public static long[] idleNanos;
+
+    /**
+     * Signals that all cubes have been processed.
+     */
+    public static final Hypercube FINISHED = new Hypercube(0);
+
+    /**
+     * Protects waiting for new cubes.
+     */
+    static final ReentrantLock idleLock = new ReentrantLock();
+
+    /**
+     * Signaled when cubes are published or all cubes
+     * have been processed.
+     */
+    static final Condition cubesChanged = idleLock.newCondition();
+
+    /**
+     * Number of threads waiting for cubes (updated
+     * while holding the idle lock).
+     */
+    static volatile int nrIdle = 0;
+
+    /**
+     * Set while threads wait for cubes: busy threads should
+     * interrupt their current episode to share their cube.
+     */
+    public static volatile boolean splitRequested = false;
+
 //    public static long ts = 0;
 
 //    public static double totalVolume;
 
-    public static void init(List<Pair<Integer, Integer>> joinValues, int initNrCube) {
-        hypercubes = new LinkedBlockingDeque<Hypercube>();
+    /**
+     * Divides the space of join values into cubes and
+     * assigns them to threads in round-robin fashion.
+     * Cubes carry approximately equal estimated work if
+     * partitioning by value distribution is activated
+     * and have equal width in the first dimension otherwise.
+     *
+     * @param joinValues  value range of each join attribute
+     * @param joinColumns columns joined via each attribute
+     *                    (null to partition by equal width)
+     * @param initNrCube  targeted number of initial cubes
+     * @param nrThreads   number of join threads
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static void init(List<Pair<Integer, Integer>> joinValues, List<List<IntData>> joinColumns,
+                            int initNrCube, int nrThreads) {
+        deques = new ConcurrentLinkedDeque[nrThreads];
+        pools = new HypercubePool[nrThreads];
+        for (int threadCtr = 0; threadCtr < nrThreads; threadCtr++) {
+            deques[threadCtr] = new ConcurrentLinkedDeque<>();
+            pools[threadCtr] = new HypercubePool(POOL_CAPACITY);
+        }
+        nrSteals = new long[nrThreads];
+        idleNanos = new long[nrThreads];
+        nrIdle = 0;
+        splitRequested = false;
+        List<Hypercube> cubes = JoinConfig.PARTITION_BY_DISTRIBUTION && joinColumns != null ?
+                CubePartitioner.partition(joinValues, joinColumns, Math.min(initNrCube,
+                        nrThreads * JoinConfig.PARTITION_CUBES_PER_THREAD)) :
+                equalWidthCubes(joinValues, initNrCube);
+        for (int i = 0; i < cubes.size(); i++) {
+            deques[i % nrThreads].addLast(cubes.get(i));
+        }
+        nrCube = new AtomicInteger(cubes.size());
+    }
+
+    /**
+     * Divides the value range of the first join attribute
+     * into ranges of equal width.
+     *
+     * @param joinValues value range of each join attribute
+     * @param initNrCube number of cubes
+     * @return list of cubes
+     */
+    static List<Hypercube> equalWidthCubes(List<Pair<Integer, Integer>> joinValues, int initNrCube) {
+        List<Hypercube> cubes = new ArrayList<>();
+        int nrDims = joinValues.size();
         int rangeInFirstDim = joinValues.get(0).getSecond() - joinValues.get(0).getFirst();
         int rangeInEachPartition = rangeInFirstDim / initNrCube;
         int firstDimStart = joinValues.get(0).getFirst();
@@ -40,18 +159,18 @@ public class HypercubeManager {
             if (i == initNrCube - 1) {
                 partitionEnd = firstDimEnd;
             }
-            List<Pair<Integer, Integer>> subJoinValues = new ArrayList<>(joinValues);
-            subJoinValues.set(0, new Pair<>(partitionStart, partitionEnd));
-            Hypercube cube = new Hypercube(subJoinValues);
+            Hypercube cube = new Hypercube(nrDims);
+            for (int dimCtr = 1; dimCtr < nrDims; dimCtr++) {
+                cube.lo[dimCtr] = joinValues.get(dimCtr).getFirst();
+                cube.hi[dimCtr] = joinValues.get(dimCtr).getSecond();
+            }
+            cube.lo[0] = partitionStart;
+            cube.hi[0] = partitionEnd;
 //            System.out.println("cube:" + cube);
-            hypercubes.add(cube);
+            cubes.add(cube);
 //            totalVolume += cube.getVolume();
         }
-
-//        totalVolume = cube.getVolume();
-//        isWorking = new ConcurrentHashMap<>();
-        nrCube = new AtomicInteger(initNrCube);
-//        System.out.println("totalVolume:" + totalVolume);
+        return cubes;
     }
 
 //    public boolean checkOverlap() {
@@ -129,59 +248,155 @@ public class HypercubeManager {
 //    }
 
 
-    public static Hypercube allocateHypercube() throws InterruptedException {
-        Hypercube cube = hypercubes.take();
-//        System.out.println("number of cubes:" + hypercubes.size());
-//        long threadId = Thread.currentThread().getId();
-//        System.out.println("threadId 1:" + threadId);
-//        isWorking.put(threadId, true);
-        return cube;
+    /**
+     * Returns next cube to process for given thread: the head
+     * of its own deque or, if empty, a cube stolen from the
+     * head of another deque. Waits while other threads still
+     * process cubes and returns {@link #FINISHED} once all
+     * cubes have been processed.
+     *
+     * @param threadId ID of join thread
+     * @return cube to process
+     */
+    public static Hypercube allocateHypercube(int threadId) {
+        Hypercube cube = deques[threadId].pollFirst();
+        if (cube != null) {
+            return cube;
+        }
+        long idleStart = System.nanoTime();
+        while (true) {
+            cube = pollAny(threadId);
+            if (cube != null || nrCube.get() == 0) {
+                break;
+            }
+            idleLock.lock();
+            try {
+                ++nrIdle;
+                splitRequested = JoinConfig.SPLIT_ON_IDLE;
+                // Check again after registering to not miss signals
+                if (nrCube.get() > 0 && isFinished()) {
+                    cubesChanged.awaitUninterruptibly();
+                }
+                if (--nrIdle == 0) {
+                    splitRequested = false;
+                }
+            } finally {
+                idleLock.unlock();
+            }
+        }
+        idleNanos[threadId] += System.nanoTime() - idleStart;
+        return cube != null ? cube : FINISHED;
     }
 
-
-    public static void updateInterval(Hypercube parentCube, List<Integer> endValues, int[] order) {
-//        long startMillis = System.currentTimeMillis();
-//        long threadId = Thread.currentThread().getId();
-        Hypercube cubeWithOrder = new Hypercube(parentCube.unfoldCube(order));
-        List<Hypercube> remainHypercubes = cubeWithOrder.subtractByPoint(endValues);
-//        System.out.println("cubeWithOrder:" + cubeWithOrder);
-//        System.out.println("remainHypercubes:" + remainHypercubes);
-//        double remainVolume = 0;
-        for (Hypercube remainHypercube : remainHypercubes) {
-//            remainVolume += remainHypercube.getVolume();
-            // swap the order for remainHypercube
-//            System.out.println("before swap:" + remainHypercube);
-//            System.out.println("order:" + Arrays.toString(order));
-            remainHypercube.alignToUniversalOrder(order);
-//            System.out.println("after swap:" + remainHypercube);
-//            System.out.println("cube volume:" + remainHypercube.getVolume());
+    /**
+     * Returns cube stolen from the head of another deque or,
+     * if none is available, the head of the thread's own deque.
+     *
+     * @param threadId ID of join thread
+     * @return cube or null if all deques are empty
+     */
+    static Hypercube pollAny(int threadId) {
+        int nrThreads = deques.length;
+        for (int i = 1; i < nrThreads; i++) {
+            Hypercube cube = deques[(threadId + i) % nrThreads].pollFirst();
+            if (cube != null) {
+                ++nrSteals[threadId];
+                return cube;
+            }
         }
-//        hypercubes.addAll(remainHypercubes);
-//        System.out.println("parentCube volume:" + cubeWithOrder.getVolume());
-//        System.out.println("remain Volume:" + remainVolume);
-//        System.out.println("process Volume:" + (cubeWithOrder.getVolume() - remainVolume));
+        return deques[threadId].pollFirst();
+    }
 
-        hypercubes.addAll(remainHypercubes);
-        nrCube.addAndGet(remainHypercubes.size() - 1);
+    /**
+     * Wakes up threads waiting for cubes (if any).
+     */
+    static void signalIdle() {
+        if (nrIdle > 0) {
+            idleLock.lock();
+            try {
+                cubesChanged.signalAll();
+            } finally {
+                idleLock.unlock();
+            }
+        }
+    }
 
-//        long endMillis = System.currentTimeMillis();
-//        ts += (endMillis - startMillis);
+    /**
+     * Replaces processed cube by cubes covering its remaining
+     * part after the last processed point. The remaining cubes
+     * are appended to the deque of the given thread.
+     *
+     * @param parentCube processed cube
+     * @param endValues  last processed point (in attribute order)
+     * @param order      attribute order
+     * @param threadId   ID of join thread
+     */
+    public static void updateInterval(Hypercube parentCube, int[] endValues,
+                                      int[] order, int threadId) {
+        HypercubePool pool = pools[threadId];
+        List<Hypercube> remainHypercubes = pool.splitBuffer;
+        int nrRemaining = parentCube.subtractByPoint(
+                endValues, order, pool, remainHypercubes);
+        // Count new cubes before other threads can take them
+        if (nrRemaining != 1) {
+            nrCube.addAndGet(nrRemaining - 1);
+        }
+        ConcurrentLinkedDeque<Hypercube> deque = deques[threadId];
+        for (Hypercube cube : remainHypercubes) {
+            deque.addLast(cube);
+        }
+        remainHypercubes.clear();
+        signalIdle();
+    }
 
-//        System.out.println("threadId 22222:" + threadId);
-//        isWorking.put(threadId, false);
-//        System.out.println("threadId 2:" + threadId);
-//        return cubeWithOrder.getVolume() - remainVolume;
+    /**
+     * Adds unprocessed cube to the head of the
+     * deque of the given thread.
+     *
+     * @param cube     unprocessed cube
+     * @param threadId ID of join thread
+     */
+    public static void addHypercube(Hypercube cube, int threadId) {
+        deques[threadId].addFirst(cube);
+        signalIdle();
     }
 
-    public static void finishHyperCube() {
+    /**
+     * Marks given cube as processed entirely.
+     *
+     * @param cube     processed cube
+     * @param threadId ID of join thread
+     */
+    public static void finishHyperCube(Hypercube cube, int threadId) {
+        pools[threadId].release(cube);
 //        long threadId = Thread.currentThread().getId();
 //        isWorking.put(threadId, false);
 //        System.out.println("threadId 2----:" + threadId);
-        nrCube.decrementAndGet();
+        if (nrCube.decrementAndGet() == 0) {
+            signalIdle();
+        }
 //        System.out.println("number of cube:" + nrCube);
     }
 
+    /**
+     * Returns number of cubes waiting in deques.
+     *
+     * @return number of queued cubes
+     */
+    public static int nrQueued() {
+        int nrQueued = 0;
+        for (ConcurrentLinkedDeque<Hypercube> deque : deques) {
+            nrQueued += deque.size();
+        }
+        return nrQueued;
+    }
+
     public static boolean isFinished() {
-        return hypercubes.size() == 0;
+        for (ConcurrentLinkedDeque<Hypercube> deque : deques) {
+            if (!deque.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
     }
 }
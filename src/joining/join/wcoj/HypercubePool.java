@@ -0,0 +1,57 @@
+package joining.join.wcoj;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recycles hypercubes that have been processed entirely
+ * so that splitting cubes does not allocate new arrays
+ * in the common case. Pools are not thread-safe and are
+ * meant to be used by a single thread.
+ */
+public class HypercubePool {
+    /**
+     * Released cubes that can be reused.
+     */
+    final ArrayDeque<Hypercube> freeCubes = new ArrayDeque<>();
+    /**
+     * Maximal number of cubes kept in the pool.
+     */
+    final int capacity;
+    /**
+     * Buffer for cubes resulting from a split.
+     */
+    final List<Hypercube> splitBuffer = new ArrayList<>();
+
+    public HypercubePool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns cube with given number of dimensions,
+     * reusing a released cube if possible (the bounds
+     * of reused cubes are not reset).
+     *
+     * @param dim number of dimensions
+     * @return cube with given number of dimensions
+     */
+    public Hypercube allocate(int dim) {
+        Hypercube cube = freeCubes.poll();
+        if (cube == null || cube.dim != dim) {
+            cube = new Hypercube(dim);
+        }
+        return cube;
+    }
+
+    /**
+     * Makes cube available for reuse.
+     *
+     * @param cube cube that is no longer used
+     */
+    public void release(Hypercube cube) {
+        if (freeCubes.size() < capacity) {
+            freeCubes.push(cube);
+        }
+    }
+}
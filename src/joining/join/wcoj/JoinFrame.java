@@ -1,7 +1,5 @@
 package joining.join.wcoj;
 
-import java.util.List;
-
 /**
  * Summarizes all information about one specific
  * variable in a join order that is relevant to
@@ -18,7 +16,7 @@ public class JoinFrame {
 	 * Relevant LFTJ iterators that are
 	 * relevant to current variable.
 	 */
-	List<LFTJoin> curIters = null;
+	LFTJoin[] curIters = null;
 	/**
 	 * Number of currently relevant iterators.
 	 */
@@ -1,21 +1,22 @@
 package joining.join.wcoj;
 
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.stream.IntStream;
 
 import buffer.BufferManager;
 import catalog.CatalogManager;
-//import config.JoinConfig;
+import config.JoinConfig;
 import data.ColumnData;
 import data.IntData;
+import indexing.Indexer;
+import indexing.SortIndexAdvisor;
+import indexing.TupleSorter;
 import preprocessing.Context;
 import query.ColumnRef;
 import query.QueryInfo;
+import util.SingleFlightCache;
 
 import static config.NamingConfig.FILTERED_PRE;
 
@@ -37,30 +38,86 @@ public class LFTJiter {
      * order.
      */
     int[] tupleOrder;
+    /**
+     * Contains for each trie level the keys of that
+     * level in tuple sort order (i.e., the i-th entry
+     * is the key of the i-th tuple in sort order).
+     */
+    int[][] trieLevels;
+    /**
+     * Offsets of child nodes for each trie level
+     * except the last one if a compressed trie is
+     * used (null otherwise).
+     */
+    int[][] trieOffsets;
+    /**
+     * First tuple (in tuple order) of each node in
+     * the last trie level if a compressed trie is
+     * used (null otherwise).
+     */
+    int[] trieRows;
 
     /**
      * Number of trie levels (i.e., number
      * of attributes the trie indexes).
      */
     final int nrLevels;
+    /**
+     * Whether keys in the last trie level are unique within
+     * the range of each parent node (null until checked).
+     */
+    volatile Boolean uniqueLeaves = null;
 
     /**
      * Caches tuple orderings for tables after applying
      * query-specific unary predicates. Such orderings
      * can be reused across different join orders
-     * for the same query.
+     * for the same query (keyed by table columns, so
+     * aliases sharing a filtered table share orders).
      */
-    public static Map<List<ColumnRef>, int[]> queryOrderCache =
-            new HashMap<>();
+    public static SingleFlightCache<List<ColumnRef>, int[]> queryOrderCache =
+            new SingleFlightCache<>();
     /**
      * Caches tuple orderings for base tables that can
-     * be reused across different queries.
+     * be reused across different queries (keyed by
+     * table columns).
+     */
+    public static SingleFlightCache<List<ColumnRef>, int[]> baseOrderCache =
+            new SingleFlightCache<>();
+    /**
+     * Caches sorted trie levels for filtered tables
+     * (keyed by table columns, like the tuple orders).
+     */
+    public static SingleFlightCache<List<ColumnRef>, int[][]> queryLevelCache =
+            new SingleFlightCache<>();
+    /**
+     * Caches sorted trie levels for base tables, keyed
+     * by table columns (levels only depend on the data,
+     * so all aliases of a table can share them).
+     */
+    public static SingleFlightCache<List<ColumnRef>, int[][]> baseLevelCache =
+            new SingleFlightCache<>();
+    /**
+     * Caches compressed tries for filtered tables.
+     */
+    public static SingleFlightCache<List<ColumnRef>, CSRTrie> queryCSRCache =
+            new SingleFlightCache<>();
+    /**
+     * Caches compressed tries for base tables
+     * (keyed by table columns).
+     */
+    public static SingleFlightCache<List<ColumnRef>, CSRTrie> baseCSRCache =
+            new SingleFlightCache<>();
+    /**
+     * Caches tries built by hashing for filtered tables.
      */
-    public static Map<List<ColumnRef>, int[]> baseOrderCache =
-            new HashMap<>();
+    public static SingleFlightCache<List<ColumnRef>, HashTrie> queryHashCache =
+            new SingleFlightCache<>();
 
     public static long sortTime = 0;
 
+    public static long hashTrieTime = 0;
+
     public static long lftTime1 = 0;
 
     public static long lftTime2 = 0;
@@ -90,14 +147,19 @@ public class LFTJiter {
         card = CatalogManager.getCardinality(table);
         long stime2 = System.currentTimeMillis();
         // Extract columns used for sorting
-        List<ColumnRef> localColumns = new ArrayList<>();
+        List<ColumnRef> tableColumns = new ArrayList<>();
+        List<ColumnRef> baseColumns = new ArrayList<>();
+        String baseTable = query.aliasToTable.get(alias);
         trieCols = new ArrayList<>();
         for (Set<ColumnRef> eqClass : globalVarOrder) {
             for (ColumnRef colRef : eqClass) {
                 if (colRef.aliasName.equals(alias)) {
-                    localColumns.add(colRef);
                     String colName = colRef.columnName;
-                    ColumnRef bufferRef = new ColumnRef(table, colName);
+                    // Pre-processing may map query columns to other columns
+                    ColumnRef bufferRef = context.columnMapping.getOrDefault(
+                            colRef, new ColumnRef(table, colName));
+                    tableColumns.add(bufferRef);
+                    baseColumns.add(new ColumnRef(baseTable, colName));
                     ColumnData colData = BufferManager.getData(bufferRef);
                     trieCols.add((IntData) colData);
                 }
@@ -112,8 +174,15 @@ public class LFTJiter {
 
         // Retrieve cached tuple order or sort
         long stime4 = System.currentTimeMillis();
-        getTupleOrder(query,
-                context, aliasID, localColumns);
+        boolean notFiltered = !table.contains(FILTERED_PRE);
+        SortIndexAdvisor.recordRequest(baseColumns);
+        int[] baseRows = context.aliasToBaseRows.get(alias);
+        if (useHashTrie(notFiltered, baseColumns, baseRows)) {
+            getHashTrie(tableColumns);
+        } else {
+            getTupleOrder(notFiltered, tableColumns, baseColumns, baseRows);
+            getTrieLevels(notFiltered, tableColumns);
+        }
 
         long stime5 = System.currentTimeMillis();
         // Reset internal state
@@ -134,66 +203,196 @@ public class LFTJiter {
 //        System.out.println("lftTime4:" + lftTime4);
     }
 
+    /**
+     * Initializes iterator over a single trie level that
+     * contains the given keys (e.g., for micro-benchmarks).
+     *
+     * @param keys keys of trie level in ascending order
+     */
+    public LFTJiter(int[] keys) {
+        card = keys.length;
+        trieCols = new ArrayList<>();
+        nrLevels = 1;
+        tupleOrder = new int[card];
+        Arrays.setAll(tupleOrder, i -> i);
+        trieLevels = new int[][]{keys};
+    }
+
     /**
      * Sorts tuples by their values in local columns,
-     * returns tuple IDs from tuple order in array.
+     * stores tuple IDs from tuple order in array.
+     * Tuple orders of base tables are cached by table
+     * columns and persisted on disk if activated. Tuple
+     * orders of filtered tables are derived from the
+     * order of their base table if it is cached. If
+     * several threads request the same order, only
+     * one of them sorts.
      *
-     * @param localColumns sort by those columns
-     * @return array with sorted tuple indices
+     * @param notFiltered  whether iterating over base table
+     * @param tableColumns sort by those table columns
+     * @param baseColumns  sort columns as base table columns
+     * @param baseRows     base rows of filtered table (or null)
+     * @throws Exception
      */
-    void getTupleOrder(QueryInfo query, Context executionContext,
-                       int aliasID, List<ColumnRef> localColumns) {
+    void getTupleOrder(boolean notFiltered, List<ColumnRef> tableColumns,
+                       List<ColumnRef> baseColumns, int[] baseRows) throws Exception {
         // No unary predicates for current alias?
-//        long initMillis = System.currentTimeMillis();
-        String alias = query.aliases[aliasID];
-        boolean notFiltered = !executionContext.
-                aliasToFiltered.get(alias).contains(FILTERED_PRE);
-
-//        long startMillis = System.currentTimeMillis();
-//        lftTime5 += (startMillis - initMillis);
-//        System.out.println("lftTime5:" + lftTime5);
-        // Did we cache tuple order for associated base tables?
-        if (notFiltered && baseOrderCache.containsKey(localColumns)) {
-            tupleOrder = baseOrderCache.get(localColumns);
+        if (notFiltered) {
+            tupleOrder = baseOrderCache.computeIfAbsent(tableColumns,
+                    columns -> Indexer.baseSortOrder(columns, trieCols, card));
+        } else {
+            tupleOrder = queryOrderCache.computeIfAbsent(tableColumns, columns -> {
+                int[] baseOrder = baseRows == null ?
+                        null : baseOrderCache.get(baseColumns);
+                if (baseOrder != null) {
+                    return TupleSorter.restrictedOrder(baseOrder, baseRows);
+                }
+                long startMillis = System.currentTimeMillis();
+                int[] order = TupleSorter.sortedOrder(columns, trieCols, card);
+                sortTime += System.currentTimeMillis() - startMillis;
+                return order;
+            });
+        }
+    }
+
+    /**
+     * Materializes keys of each trie level in tuple
+     * order so that searches scan sequential memory
+     * (instead of resolving keys via the tuple order).
+     * Builds a compressed trie instead if activated.
+     *
+     * @param notFiltered  whether iterating over base table
+     * @param tableColumns trie columns as table columns
+     * @throws Exception
+     */
+    void getTrieLevels(boolean notFiltered, List<ColumnRef> tableColumns) throws Exception {
+        if (JoinConfig.CSR_TRIE && nrLevels > 0) {
+            SingleFlightCache<List<ColumnRef>, CSRTrie> csrCache = notFiltered ?
+                    baseCSRCache : queryCSRCache;
+            CSRTrie csrTrie = csrCache.computeIfAbsent(tableColumns,
+                    columns -> new CSRTrie(sortedLevels(), card));
+            trieLevels = csrTrie.keys;
+            trieOffsets = csrTrie.offsets;
+            trieRows = csrTrie.rows;
         } else {
-            // Retrieve cached tuple order or sort
-            if (queryOrderCache.containsKey(localColumns)) {
-                tupleOrder = queryOrderCache.get(localColumns);
-            } else {
-                // Initialize tuple order
-                long part3Millis = System.currentTimeMillis();
-
-                tupleOrder = IntStream.range(0, card).boxed().parallel().sorted(new Comparator<Integer>() {
-                    @Override
-                    public int compare(Integer row1, Integer row2) {
-                        for (IntData colData : trieCols) {
-                            int cmp = Integer.compare(colData.data[row1], colData.data[row2]);
-                            if (cmp != 0) {
-                                return cmp;
-                            }
-                        }
-                        return 0;
+            SingleFlightCache<List<ColumnRef>, int[][]> levelCache = notFiltered ?
+                    baseLevelCache : queryLevelCache;
+            trieLevels = levelCache.computeIfAbsent(tableColumns,
+                    columns -> sortedLevels());
+        }
+    }
+
+    /**
+     * Returns true iff the trie should be built by hashing
+     * rather than by sorting. Sorted tries of base tables are
+     * reused across queries, and sorted tries of filtered
+     * tables are derived in linear time if the sort order of
+     * their base table is cached. Other tries are only used
+     * for the current query and built by hashing, unless the
+     * table is large (sorting via radix sort is competitive
+     * for large tables).
+     *
+     * @param notFiltered whether iterating over base table
+     * @param baseColumns trie columns as base table columns
+     * @param baseRows    base rows of filtered table (or null)
+     * @return true iff trie is built by hashing
+     */
+    boolean useHashTrie(boolean notFiltered, List<ColumnRef> baseColumns, int[] baseRows) {
+        return JoinConfig.HASH_TRIE && !notFiltered && nrLevels > 0 &&
+                card <= JoinConfig.HASH_TRIE_MAX_CARD &&
+                (baseRows == null || !baseOrderCache.containsKey(baseColumns));
+    }
+
+    /**
+     * Retrieves trie built by hashing from the cache
+     * or builds it if not cached yet.
+     *
+     * @param tableColumns trie columns as table columns
+     * @throws Exception
+     */
+    void getHashTrie(List<ColumnRef> tableColumns) throws Exception {
+        HashTrie hashTrie = queryHashCache.computeIfAbsent(tableColumns, columns -> {
+            long startMillis = System.currentTimeMillis();
+            HashTrie trie = HashTrie.build(trieCols, card);
+            hashTrieTime += System.currentTimeMillis() - startMillis;
+            return trie;
+        });
+        tupleOrder = hashTrie.tupleOrder;
+        trieLevels = hashTrie.keys;
+        trieOffsets = hashTrie.offsets;
+        trieRows = hashTrie.rows;
+    }
+
+    /**
+     * Returns true iff keys in the last trie level are unique
+     * within the range of each parent node, i.e. no two tuples
+     * share values in all trie columns (always the case for
+     * compressed tries). The check is done on first request.
+     *
+     * @return true iff last trie level has no duplicate keys
+     */
+    boolean uniqueLeaves() {
+        if (uniqueLeaves == null) {
+            boolean unique = true;
+            if (trieOffsets == null) {
+                for (int tuple = 1; tuple < card && unique; ++tuple) {
+                    boolean duplicate = true;
+                    for (int level = 0; level < nrLevels && duplicate; ++level) {
+                        duplicate = trieLevels[level][tuple] == trieLevels[level][tuple - 1];
                     }
-                }).mapToInt(i -> i).toArray();
-
-                long endCreateTime = System.currentTimeMillis();
-                long sortTime = (endCreateTime - part3Millis);
-//
-                System.out.println("tableName:" + executionContext.aliasToFiltered.get(alias) + ", colNames:" + localColumns);
-                System.out.println("sort time:" + sortTime);
-
-                // Distinguish by cache
-                if (notFiltered) {
-                    baseOrderCache.put(localColumns, tupleOrder);
-                } else {
-                    queryOrderCache.put(localColumns, tupleOrder);
+                    unique = !duplicate;
                 }
             }
+            uniqueLeaves = unique;
         }
+        return uniqueLeaves;
+    }
+
+    /**
+     * Returns keys of each trie level in tuple order.
+     *
+     * @return array containing keys for each level
+     */
+    int[][] sortedLevels() {
+        int[][] levels = new int[nrLevels][];
+        for (int levelCtr = 0; levelCtr < nrLevels; ++levelCtr) {
+            int[] colData = trieCols.get(levelCtr).data;
+            int[] keys = new int[card];
+            Arrays.parallelSetAll(keys, i -> colData[tupleOrder[i]]);
+            levels[levelCtr] = keys;
+        }
+        return levels;
+    }
+
+    /**
+     * Removes cached tuple orders and tries of given
+     * base table (e.g., after its content changed).
+     *
+     * @param table name of base table
+     */
+    public static void clearBaseCache(String table) {
+        baseOrderCache.keySet().removeIf(cols -> cols.get(0).aliasName.equals(table));
+        baseLevelCache.keySet().removeIf(cols -> cols.get(0).aliasName.equals(table));
+        baseCSRCache.keySet().removeIf(cols -> cols.get(0).aliasName.equals(table));
+    }
+
+    /**
+     * Removes cached tuple orders and tries of all base
+     * tables except for the given tries.
+     *
+     * @param keep keep tries over those table columns
+     */
+    public static void retainBaseCache(Set<List<ColumnRef>> keep) {
+        baseOrderCache.keySet().retainAll(keep);
+        baseLevelCache.keySet().retainAll(keep);
+        baseCSRCache.keySet().retainAll(keep);
     }
 
     public static void clearCache () {
-        LFTJiter.queryOrderCache = new HashMap<>();
+        LFTJiter.queryOrderCache = new SingleFlightCache<>();
+        LFTJiter.queryLevelCache = new SingleFlightCache<>();
+        LFTJiter.queryCSRCache = new SingleFlightCache<>();
+        LFTJiter.queryHashCache = new SingleFlightCache<>();
     }
 
 //    public Integer compareTuples(int row1, int row2) {
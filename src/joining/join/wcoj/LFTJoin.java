@@ -1,7 +1,6 @@
 package joining.join.wcoj;
 
 import config.JoinConfig;
-import data.IntData;
 
 import java.util.Arrays;
 
@@ -27,8 +26,69 @@ public class LFTJoin {
     final int card;
 
     final LFTJiter lftJiter;
-
-    public long seekTime;
+    /**
+     * Keys of each trie level in tuple sort order.
+     */
+    final int[][] trieLevels;
+    /**
+     * Child offsets of each trie level if iterating
+     * over a compressed trie (null otherwise).
+     */
+    final int[][] trieOffsets;
+    /**
+     * First tuple of each node in the last trie level
+     * if iterating over a compressed trie.
+     */
+    final int[] trieRows;
+    /**
+     * Number of search steps performed by the
+     * last invocation of a range search.
+     */
+    int seekCost;
+    /**
+     * Number of seeks performed by this iterator.
+     */
+    public long nrSeeks;
+    /**
+     * Number of seeks performed by this iterator
+     * with each strategy (indexed by ordinal).
+     */
+    public final long[] nrSeeksByStrategy =
+            new long[SeekStrategy.values().length];
+    /**
+     * Strategy used for seeks (adapted to observed
+     * seek distances if activated).
+     */
+    public SeekStrategy seekStrategy = SeekStrategy.GALLOPING;
+    /**
+     * Moving average of the number of tuples
+     * skipped by one seek.
+     */
+    double avgSeekDistance = 0;
+    /**
+     * Moving average of the number of tuples in
+     * the range searched by one seek.
+     */
+    double avgSeekRange = 0;
+    /**
+     * Weight of the last seek in moving averages.
+     */
+    static final double SEEK_DECAY = 1.0 / 16;
+    /**
+     * Seek strategy is re-selected after that
+     * many seeks (must be a power of two).
+     */
+    static final int SEEK_ADAPT_INTERVAL = 64;
+    /**
+     * Keys are scanned linearly if seeks skip
+     * at most that many tuples on average.
+     */
+    static final double LINEAR_MAX_DISTANCE = 4;
+    /**
+     * Linear scans switch to exponential search
+     * after that many tuples.
+     */
+    static final int LINEAR_MAX_SCAN = 16;
 
     public LFTJoin(LFTJiter lftJiter) {
         int nrLevels = lftJiter.nrLevels;
@@ -36,7 +96,10 @@ public class LFTJoin {
         this.curUBs = new int[nrLevels];
         this.lftJiter = lftJiter;
         this.card = lftJiter.card;
-        this.seekTime = 0;
+        this.trieLevels = lftJiter.trieLevels;
+        this.trieOffsets = lftJiter.trieOffsets;
+        this.trieRows = lftJiter.trieRows;
+        this.nrSeeks = 0;
     }
 
     /**
@@ -46,9 +109,7 @@ public class LFTJoin {
      * @return key of specified tuple
      */
     int keyAt(int tuple) {
-        int row = lftJiter.tupleOrder[tuple];
-        IntData curCol = lftJiter.trieCols.get(curTrieLevel);
-        return curCol.data[row];
+        return trieLevels[curTrieLevel][tuple];
     }
 
     public int key() {
@@ -56,74 +117,154 @@ public class LFTJoin {
     }
 
     public int keyAtLevel(int curTrieLevel, int[] curTuples) {
-        int row = 0;
-        if (curTuples[curTrieLevel] == card) {
-            row = lftJiter.tupleOrder[card - 1];
-        } else {
-            row = lftJiter.tupleOrder[curTuples[curTrieLevel]];
-        }
-        IntData curCol = lftJiter.trieCols.get(curTrieLevel);
-        return curCol.data[row];
+        int[] keys = trieLevels[curTrieLevel];
+        int tuple = Math.min(curTuples[curTrieLevel], keys.length - 1);
+        return keys[tuple];
     }
 
+    /**
+     * Moves iterator to first key in current range
+     * that is greater or equal to the seek key.
+     *
+     * @param seekKey search for this key
+     * @return search cost
+     */
     public int seek(int seekKey) {
+        ++nrSeeks;
+        ++nrSeeksByStrategy[seekStrategy.ordinal()];
         // Search next tuple in current range
-        int[] nextInfo =  seekInRangeExp(seekKey, curUBs[curTrieLevel]);
-        int next = nextInfo[0];
+        int lb = curTuples[curTrieLevel];
+        int ub = curUBs[curTrieLevel];
+        int next;
+        switch (seekStrategy) {
+            case LINEAR:
+                next = seekInRangeLinear(seekKey, ub);
+                break;
+            case BINARY:
+                next = seekInRangeBinary(seekKey, ub);
+                break;
+            default:
+                next = seekInRangeExp(seekKey, ub);
+        }
+        if (JoinConfig.ADAPTIVE_SEEK) {
+            adaptSeekStrategy(lb, ub, next);
+        }
         // Did we find a tuple?
         if (next < 0) {
             curTuples[curTrieLevel] = card;
         } else {
             curTuples[curTrieLevel] = next;
         }
-        return nextInfo[1];
+        return seekCost;
+    }
+
+    /**
+     * Updates statistics on seek distances and periodically
+     * selects the seek strategy: linear scans if seeks skip
+     * few tuples, binary search if they skip so many that
+     * exponential search (taking about twice the logarithm
+     * of the distance) is more expensive than binary search
+     * over the range, and exponential search otherwise.
+     *
+     * @param lb   first tuple of searched range
+     * @param ub   last tuple of searched range
+     * @param next tuple found by seek (-1 if none)
+     */
+    void adaptSeekStrategy(int lb, int ub, int next) {
+        int distance = (next < 0 ? ub + 1 : next) - lb;
+        avgSeekDistance += (distance - avgSeekDistance) * SEEK_DECAY;
+        avgSeekRange += (ub - lb + 1 - avgSeekRange) * SEEK_DECAY;
+        if ((nrSeeks & (SEEK_ADAPT_INTERVAL - 1)) == 0) {
+            if (avgSeekDistance <= LINEAR_MAX_DISTANCE) {
+                seekStrategy = SeekStrategy.LINEAR;
+            } else if (avgSeekDistance * avgSeekDistance >= avgSeekRange) {
+                seekStrategy = SeekStrategy.BINARY;
+            } else {
+                seekStrategy = SeekStrategy.GALLOPING;
+            }
+        }
     }
 
     /**
      * Resets all internal variables to state
      * before first invocation.
      */
-    void reset() {
+    public void reset() {
         Arrays.fill(curTuples, 0);
         Arrays.fill(curUBs, card - 1);
         curTrieLevel = -1;
     }
 
-    public int[] seekInRangeBinary(int seekKey, int ub) {
-        long startMillis = System.currentTimeMillis();
+    /**
+     * Binary search for first tuple in range whose key
+     * is greater or equal to the seek key. The search
+     * cost is stored in seekCost.
+     *
+     * @param seekKey search for this key
+     * @param ub      upper bound of search range
+     * @return tuple index or -1 if no such tuple exists
+     */
+    public int seekInRangeBinary(int seekKey, int ub) {
+        int[] keys = trieLevels[curTrieLevel];
         // Current tuple position is lower bound
         int lb = curTuples[curTrieLevel];
-        int cost = 0;
+        if (keys[lb] >= seekKey) {
+            seekCost = 1;
+            return lb;
+        }
+        int cost = 1;
         // Until search bounds collapse
         while (lb < ub) {
             cost += 1;
             int middle = (lb + ub) / 2;
-            if (keyAt(middle) >= seekKey) {
+            if (keys[middle] >= seekKey) {
                 ub = middle;
             } else {
                 lb = middle + 1;
             }
         }
-        int start = keyAt(lb) >= seekKey ? lb : -1;
-        long endMillis = System.currentTimeMillis();
-        seekTime += (endMillis - startMillis);
-        return new int[]{start, cost};
+        seekCost = cost;
+        return keys[lb] >= seekKey ? lb : -1;
     }
 
-    public int[] seekInRangeExp(int seekKey, int ub) {
-        long startMillis = System.currentTimeMillis();
-        // Count search in trie
-        int lb = curTuples[curTrieLevel];
+    /**
+     * Exponential search for first tuple in range whose
+     * key is greater or equal to the seek key. The search
+     * cost is stored in seekCost.
+     *
+     * @param seekKey search for this key
+     * @param ub      upper bound of search range
+     * @return tuple index or -1 if no such tuple exists
+     */
+    public int seekInRangeExp(int seekKey, int ub) {
+        return seekInRangeExp(seekKey, curTuples[curTrieLevel], ub);
+    }
+
+    /**
+     * Exponential search for first tuple in range whose
+     * key is greater or equal to the seek key, starting
+     * from the given tuple. The search cost is stored
+     * in seekCost.
+     *
+     * @param seekKey search for this key
+     * @param lb      lower bound of search range
+     * @param ub      upper bound of search range
+     * @return tuple index or -1 if no such tuple exists
+     */
+    int seekInRangeExp(int seekKey, int lb, int ub) {
+        int[] keys = trieLevels[curTrieLevel];
         // Try exponential search
         int pos = 1;
         int stepSize = 2;
-        if (keyAt(lb) >= seekKey) {
-            return new int[]{lb, 1};
-        } else if (keyAt(ub) < seekKey) {
-            return new int[]{-1, 2};
+        if (keys[lb] >= seekKey) {
+            seekCost = 1;
+            return lb;
+        } else if (keys[ub] < seekKey) {
+            seekCost = 2;
+            return -1;
         }
         int cost = 2;
-        while ((lb + pos) <= ub && keyAt(lb + pos) < seekKey) {
+        while ((lb + pos) <= ub && keys[lb + pos] < seekKey) {
             pos = pos * stepSize;
             cost += 1;
         }
@@ -132,16 +273,106 @@ public class LFTJoin {
         int end = Math.min(lb + pos, ub);
         while (start < end) {
             int middle = (start + end) / 2;
-            if (keyAt(middle) >= seekKey) {
+            if (keys[middle] >= seekKey) {
                 end = middle;
             } else {
                 start = middle + 1;
             }
             cost += 1;
         }
-        long endMillis = System.currentTimeMillis();
-        seekTime += (endMillis - startMillis);
-        return new int[]{start, cost};
+        seekCost = cost;
+        return start;
+    }
+
+    /**
+     * Linear search for first tuple in range whose key is
+     * greater or equal to the seek key. Continues with an
+     * exponential search if the key is not found among the
+     * next few tuples. The search cost is stored in seekCost.
+     *
+     * @param seekKey search for this key
+     * @param ub      upper bound of search range
+     * @return tuple index or -1 if no such tuple exists
+     */
+    public int seekInRangeLinear(int seekKey, int ub) {
+        int[] keys = trieLevels[curTrieLevel];
+        int lb = curTuples[curTrieLevel];
+        int scanEnd = Math.min(ub, lb + LINEAR_MAX_SCAN);
+        for (int tuple = lb; tuple <= scanEnd; ++tuple) {
+            if (keys[tuple] >= seekKey) {
+                seekCost = tuple - lb + 1;
+                return tuple;
+            }
+        }
+        if (scanEnd == ub) {
+            seekCost = scanEnd - lb + 1;
+            return -1;
+        }
+        int next = seekInRangeExp(seekKey, scanEnd + 1, ub);
+        seekCost += scanEnd - lb + 1;
+        return next;
+    }
+
+    /**
+     * Returns the number of keys in the current range, from
+     * the current position up to the given key (inclusive),
+     * based on range bounds. Requires the iterator to be at
+     * a key of the last trie level, with unique keys in that
+     * level. The search cost is stored in seekCost.
+     *
+     * @param endKey count keys up to this key
+     * @return number of keys up to end key
+     */
+    public int nrKeysUpTo(int endKey) {
+        return rangeEnd(endKey) - curTuples[curTrieLevel];
+    }
+
+    /**
+     * Returns the number of tuples in the current range whose
+     * keys lie between the current key and the given key
+     * (inclusive), including all tuples in the leaf runs of
+     * those keys. Requires the iterator to be at a key of the
+     * last trie level. The search cost is stored in seekCost.
+     *
+     * @param endKey count tuples up to this key
+     * @return number of tuples up to end key
+     */
+    public int nrTuplesUpTo(int endKey) {
+        int tuple = curTuples[curTrieLevel];
+        int end = rangeEnd(endKey);
+        if (trieOffsets != null) {
+            return trieRows[end] - trieRows[tuple];
+        }
+        return end - tuple;
+    }
+
+    /**
+     * Returns the position after the last tuple in the current
+     * range whose key is at most the given key, searching from
+     * the current position (which is not changed). The search
+     * cost is stored in seekCost.
+     *
+     * @param endKey search for last key up to this key
+     * @return tuple index after last key up to end key
+     */
+    public int rangeEnd(int endKey) {
+        int ub = curUBs[curTrieLevel];
+        if (endKey == Integer.MAX_VALUE) {
+            seekCost = 0;
+            return ub + 1;
+        }
+        int next = seekInRangeExp(endKey + 1, ub);
+        return next < 0 ? ub + 1 : next;
+    }
+
+    /**
+     * Returns true iff keys in the last trie level are
+     * unique within the range of each parent node.
+     *
+     * @return true iff last level has no duplicate keys
+     */
+    public boolean uniqueLeafKeys() {
+        return trieOffsets != null || lftJiter.uniqueLeaves();
     }
 
     /**
@@ -149,6 +380,9 @@ public class LFTJoin {
      * iterator to first associated position.
      */
     public int open() {
+        if (trieOffsets != null) {
+            return openCompressed();
+        }
         int curTuple = curTrieLevel < 0 ? 0 : curTuples[curTrieLevel];
         int nextUB = card - 1;
         int cost = 0;
@@ -157,9 +391,8 @@ public class LFTJoin {
                 nextUB = Math.min(curUBs[i], nextUB);
             }
             int curKey = key();
-            int[] nextInfo = seekInRangeExp(curKey + 1, nextUB);
-            int nextPos = nextInfo[0];
-            cost += nextInfo[1];
+            int nextPos = seekInRangeExp(curKey + 1, nextUB);
+            cost += seekCost;
             if (nextPos >= 0) {
                 nextUB = Math.min(nextPos - 1, nextUB);
             }
@@ -170,10 +403,39 @@ public class LFTJoin {
         return cost;
     }
 
+    /**
+     * Advance to next trie level in a compressed
+     * trie: the child range of the current node
+     * is obtained from the offsets directly.
+     */
+    int openCompressed() {
+        int nextTuple = 0;
+        int nextUB;
+        if (curTrieLevel < 0) {
+            nextUB = trieLevels[0].length - 1;
+        } else {
+            int[] offsets = trieOffsets[curTrieLevel];
+            int curTuple = curTuples[curTrieLevel];
+            nextTuple = offsets[curTuple];
+            nextUB = offsets[curTuple + 1] - 1;
+        }
+        ++curTrieLevel;
+        curUBs[curTrieLevel] = nextUB;
+        curTuples[curTrieLevel] = nextTuple;
+        return 0;
+    }
+
     /**
      * Proceeds to next key in current trie level.
      */
     public int next() {
+        if (trieOffsets != null) {
+            // Keys are unique in compressed tries
+            int nextTuple = curTuples[curTrieLevel] + 1;
+            curTuples[curTrieLevel] =
+                    nextTuple <= curUBs[curTrieLevel] ? nextTuple : card;
+            return 1;
+        }
         return seek(key() + 1);
     }
 
@@ -191,9 +453,8 @@ public class LFTJoin {
     }
 
     public int maxValueAtLevel() {
-        IntData curCol = lftJiter.trieCols.get(this.curTrieLevel);
         int tupleIndex = this.curUBs[this.curTrieLevel];
-        return curCol.data[tupleIndex];
+        return trieLevels[this.curTrieLevel][tupleIndex];
     }
 
     /**
@@ -203,7 +464,67 @@ public class LFTJoin {
      * @return record ID of current tuple
      */
     public int rid() {
-        return lftJiter.tupleOrder[this.curTuples[this.curTrieLevel]];
+        return ridAt(runStart());
+    }
+
+    /**
+     * Returns record ID of the tuple at the given
+     * position in tuple sort order.
+     *
+     * @param tuple tuple position in sort order
+     * @return record ID of tuple
+     */
+    public int ridAt(int tuple) {
+        return lftJiter.tupleOrder[tuple];
+    }
+
+    /**
+     * Returns the position (in tuple sort order) of the
+     * first tuple of the current trie node.
+     *
+     * @return first tuple of current node
+     */
+    public int runStart() {
+        int tuple = this.curTuples[this.curTrieLevel];
+        if (trieOffsets != null) {
+            // Descend to first tuple of current node
+            for (int levelCtr = curTrieLevel;
+                 levelCtr < trieOffsets.length; ++levelCtr) {
+                tuple = trieOffsets[levelCtr][tuple];
+            }
+            tuple = trieRows[tuple];
+        }
+        return tuple;
+    }
+
+    /**
+     * Returns the number of tuples sharing the keys of the
+     * current tuple in all trie levels (they are stored
+     * consecutively in tuple sort order). Requires the
+     * iterator to be at a key of the last trie level.
+     *
+     * @return number of tuples in run of current leaf
+     */
+    public int runLength() {
+        int tuple = curTuples[curTrieLevel];
+        if (trieOffsets != null) {
+            return trieRows[tuple + 1] - trieRows[tuple];
+        }
+        return rangeEnd(key()) - tuple;
+    }
+
+    /**
+     * Returns true iff no two tuples share keys in all
+     * trie levels (i.e., each leaf has a single tuple).
+     *
+     * @return true iff leaf runs contain one tuple
+     */
+    public boolean uniqueTuples() {
+        if (trieOffsets != null) {
+            int nrLeaves = trieRows.length - 1;
+            return trieRows[nrLeaves] == nrLeaves;
+        }
+        return lftJiter.uniqueLeaves();
     }
 
     /**
@@ -0,0 +1,332 @@
+package joining.join.wcoj;
+
+import config.JoinConfig;
+
+import java.util.Arrays;
+
+/**
+ * Intersects the runs of sorted keys covered by several iterators
+ * at their last trie level (for one binding of prior variables)
+ * in a single pass, instead of alternating seeks between them.
+ * Runs of similar length are merged, runs that densely cover a
+ * small value range are intersected as bitmaps. Runs of strongly
+ * differing length are left to leapfrog search, which skips over
+ * long runs via exponential search.
+ */
+public class RunIntersection {
+    /**
+     * Strategy: alternate seeks between iterators.
+     */
+    public static final int LEAPFROG = 0;
+    /**
+     * Strategy: merge runs in one pass.
+     */
+    public static final int MERGE = 1;
+    /**
+     * Strategy: intersect bitmaps over the common value range.
+     */
+    public static final int BITMAP = 2;
+    /**
+     * Runs are merged if the longest run is at most
+     * that many times longer than the shortest one.
+     */
+    static final int MERGE_SKEW = 8;
+    /**
+     * Runs are intersected as bitmaps if their common
+     * value range is at most that many times larger
+     * than the shortest run.
+     */
+    static final int BITMAP_DENSITY = 64;
+    /**
+     * Maximal number of bits per bitmap.
+     */
+    static final int MAX_BITMAP_BITS = 1 << 16;
+    /**
+     * Keys contained in all runs (in ascending order).
+     */
+    public int[] keys = new int[64];
+    /**
+     * Number of keys contained in all runs.
+     */
+    public int nrKeys;
+    /**
+     * Number of search steps performed by the
+     * last intersection (including preparation).
+     */
+    public int cost;
+    /**
+     * Keys of the trie level covered by each run.
+     */
+    int[][] runKeys = new int[4][];
+    /**
+     * First position of each run (used as cursor
+     * when iterators are moved to shared keys).
+     */
+    int[] runStarts = new int[4];
+    /**
+     * Position after the last key of each run.
+     */
+    int[] runEnds = new int[4];
+    /**
+     * Number of runs to intersect.
+     */
+    int nrRuns;
+    /**
+     * Smallest and largest key that may appear
+     * in all runs (empty range if lo > hi).
+     */
+    int lo, hi;
+    /**
+     * Keys shared by runs processed so far.
+     */
+    long[] bitmap = new long[64];
+    /**
+     * Keys of current run.
+     */
+    long[] runBitmap = new long[64];
+
+    /**
+     * Intersects runs of the given iterators if a strategy
+     * other than leapfrog search is preferable. Iterators must
+     * be at their last trie level, positioned at the first key
+     * of their run, and must not be at the end of their range.
+     *
+     * @param iters  iterators whose runs to intersect
+     * @param endKey runs include keys up to this key
+     * @return true iff shared keys were determined
+     */
+    public boolean intersect(LFTJoin[] iters, int endKey) {
+        return JoinConfig.BLOCK_INTERSECTION &&
+                intersect(iters, endKey, strategy(iters, endKey));
+    }
+
+    /**
+     * Intersects runs of the given iterators using the given
+     * strategy (runs must have been initialized by a call to
+     * strategy() for the same iterators).
+     *
+     * @param iters    iterators whose runs to intersect
+     * @param endKey   runs include keys up to this key
+     * @param strategy intersection strategy
+     * @return true iff shared keys were determined
+     */
+    public boolean intersect(LFTJoin[] iters, int endKey, int strategy) {
+        if (lo > hi) {
+            nrKeys = 0;
+            return true;
+        }
+        switch (strategy) {
+            case MERGE:
+                merge();
+                return true;
+            case BITMAP:
+                intersectBitmaps();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Determines runs of the given iterators, restricted to
+     * the value range they have in common, and selects the
+     * strategy to intersect them based on run lengths.
+     *
+     * @param iters  iterators whose runs to intersect
+     * @param endKey runs include keys up to this key
+     * @return intersection strategy
+     */
+    public int strategy(LFTJoin[] iters, int endKey) {
+        nrRuns = iters.length;
+        if (runKeys.length < nrRuns) {
+            runKeys = new int[nrRuns][];
+            runStarts = new int[nrRuns];
+            runEnds = new int[nrRuns];
+        }
+        cost = 0;
+        lo = Integer.MIN_VALUE;
+        hi = Integer.MAX_VALUE;
+        for (int runCtr = 0; runCtr < nrRuns; ++runCtr) {
+            LFTJoin iter = iters[runCtr];
+            int[] levelKeys = iter.trieLevels[iter.curTrieLevel];
+            int start = iter.curTuples[iter.curTrieLevel];
+            int end = iter.rangeEnd(endKey);
+            cost += iter.seekCost;
+            runKeys[runCtr] = levelKeys;
+            runStarts[runCtr] = start;
+            runEnds[runCtr] = end;
+            lo = Math.max(lo, levelKeys[start]);
+            hi = Math.min(hi, levelKeys[end - 1]);
+        }
+        if (lo > hi) {
+            return MERGE;
+        }
+        // Skip keys outside of common value range
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+        for (int runCtr = 0; runCtr < nrRuns; ++runCtr) {
+            int[] levelKeys = runKeys[runCtr];
+            int start = lowerBound(levelKeys, runStarts[runCtr], runEnds[runCtr], lo);
+            int end = lowerBound(levelKeys, start, runEnds[runCtr], hi + 1L);
+            runStarts[runCtr] = start;
+            runEnds[runCtr] = end;
+            minLength = Math.min(minLength, end - start);
+            maxLength = Math.max(maxLength, end - start);
+        }
+        if (nrRuns < 2 || maxLength > JoinConfig.BLOCK_INTERSECTION_MAX_RUN) {
+            return LEAPFROG;
+        }
+        long span = (long) hi - lo + 1;
+        if (span <= MAX_BITMAP_BITS && span <= (long) minLength * BITMAP_DENSITY) {
+            return BITMAP;
+        } else if (maxLength <= (long) minLength * MERGE_SKEW) {
+            return MERGE;
+        } else {
+            return LEAPFROG;
+        }
+    }
+
+    /**
+     * Returns the first position in the given range whose key
+     * is greater or equal to the given key (via binary search).
+     *
+     * @param levelKeys keys in ascending order
+     * @param start     first position of range
+     * @param end       position after range
+     * @param key       search for this key
+     * @return first position with key not below search key
+     */
+    int lowerBound(int[] levelKeys, int start, int end, long key) {
+        while (start < end) {
+            cost += 1;
+            int middle = (start + end) >>> 1;
+            if (levelKeys[middle] < key) {
+                start = middle + 1;
+            } else {
+                end = middle;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * Makes sure that shared keys fit into the key buffer.
+     */
+    void reserveKeys() {
+        int maxKeys = Integer.MAX_VALUE;
+        for (int runCtr = 0; runCtr < nrRuns; ++runCtr) {
+            maxKeys = Math.min(maxKeys, runEnds[runCtr] - runStarts[runCtr]);
+        }
+        if (keys.length < maxKeys) {
+            keys = new int[Math.max(maxKeys, 2 * keys.length)];
+        }
+    }
+
+    /**
+     * Merges the first two runs, then merges keys shared
+     * by those runs with each remaining run. Iteration
+     * counters advance without data-dependent branches.
+     */
+    void merge() {
+        reserveKeys();
+        int[] keys = this.keys;
+        int[] keys1 = runKeys[0];
+        int[] keys2 = runKeys[1];
+        int pos1 = runStarts[0];
+        int pos2 = runStarts[1];
+        int end1 = runEnds[0];
+        int end2 = runEnds[1];
+        int nrShared = 0;
+        while (pos1 < end1 && pos2 < end2) {
+            int key1 = keys1[pos1];
+            int key2 = keys2[pos2];
+            // Runs may contain duplicate keys
+            if (key1 == key2 && (nrShared == 0 || keys[nrShared - 1] != key1)) {
+                keys[nrShared++] = key1;
+            }
+            pos1 += key1 <= key2 ? 1 : 0;
+            pos2 += key2 <= key1 ? 1 : 0;
+        }
+        cost += pos1 - runStarts[0] + pos2 - runStarts[1];
+        for (int runCtr = 2; runCtr < nrRuns; ++runCtr) {
+            int[] runKeys = this.runKeys[runCtr];
+            int pos = runStarts[runCtr];
+            int end = runEnds[runCtr];
+            int sharedPos = 0;
+            int nrStillShared = 0;
+            while (sharedPos < nrShared && pos < end) {
+                int sharedKey = keys[sharedPos];
+                int runKey = runKeys[pos];
+                if (sharedKey == runKey) {
+                    keys[nrStillShared++] = sharedKey;
+                }
+                sharedPos += sharedKey <= runKey ? 1 : 0;
+                pos += runKey <= sharedKey ? 1 : 0;
+            }
+            cost += sharedPos + pos - runStarts[runCtr];
+            nrShared = nrStillShared;
+        }
+        nrKeys = nrShared;
+    }
+
+    /**
+     * Sets one bit per key of each run over the common value
+     * range, combines bitmaps via bitwise and, and extracts
+     * keys whose bits remain set.
+     */
+    void intersectBitmaps() {
+        reserveKeys();
+        int nrWords = (int) (((long) hi - lo) >>> 6) + 1;
+        if (bitmap.length < nrWords) {
+            bitmap = new long[nrWords];
+            runBitmap = new long[nrWords];
+        }
+        for (int runCtr = 0; runCtr < nrRuns; ++runCtr) {
+            long[] target = runCtr == 0 ? bitmap : runBitmap;
+            Arrays.fill(target, 0, nrWords, 0);
+            int[] runKeys = this.runKeys[runCtr];
+            int end = runEnds[runCtr];
+            for (int pos = runStarts[runCtr]; pos < end; ++pos) {
+                int offset = runKeys[pos] - lo;
+                target[offset >>> 6] |= 1L << offset;
+            }
+            if (runCtr > 0) {
+                for (int wordCtr = 0; wordCtr < nrWords; ++wordCtr) {
+                    bitmap[wordCtr] &= runBitmap[wordCtr];
+                }
+            }
+            cost += end - runStarts[runCtr] + nrWords;
+        }
+        int nrShared = 0;
+        for (int wordCtr = 0; wordCtr < nrWords; ++wordCtr) {
+            long word = bitmap[wordCtr];
+            while (word != 0) {
+                keys[nrShared++] = lo + (wordCtr << 6) +
+                        Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        nrKeys = nrShared;
+    }
+
+    /**
+     * Moves the given iterators to the first tuple of the given
+     * key in their run (keys must be requested in ascending
+     * order, after intersecting runs of those iterators).
+     *
+     * @param iters iterators whose runs were intersected
+     * @param key   key shared by all runs
+     */
+    public void moveTo(LFTJoin[] iters, int key) {
+        for (int runCtr = 0; runCtr < nrRuns; ++runCtr) {
+            int[] runKeys = this.runKeys[runCtr];
+            int pos = runStarts[runCtr];
+            while (runKeys[pos] < key) {
+                ++pos;
+            }
+            runStarts[runCtr] = pos;
+            LFTJoin iter = iters[runCtr];
+            iter.curTuples[iter.curTrieLevel] = pos;
+        }
+    }
+}
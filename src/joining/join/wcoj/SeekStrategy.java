@@ -0,0 +1,11 @@
+package joining.join.wcoj;
+
+/**
+ * Describes how an iterator searches the next key
+ * that is greater or equal to a seek key.
+ */
+public enum SeekStrategy {
+    LINEAR,         // scan keys (for keys close to current position)
+    GALLOPING,      // exponential search followed by binary search
+    BINARY          // binary search over remaining range
+}
@@ -0,0 +1,391 @@
+package joining.result;
+
+import java.util.Arrays;
+
+/**
+ * Represents join result tuples generated for one attribute
+ * order in factorized form: as a trie whose i-th level contains
+ * values of the i-th join attribute, such that result tuples
+ * sharing a prefix of attribute values share the corresponding
+ * trie nodes. Each trie node stores the value of its attribute,
+ * the index of its parent node, and the tuples of the tables
+ * whose join attributes are all bound once this node is reached
+ * (as a run of positions in the tuple order of each table, since
+ * several tuples of a table may share the same join key).
+ * Nodes are stored per level in primitive arrays, in the order
+ * in which they were generated (i.e., children of the same node
+ * are stored consecutively).
+ */
+public class FactorizedResult {
+	/**
+	 * Initial number of nodes per level.
+	 */
+	static final int INIT_CAPACITY = 64;
+	/**
+	 * Number of trie levels (i.e., join attributes).
+	 */
+	final int nrLevels;
+	/**
+	 * Level at which all join attributes of a table are bound
+	 * (record IDs of that table are stored with nodes at this
+	 * level; -1 for tables without join attributes).
+	 */
+	public final int[] tableLevels;
+	/**
+	 * Attribute value of each node, per level.
+	 */
+	final int[][] values;
+	/**
+	 * Index of parent node of each node, per level
+	 * (nodes at the first level have no parent).
+	 */
+	final int[][] parents;
+	/**
+	 * Maps positions in the trie of each table to record IDs.
+	 */
+	final int[][] tupleOrders;
+	/**
+	 * Position of the first tuple of each table, stored for
+	 * nodes at the level at which the table is complete.
+	 */
+	final int[][] runStarts;
+	/**
+	 * Number of tuples of each table sharing the node's join
+	 * key (null for tables without duplicate join keys).
+	 */
+	final int[][] runLengths;
+	/**
+	 * Number of nodes per level.
+	 */
+	final int[] nrNodes;
+	/**
+	 * Nodes at this level and below are not part of the
+	 * trie yet for the current attribute value binding.
+	 */
+	int firstPending = 0;
+	/**
+	 * Initializes empty result for given trie levels.
+	 *
+	 * @param nrLevels		number of join attributes
+	 * @param tableLevels	level at which each table is complete
+	 * @param tupleOrders	maps trie positions to record IDs per table
+	 * @param duplicates	flags tables with duplicate join keys
+	 */
+	public FactorizedResult(int nrLevels, int[] tableLevels,
+			int[][] tupleOrders, boolean[] duplicates) {
+		this.nrLevels = nrLevels;
+		this.tableLevels = tableLevels;
+		this.tupleOrders = tupleOrders;
+		this.values = new int[nrLevels][INIT_CAPACITY];
+		this.parents = new int[nrLevels][INIT_CAPACITY];
+		this.nrNodes = new int[nrLevels];
+		int nrTables = tableLevels.length;
+		this.runStarts = new int[nrTables][];
+		this.runLengths = new int[nrTables][];
+		for (int tableCtr=0; tableCtr<nrTables; ++tableCtr) {
+			if (tableLevels[tableCtr] >= 0) {
+				runStarts[tableCtr] = new int[INIT_CAPACITY];
+				if (duplicates[tableCtr]) {
+					runLengths[tableCtr] = new int[INIT_CAPACITY];
+				}
+			}
+		}
+	}
+	/**
+	 * Notifies result that the attribute at given level was
+	 * bound to a new value (invalidating trie nodes generated
+	 * for previous values at this level and below).
+	 *
+	 * @param level	trie level of newly bound attribute
+	 */
+	public void bind(int level) {
+		if (level < firstPending) {
+			firstPending = level;
+		}
+	}
+	/**
+	 * Returns first level at which nodes will be added for the
+	 * next result tuple (record IDs of tables that are complete
+	 * at a lower level are not accessed).
+	 *
+	 * @return	first level without node for current binding
+	 */
+	public int firstPending() {
+		return firstPending;
+	}
+	/**
+	 * Adds result tuple to the trie, creating nodes for the
+	 * attribute values that were bound since the last result.
+	 *
+	 * @param attributeValues	value of each join attribute (by level)
+	 * @param tuples			position of first matching tuple per table
+	 * @param nrTuples			number of matching tuples per table
+	 */
+	public void add(int[] attributeValues, int[] tuples, int[] nrTuples) {
+		for (int level=firstPending; level<nrLevels; ++level) {
+			int node = nrNodes[level];
+			if (node == values[level].length) {
+				int capacity = 2 * node;
+				values[level] = Arrays.copyOf(values[level], capacity);
+				parents[level] = Arrays.copyOf(parents[level], capacity);
+				for (int tableCtr=0; tableCtr<tableLevels.length; ++tableCtr) {
+					if (tableLevels[tableCtr] == level) {
+						runStarts[tableCtr] = Arrays.copyOf(
+								runStarts[tableCtr], capacity);
+						if (runLengths[tableCtr] != null) {
+							runLengths[tableCtr] = Arrays.copyOf(
+									runLengths[tableCtr], capacity);
+						}
+					}
+				}
+			}
+			values[level][node] = attributeValues[level];
+			parents[level][node] = level == 0 ? -1 : nrNodes[level - 1] - 1;
+			for (int tableCtr=0; tableCtr<tableLevels.length; ++tableCtr) {
+				if (tableLevels[tableCtr] == level) {
+					runStarts[tableCtr][node] = tuples[tableCtr];
+					if (runLengths[tableCtr] != null) {
+						runLengths[tableCtr][node] = nrTuples[tableCtr];
+					}
+				}
+			}
+			++nrNodes[level];
+		}
+		firstPending = nrLevels;
+	}
+	/**
+	 * Prepares adding tuples from a new episode (which
+	 * may not continue the last attribute value binding).
+	 */
+	public void startEpisode() {
+		firstPending = 0;
+	}
+	/**
+	 * Returns the number of result tuples.
+	 *
+	 * @return	number of result tuples over all trie leaves
+	 */
+	public long count() {
+		long[] weights = weights(-1, new boolean[tableLevels.length]);
+		return weights.length == 0 ? 0 : weights[0];
+	}
+	/**
+	 * Returns the lowest level at which all given
+	 * tables are complete.
+	 *
+	 * @param tables	flags tables to consider
+	 * @return			trie level (-1 if no table is flagged)
+	 */
+	public int levelOf(boolean[] tables) {
+		int level = -1;
+		for (int tableCtr=0; tableCtr<tableLevels.length; ++tableCtr) {
+			if (tables[tableCtr]) {
+				level = Math.max(level, tableLevels[tableCtr]);
+			}
+		}
+		return level;
+	}
+	/**
+	 * Maps each node at the given level to its ancestor
+	 * at a higher trie level.
+	 *
+	 * @param level			trie level of nodes
+	 * @param ancestorLevel	trie level of ancestors
+	 * @return				index of ancestor node per node
+	 */
+	int[] ancestors(int level, int ancestorLevel) {
+		int nrLevelNodes = nrNodes[level];
+		int[] ancestors = new int[nrLevelNodes];
+		for (int node=0; node<nrLevelNodes; ++node) {
+			ancestors[node] = node;
+		}
+		for (int curLevel=level; curLevel>ancestorLevel; --curLevel) {
+			int[] curParents = parents[curLevel];
+			for (int node=0; node<nrLevelNodes; ++node) {
+				ancestors[node] = curParents[ancestors[node]];
+			}
+		}
+		return ancestors;
+	}
+	/**
+	 * Maps each node at the given level to the node storing
+	 * the tuples of each flagged table.
+	 *
+	 * @param level		trie level of nodes
+	 * @param tables	flags tables whose tuples are required
+	 * @return			node indices per flagged table (null otherwise)
+	 */
+	int[][] tableNodes(int level, boolean[] tables) {
+		int nrTables = tableLevels.length;
+		int[][] tableNodes = new int[nrTables][];
+		for (int tableCtr=0; tableCtr<nrTables; ++tableCtr) {
+			if (tables[tableCtr]) {
+				tableNodes[tableCtr] = ancestors(level, tableLevels[tableCtr]);
+			}
+		}
+		return tableNodes;
+	}
+	/**
+	 * Returns the number of result rows generated for the given
+	 * node, i.e. the number of combinations of tuples from the
+	 * flagged tables.
+	 *
+	 * @param node			index of node
+	 * @param tableNodes	node storing tuples per flagged table
+	 * @return				number of rows for node
+	 */
+	int nrRows(int node, int[][] tableNodes) {
+		int nrRows = 1;
+		for (int tableCtr=0; tableCtr<tableNodes.length; ++tableCtr) {
+			if (tableNodes[tableCtr] != null && runLengths[tableCtr] != null) {
+				nrRows *= runLengths[tableCtr][tableNodes[tableCtr][node]];
+			}
+		}
+		return nrRows;
+	}
+	/**
+	 * Returns for each result row at the given level (see
+	 * {@link #rids(int, boolean[])}) the number of result tuples
+	 * it represents: tuples of flagged tables are enumerated by
+	 * rows while tuples of all other tables multiply the weight.
+	 * Level -1 refers to a virtual root node (and yields no entry
+	 * if the result is empty).
+	 *
+	 * @param level		trie level
+	 * @param tables	flags tables whose tuples are enumerated
+	 * @return			number of result tuples per row
+	 */
+	public long[] weights(int level, boolean[] tables) {
+		if (nrLevels == 0) {
+			return new long[0];
+		}
+		// Aggregate over subtrees below given level
+		long[] weights = null;
+		for (int curLevel=nrLevels-1; curLevel>=Math.max(level, 0); --curLevel) {
+			long[] curWeights = new long[nrNodes[curLevel]];
+			if (weights == null) {
+				Arrays.fill(curWeights, 1);
+			} else {
+				int[] childParents = parents[curLevel + 1];
+				for (int node=0; node<weights.length; ++node) {
+					curWeights[childParents[node]] += weights[node];
+				}
+			}
+			for (int tableCtr=0; tableCtr<tableLevels.length; ++tableCtr) {
+				if (tableLevels[tableCtr] == curLevel && runLengths[tableCtr] != null
+						&& (curLevel > level || !tables[tableCtr])) {
+					int[] tableRuns = runLengths[tableCtr];
+					for (int node=0; node<curWeights.length; ++node) {
+						curWeights[node] *= tableRuns[node];
+					}
+				}
+			}
+			weights = curWeights;
+		}
+		if (level < 0) {
+			long count = 0;
+			for (long weight : weights) {
+				count += weight;
+			}
+			return count == 0 ? new long[0] : new long[] {count};
+		}
+		// Multiply by tuples of other tables complete above level
+		for (int tableCtr=0; tableCtr<tableLevels.length; ++tableCtr) {
+			int tableLevel = tableLevels[tableCtr];
+			if (tableLevel >= 0 && tableLevel < level && 
+					runLengths[tableCtr] != null && !tables[tableCtr]) {
+				int[] ancestors = ancestors(level, tableLevel);
+				int[] tableRuns = runLengths[tableCtr];
+				for (int node=0; node<weights.length; ++node) {
+					weights[node] *= tableRuns[ancestors[node]];
+				}
+			}
+		}
+		// Repeat weights for rows generated from the same node
+		int[][] tableNodes = tableNodes(level, tables);
+		int nrRows = 0;
+		for (int node=0; node<weights.length; ++node) {
+			nrRows += nrRows(node, tableNodes);
+		}
+		if (nrRows == weights.length) {
+			return weights;
+		}
+		long[] rowWeights = new long[nrRows];
+		int row = 0;
+		for (int node=0; node<weights.length; ++node) {
+			int nodeRows = nrRows(node, tableNodes);
+			Arrays.fill(rowWeights, row, row + nodeRows, weights[node]);
+			row += nodeRows;
+		}
+		return rowWeights;
+	}
+	/**
+	 * Returns record IDs of the flagged tables for each result
+	 * row at the given level. Each node at that level yields
+	 * one row per combination of the tuples stored for the
+	 * flagged tables.
+	 *
+	 * @param level		trie level
+	 * @param tables	flags tables whose record IDs are required
+	 * @return			record IDs per flagged table (null otherwise)
+	 */
+	public int[][] rids(int level, boolean[] tables) {
+		int nrTables = tableLevels.length;
+		int[][] rids = new int[nrTables][];
+		if (level < 0) {
+			return rids;
+		}
+		int[][] tableNodes = tableNodes(level, tables);
+		int nrLevelNodes = nrNodes[level];
+		int nrRows = 0;
+		for (int node=0; node<nrLevelNodes; ++node) {
+			nrRows += nrRows(node, tableNodes);
+		}
+		for (int tableCtr=0; tableCtr<nrTables; ++tableCtr) {
+			if (tables[tableCtr]) {
+				rids[tableCtr] = new int[nrRows];
+			}
+		}
+		int[] offsets = new int[nrTables];
+		int row = 0;
+		for (int node=0; node<nrLevelNodes; ++node) {
+			// Enumerate combinations of tuples of flagged tables
+			Arrays.fill(offsets, 0);
+			boolean done = false;
+			while (!done) {
+				for (int tableCtr=0; tableCtr<nrTables; ++tableCtr) {
+					if (tables[tableCtr]) {
+						int tableNode = tableNodes[tableCtr][node];
+						int tuple = runStarts[tableCtr][tableNode] + offsets[tableCtr];
+						rids[tableCtr][row] = tupleOrders[tableCtr][tuple];
+					}
+				}
+				++row;
+				done = true;
+				for (int tableCtr=0; tableCtr<nrTables && done; ++tableCtr) {
+					if (tables[tableCtr] && runLengths[tableCtr] != null) {
+						int tableNode = tableNodes[tableCtr][node];
+						if (++offsets[tableCtr] < runLengths[tableCtr][tableNode]) {
+							done = false;
+						} else {
+							offsets[tableCtr] = 0;
+						}
+					}
+				}
+			}
+		}
+		return rids;
+	}
+	/**
+	 * Returns the number of stored trie nodes.
+	 *
+	 * @return	number of nodes over all levels
+	 */
+	public long size() {
+		long size = 0;
+		for (int level=0; level<nrLevels; ++level) {
+			size += nrNodes[level];
+		}
+		return size;
+	}
+}
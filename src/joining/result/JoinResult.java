@@ -20,11 +20,23 @@ public class JoinResult {
 //	public Set<ResultTuple> tuples = new HashSet<>();
 
 	public List<int[]> tuples = new ArrayList<>();
-
+	/**
+	 * Contains join result tuples in columnar form, as
+	 * chunks taken over from per-thread result buffers
+	 * (the i-th array of each chunk contains tuple
+	 * indices for the i-th join table).
+	 */
+	final List<int[][]> chunks = new ArrayList<>();
+	/**
+	 * Contains for each chunk the number of result tuples
+	 * represented by each of its tuples if tuples were
+	 * taken over from factorized results (empty otherwise).
+	 */
+	final List<long[]> weightChunks = new ArrayList<>();
 	/**
 	 * Number of tables being joined.
 	 */
-//	final int nrTables;
+	final int nrTables;
 	/**
 	 * Root of tree representing join result.
 	 */
@@ -35,7 +47,7 @@ public class JoinResult {
 	 * @param nrTables	number of tables being joined
 	 */
 	public JoinResult(int nrTables) {
-//		this.nrTables = nrTables;
+		this.nrTables = nrTables;
 //		this.resultRoot = new ResultNode();
 	}
 	/**
@@ -60,6 +72,79 @@ public class JoinResult {
 
 	public void merge(JoinResult newResult) {
 		tuples.addAll(newResult.tuples);
+		chunks.addAll(newResult.chunks);
+		weightChunks.addAll(newResult.weightChunks);
+	}
+	/**
+	 * Takes over tuples collected in given result buffer
+	 * (without copying them).
+	 * 
+	 * @param buffer	result buffer of one join thread
+	 */
+	public void merge(ResultBuffer buffer) {
+		chunks.addAll(buffer.finish());
+	}
+	/**
+	 * Takes over tuples from a factorized result, at the
+	 * coarsest granularity that determines tuple indices for
+	 * all given tables. Each resulting tuple is weighted by
+	 * the number of result tuples it represents.
+	 * 
+	 * @param result	factorized result of one attribute order
+	 * @param tables	flags tables whose tuple indices are required
+	 */
+	public void merge(FactorizedResult result, boolean[] tables) {
+		int level = result.levelOf(tables);
+		long[] weights = result.weights(level, tables);
+		if (weights.length == 0) {
+			return;
+		}
+		chunks.add(result.rids(level, tables));
+		weightChunks.add(weights);
+	}
+	/**
+	 * Adds one tuple representing the given number of result
+	 * tuples, without tuple indices (if only the cardinality
+	 * of the join result is required).
+	 * 
+	 * @param nrTuples	number of result tuples
+	 */
+	public void addCount(long nrTuples) {
+		if (nrTuples > 0) {
+			chunks.add(new int[nrTables][]);
+			weightChunks.add(new long[] {nrTuples});
+		}
+	}
+	/**
+	 * Returns true iff tuples are weighted (i.e., represent
+	 * groups of result tuples from factorized results).
+	 * 
+	 * @return	true iff tuples are weighted
+	 */
+	public boolean isWeighted() {
+		return !weightChunks.isEmpty();
+	}
+	/**
+	 * Returns weights of tuples in columnar form.
+	 * 
+	 * @return	chunks of tuple weights
+	 */
+	public List<long[]> weightChunks() {
+		return weightChunks;
+	}
+	/**
+	 * Returns tuple indices for given table from result
+	 * tuples in columnar form, as list of chunks.
+	 * 
+	 * @param tableIdx	index of join table
+	 * @return			chunks of tuple indices for table
+	 */
+	public List<int[]> tableChunks(int tableIdx) {
+		List<int[]> tableChunks = new ArrayList<>(chunks.size());
+		for (int[][] chunk : chunks) {
+			tableChunks.add(chunk[tableIdx]);
+		}
+		return tableChunks;
 	}
 	
 //	void addSubtree(ResultNode resultNode, int level,
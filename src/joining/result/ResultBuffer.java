@@ -0,0 +1,78 @@
+package joining.result;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects join result tuples generated by one join thread
+ * in columnar form: tuple indices are appended into chunks
+ * of fixed size, containing one array per joined table.
+ * Chunks are never resized, hence growing the buffer does
+ * not copy previously added tuples.
+ */
+public class ResultBuffer {
+	/**
+	 * Number of tuples per chunk.
+	 */
+	static final int CHUNK_SIZE = 1 << 14;
+	/**
+	 * Number of tables being joined.
+	 */
+	final int nrTables;
+	/**
+	 * Chunks of tuple indices (the i-th array of each
+	 * chunk contains tuple indices for the i-th table).
+	 */
+	final List<int[][]> chunks = new ArrayList<>();
+	/**
+	 * Chunk to which tuples are currently added.
+	 */
+	int[][] curChunk = null;
+	/**
+	 * Number of tuples in current chunk.
+	 */
+	int nrInChunk = CHUNK_SIZE;
+	/**
+	 * Initializes result buffer for query of given size.
+	 *
+	 * @param nrTables	number of tables being joined
+	 */
+	public ResultBuffer(int nrTables) {
+		this.nrTables = nrTables;
+	}
+	/**
+	 * Add tuple indices to the buffer.
+	 *
+	 * @param tupleIndices	tuple index for each table
+	 */
+	public void add(int[] tupleIndices) {
+		if (nrInChunk == CHUNK_SIZE) {
+			curChunk = new int[nrTables][CHUNK_SIZE];
+			chunks.add(curChunk);
+			nrInChunk = 0;
+		}
+		for (int tableCtr=0; tableCtr<nrTables; ++tableCtr) {
+			curChunk[tableCtr][nrInChunk] = tupleIndices[tableCtr];
+		}
+		++nrInChunk;
+	}
+	/**
+	 * Returns chunks of buffered tuples, trimming the last
+	 * chunk to the number of tuples it contains. No more
+	 * tuples should be added afterwards.
+	 *
+	 * @return	chunks of tuple indices
+	 */
+	List<int[][]> finish() {
+		if (curChunk != null && nrInChunk < CHUNK_SIZE) {
+			for (int tableCtr=0; tableCtr<nrTables; ++tableCtr) {
+				curChunk[tableCtr] = Arrays.copyOf(
+						curChunk[tableCtr], nrInChunk);
+			}
+		}
+		nrInChunk = CHUNK_SIZE;
+		curChunk = null;
+		return chunks;
+	}
+}
@@ -0,0 +1,213 @@
+package joining.uct;
+
+import config.JoinConfig;
+import diskio.DiskUtil;
+import diskio.PathUtil;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores UCT statistics learned for the best attribute order
+ * of a query, keyed by the fingerprint of its join hypergraph,
+ * and uses them to initialize the UCT tree of later queries
+ * with the same fingerprint. For each node on the best path,
+ * the number of tries and accumulated reward of each action
+ * are kept (by canonical attribute). Statistics are stored
+ * under the database directory so that they survive restarts,
+ * keeping only the join structures used most recently.
+ */
+public class LearnedOrderStore {
+    /**
+     * UCT statistics along the best path of one query.
+     */
+    static class LearnedStats implements Serializable {
+        private static final long serialVersionUID = 1L;
+        /**
+         * Canonical attribute selected on the best path per tree level.
+         */
+        final int[] bestPath;
+        /**
+         * Number of tries per tree level and canonical attribute.
+         */
+        final int[][] nrTries;
+        /**
+         * Accumulated reward per tree level and canonical attribute.
+         */
+        final double[][] rewards;
+        /**
+         * Time (in milliseconds) at which statistics
+         * were last recorded or used.
+         */
+        volatile long lastUsed;
+
+        LearnedStats(int[] bestPath, int[][] nrTries, double[][] rewards) {
+            this.bestPath = bestPath;
+            this.nrTries = nrTries;
+            this.rewards = rewards;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Maps query fingerprints to learned statistics
+     * (null until loaded from disk).
+     */
+    static ConcurrentHashMap<String, LearnedStats> learned = null;
+
+    /**
+     * Returns path of file storing learned statistics.
+     *
+     * @return path to statistics file
+     */
+    static String storePath() {
+        return Paths.get(PathUtil.dbDir, "learnedorders", "orders.sdb").toString();
+    }
+
+    /**
+     * Returns learned statistics, loading them from
+     * disk when accessed for the first time.
+     *
+     * @return map from fingerprints to statistics
+     */
+    @SuppressWarnings("unchecked")
+    static synchronized Map<String, LearnedStats> learned() {
+        if (learned == null) {
+            learned = new ConcurrentHashMap<>();
+            if (PathUtil.dbDir != null && new File(storePath()).exists()) {
+                try {
+                    learned.putAll((Map<String, LearnedStats>)
+                            DiskUtil.loadObject(storePath()));
+                } catch (Exception e) {
+                    System.err.println("Error loading learned attribute orders from " +
+                            storePath() + " - starting without learned orders");
+                }
+            }
+        }
+        return learned;
+    }
+
+    /**
+     * Adds learned statistics for the given query fingerprint
+     * to the nodes along the best path of a new UCT tree.
+     * Tries are scaled down so that no action starts with
+     * more than the configured number of prior tries.
+     *
+     * @param fingerprint join structure of current query
+     * @param root        root of new UCT tree
+     * @return true iff statistics were found
+     */
+    public static boolean warmStart(QueryFingerprint fingerprint, ParallelUctNodeLFTJ root) {
+        LearnedStats stats = learned().get(fingerprint.key);
+        if (stats == null) {
+            return false;
+        }
+        stats.lastUsed = System.currentTimeMillis();
+        ParallelUctNodeLFTJ node = root;
+        for (int level = 0; level < stats.nrTries.length && node.nrActions > 0; ++level) {
+            int[] levelTries = stats.nrTries[level];
+            int maxTries = Arrays.stream(levelTries).max().orElse(0);
+            double scale = Math.min(1, (double) JoinConfig.PRIOR_TRIES / Math.max(1, maxTries));
+            int bestAction = -1;
+            for (int action = 0; action < node.nrActions; ++action) {
+                int attribute = fingerprint.toCanonical[node.nextAttributes[action]];
+                int nrTries = levelTries[attribute];
+                if (nrTries > 0) {
+                    double meanReward = stats.rewards[level][attribute] / nrTries;
+                    int priorTries = Math.max(1, (int) Math.round(nrTries * scale));
+                    node.addPrior(action, priorTries, meanReward * priorTries);
+                }
+                if (attribute == stats.bestPath[level]) {
+                    bestAction = action;
+                }
+            }
+            if (bestAction < 0) {
+                break;
+            }
+            node = node.expand(0, bestAction);
+        }
+        return true;
+    }
+
+    /**
+     * Extracts statistics along the best path of the UCT tree
+     * after processing a query and stores them on disk.
+     *
+     * @param fingerprint join structure of processed query
+     * @param root        root of UCT tree used for the query
+     */
+    public static void record(QueryFingerprint fingerprint, ParallelUctNodeLFTJ root) {
+        int nrAttributes = root.nrActions;
+        int[] order = new int[nrAttributes];
+        Arrays.fill(order, -1);
+        root.getOptimalOrder(order);
+        int[] bestPath = new int[nrAttributes];
+        int[][] nrTries = new int[nrAttributes][];
+        double[][] rewards = new double[nrAttributes][];
+        ParallelUctNodeLFTJ node = root;
+        int nrLevels = 0;
+        while (node != null && nrLevels < nrAttributes && order[nrLevels] >= 0) {
+            nrTries[nrLevels] = new int[nrAttributes];
+            rewards[nrLevels] = new double[nrAttributes];
+            int bestAction = -1;
+            for (int action = 0; action < node.nrActions; ++action) {
+                int attribute = node.nextAttributes[action];
+                int canonical = fingerprint.toCanonical[attribute];
+                nrTries[nrLevels][canonical] = node.nrTries(action);
+                rewards[nrLevels][canonical] = node.accumulatedReward(action);
+                if (attribute == order[nrLevels]) {
+                    bestAction = action;
+                    bestPath[nrLevels] = canonical;
+                }
+            }
+            node = bestAction < 0 ? null : node.childNodes.get(bestAction);
+            ++nrLevels;
+        }
+        if (nrLevels == 0) {
+            return;
+        }
+        learned().put(fingerprint.key, new LearnedStats(Arrays.copyOf(bestPath, nrLevels),
+                Arrays.copyOf(nrTries, nrLevels), Arrays.copyOf(rewards, nrLevels)));
+        evict();
+        store();
+    }
+
+    /**
+     * Removes statistics used least recently until no more
+     * than the maximal number of join structures remain.
+     */
+    static synchronized void evict() {
+        int nrExcess = learned.size() - JoinConfig.MAX_LEARNED_ORDERS;
+        if (nrExcess <= 0) {
+            return;
+        }
+        List<Map.Entry<String, LearnedStats>> entries = new ArrayList<>(learned.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed));
+        for (int entryCtr = 0; entryCtr < nrExcess; ++entryCtr) {
+            learned.remove(entries.get(entryCtr).getKey());
+        }
+    }
+
+    /**
+     * Stores learned statistics on disk, replacing the
+     * previous file atomically.
+     */
+    static synchronized void store() {
+        if (learned == null || PathUtil.dbDir == null) {
+            return;
+        }
+        try {
+            DiskUtil.storeObject(learned, storePath());
+        } catch (Exception e) {
+            System.err.println("Error storing learned attribute orders");
+            e.printStackTrace();
+        }
+    }
+}
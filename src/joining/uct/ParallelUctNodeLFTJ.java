@@ -8,19 +8,26 @@ import statistics.JoinStats;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import config.JoinConfig;
 
 /**
- * Represents node in UCT search tree.
+ * Represents node in UCT search tree that is sampled by
+ * all join threads concurrently. Nodes are expanded via
+ * compare-and-set and statistics are kept in atomic
+ * counters per action. A thread selecting an action adds
+ * a virtual loss (i.e., counts a try without reward) until
+ * its sample completes, so concurrent samples spread over
+ * different actions instead of following the same path.
  *
  * 
  */
 public class ParallelUctNodeLFTJ {
-    /**
-     * Used for randomized selection policy.
-     */
-    final Random random = new Random();
     /**
      * The query for which we are optimizing.
      */
@@ -48,19 +55,22 @@ public class ParallelUctNodeLFTJ {
     /**
      * Assigns each action index to child node.
      */
-    public final ParallelUctNodeLFTJ[] childNodes;
+    public final AtomicReferenceArray<ParallelUctNodeLFTJ> childNodes;
     /**
-     * Number of times this node was visited.
+     * Number of times this node was visited
+     * (including samples in progress).
      */
-    private int[] nrVisits;
+    private final AtomicInteger nrVisits = new AtomicInteger();
     /**
-     * Number of times each action was tried out.
+     * Number of times each action was tried out
+     * (including virtual losses of samples in progress).
      */
-    private final int[][] nrTries;
+    private final AtomicIntegerArray nrTries;
     /**
-     * Reward accumulated for specific actions.
+     * Reward accumulated for specific actions
+     * (stored as raw bits of double values).
      */
-    private final double[][] accumulatedReward;
+    private final AtomicLongArray accumulatedReward;
     /**
      * Total number of attribute to join.
      */
@@ -95,8 +105,6 @@ public class ParallelUctNodeLFTJ {
      */
     final Set<Integer> recommendedActions;
 
-    final int nrThreads;
-
     /**
      * Initialize UCT root node.
      *
@@ -105,11 +113,10 @@ public class ParallelUctNodeLFTJ {
      * @param useHeuristic whether to avoid Cartesian products
      */
     public ParallelUctNodeLFTJ(long roundCtr, QueryInfo query,
-                               boolean useHeuristic, int nrThreads) {
+                               boolean useHeuristic) {
         // Count node generation
         this.query = query;
         this.nrAttributes = query.equiJoinAttribute.size();
-        this.nrThreads = nrThreads;
         createdIn = roundCtr;
         treeLevel = 0;
         nrActions = nrAttributes;
@@ -119,10 +126,9 @@ public class ParallelUctNodeLFTJ {
         }
         Collections.shuffle(priorityList);
         priorityActions = new ConcurrentLinkedDeque<>(priorityList);
-        childNodes = new ParallelUctNodeLFTJ[nrActions];
-        nrVisits = new int[nrThreads];
-        nrTries = new int[nrThreads][nrActions];
-        accumulatedReward = new double[nrThreads][nrActions];
+        childNodes = new AtomicReferenceArray<>(nrActions);
+        nrTries = new AtomicIntegerArray(nrActions);
+        accumulatedReward = new AtomicLongArray(nrActions);
         joinedAttributes = new HashSet<Integer>();
         unjoinedAttributes = new ArrayList<>();
         nextAttributes = new int[nrAttributes];
@@ -149,11 +155,9 @@ public class ParallelUctNodeLFTJ {
         createdIn = roundCtr;
         treeLevel = parent.treeLevel + 1;
         nrActions = parent.nrActions - 1;
-        nrThreads = parent.nrThreads;
-        childNodes = new ParallelUctNodeLFTJ[nrActions];
-        nrVisits = new int[nrThreads];
-        nrTries = new int[nrThreads][nrActions];
-        accumulatedReward = new double[nrThreads][nrActions];
+        childNodes = new AtomicReferenceArray<>(nrActions);
+        nrTries = new AtomicIntegerArray(nrActions);
+        accumulatedReward = new AtomicLongArray(nrActions);
         query = parent.query;
         nrAttributes = parent.nrAttributes;
         joinedAttributes = new HashSet<Integer>();
@@ -199,7 +203,7 @@ public class ParallelUctNodeLFTJ {
                 priorityList.add(actionCtr);
             }
         }
-        Collections.shuffle(priorityList);
+        Collections.shuffle(priorityList, ThreadLocalRandom.current());
         priorityActions = new ConcurrentLinkedDeque<>(priorityList);
     }
 
@@ -227,6 +231,8 @@ public class ParallelUctNodeLFTJ {
              * selected action to ensure that we pick a random
              * action among the ones with maximal UCT value.
              */
+            Random random = ThreadLocalRandom.current();
+            int totalVisit = nrVisits.get();
             int offset = random.nextInt(nrActions);
             int bestAction = -1;
             double bestQuality = -1;
@@ -239,15 +245,8 @@ public class ParallelUctNodeLFTJ {
                 }
                 if (useHeuristic && !recommendedActions.contains(action))
                     continue;
-                // collection information from all threads
-                double accumulatedActionReward = 0;
-                int nrActionTries = 0;
-                int totalVisit = 0;
-                for (int i = 0; i < nrThreads; i++) {
-                    accumulatedActionReward += accumulatedReward[i][action];
-                    nrActionTries += nrTries[i][action];
-                    totalVisit += nrVisits[i];
-                }
+                double accumulatedActionReward = reward(action);
+                int nrActionTries = nrTries.get(action);
                 if (nrActionTries < 1) {
                     continue;
                 }
@@ -298,15 +297,105 @@ public class ParallelUctNodeLFTJ {
     }
 
     /**
-     * Updates UCT statistics after sampling.
+     * Returns the reward accumulated for the given action.
+     *
+     * @param action action index
+     * @return accumulated reward
+     */
+    double reward(int action) {
+        return Double.longBitsToDouble(accumulatedReward.get(action));
+    }
+
+    /**
+     * Counts a visit and adds a virtual loss for the selected
+     * action before sampling (so that concurrent samples
+     * see the action as tried without reward).
+     *
+     * @param selectedAction action taken
+     */
+    void addVirtualLoss(int selectedAction) {
+        nrVisits.incrementAndGet();
+        nrTries.addAndGet(selectedAction, JoinConfig.VIRTUAL_LOSS);
+    }
+
+    /**
+     * Updates UCT statistics after sampling, replacing
+     * the virtual loss by the achieved reward.
      *
      * @param selectedAction action taken
      * @param reward         reward achieved
      */
-    void updateStatistics(int selectedAction, double reward, int tid) {
-        ++nrVisits[tid];
-        ++nrTries[tid][selectedAction];
-        accumulatedReward[tid][selectedAction] += reward;
+    void updateStatistics(int selectedAction, double reward) {
+        nrTries.addAndGet(selectedAction, 1 - JoinConfig.VIRTUAL_LOSS);
+        addReward(selectedAction, reward);
+    }
+
+    /**
+     * Atomically adds to the reward accumulated for an action.
+     *
+     * @param action action index
+     * @param reward reward to add
+     */
+    void addReward(int action, double reward) {
+        long prior;
+        long updated;
+        do {
+            prior = accumulatedReward.get(action);
+            updated = Double.doubleToRawLongBits(
+                    Double.longBitsToDouble(prior) + reward);
+        } while (!accumulatedReward.compareAndSet(action, prior, updated));
+    }
+
+    /**
+     * Returns the number of completed tries of an action.
+     *
+     * @param action action index
+     * @return number of tries
+     */
+    public int nrTries(int action) {
+        return nrTries.get(action);
+    }
+
+    /**
+     * Returns the reward accumulated for an action.
+     *
+     * @param action action index
+     * @return accumulated reward
+     */
+    public double accumulatedReward(int action) {
+        return reward(action);
+    }
+
+    /**
+     * Adds statistics learned before (e.g., for a query with
+     * the same join structure) to an action. The action is no
+     * longer treated as untried.
+     *
+     * @param action action index
+     * @param tries  number of prior tries
+     * @param reward reward accumulated over prior tries
+     */
+    public void addPrior(int action, int tries, double reward) {
+        nrVisits.addAndGet(tries);
+        nrTries.addAndGet(action, tries);
+        addReward(action, reward);
+        priorityActions.remove(Integer.valueOf(action));
+    }
+
+    /**
+     * Returns child node for the given action, creating
+     * it if it does not exist yet.
+     *
+     * @param roundCtr current round number
+     * @param action   action index
+     * @return child node
+     */
+    public ParallelUctNodeLFTJ expand(long roundCtr, int action) {
+        if (childNodes.get(action) == null) {
+            childNodes.compareAndSet(action, null,
+                    new ParallelUctNodeLFTJ(roundCtr, this, nextAttributes[action]));
+        }
+        return childNodes.get(action);
     }
 
     /**
@@ -327,7 +416,7 @@ public class ParallelUctNodeLFTJ {
             // Iterate over join order positions to fill
             List<Integer> unjoinedAttributesShuffled = new ArrayList<Integer>();
             unjoinedAttributesShuffled.addAll(unjoinedAttributes);
-            Collections.shuffle(unjoinedAttributesShuffled);
+            Collections.shuffle(unjoinedAttributesShuffled, ThreadLocalRandom.current());
             for (int posCtr = treeLevel + 1; posCtr < nrAttributes; ++posCtr) {
                 boolean foundAttribute = false;
                 for (int attribute : unjoinedAttributesShuffled) {
@@ -350,9 +439,10 @@ public class ParallelUctNodeLFTJ {
                 }
             }
         } else {
-            // Shuffle remaining attributes
-            Collections.shuffle(unjoinedAttributes);
-            Iterator<Integer> unjoinedAttributesIter = unjoinedAttributes.iterator();
+            // Shuffle remaining attributes (copy shared by threads)
+            List<Integer> unjoinedAttributesShuffled = new ArrayList<Integer>(unjoinedAttributes);
+            Collections.shuffle(unjoinedAttributesShuffled, ThreadLocalRandom.current());
+            Iterator<Integer> unjoinedAttributesIter = unjoinedAttributesShuffled.iterator();
             // Fill in remaining join order positions
             for (int posCtr = treeLevel + 1; posCtr < nrAttributes; ++posCtr) {
                 int nextAttribute = unjoinedAttributesIter.next();
@@ -376,7 +466,7 @@ public class ParallelUctNodeLFTJ {
      * @return achieved reward
      */
     public double sample(long roundCtr, int[] joinOrder,
-                         SelectionPolicy policy, ParallelLFTJ joinOp, int tid) throws Exception {
+                         SelectionPolicy policy, ParallelLFTJ joinOp) throws Exception {
         // Check if this is a (non-extendible) leaf node
         if (nrActions == 0) {
             // leaf node - evaluate join order and return reward
@@ -387,16 +477,15 @@ public class ParallelUctNodeLFTJ {
             int action = selectAction(policy);
             int attribute = nextAttributes[action];
             joinOrder[treeLevel] = attribute;
-            // grow tree if possible
+            addVirtualLoss(action);
+            // grow tree if possible (one thread installs the child)
             boolean canExpand = (createdIn != roundCtr);
-            if (childNodes[action] == null && canExpand) {
-                childNodes[action] = new ParallelUctNodeLFTJ(roundCtr, this, attribute);
-            }
+            ParallelUctNodeLFTJ child = canExpand ?
+                    expand(roundCtr, action) : childNodes.get(action);
             // evaluate via recursive invocation or via playout
-            ParallelUctNodeLFTJ child = childNodes[action];
-            double reward = (child != null) ? child.sample(roundCtr, joinOrder, policy, joinOp, tid) : playout(joinOp, joinOrder);
+            double reward = (child != null) ? child.sample(roundCtr, joinOrder, policy, joinOp) : playout(joinOp, joinOrder);
             // update UCT statistics and return reward
-            updateStatistics(action, reward, tid);
+            updateStatistics(action, reward);
             return reward;
         }
     }
@@ -407,12 +496,8 @@ public class ParallelUctNodeLFTJ {
             double bestQuality = -1;
             int selectNrActionTries = 0;
             for (int actionCtr = 0; actionCtr < nrActions; ++actionCtr) {
-                double accumulatedActionReward = 0;
-                int nrActionTries = 0;
-                for (int i = 0; i < nrThreads; i++) {
-                    accumulatedActionReward += accumulatedReward[i][actionCtr];
-                    nrActionTries += nrTries[i][actionCtr];
-                }
+                double accumulatedActionReward = reward(actionCtr);
+                int nrActionTries = nrTries.get(actionCtr);
                 // Calculate index of current action
                 double meanReward = (nrActionTries > 0) ? accumulatedActionReward / nrActionTries : 0;
                 if (meanReward > bestQuality) {
@@ -424,8 +509,9 @@ public class ParallelUctNodeLFTJ {
             // if number of visits is 0
             if (bestAction >= 0 && selectNrActionTries > 0) {
                 order[treeLevel] = nextAttributes[bestAction];
-                if (childNodes[bestAction] != null) {
-                    childNodes[bestAction].getOptimalOrder(order);
+                ParallelUctNodeLFTJ child = childNodes.get(bestAction);
+                if (child != null) {
+                    child.getOptimalOrder(order);
                 }
             }
         }
@@ -437,10 +523,7 @@ public class ParallelUctNodeLFTJ {
             int maxTries = -1;
             for (int actionCtr = 0; actionCtr < nrActions; ++actionCtr) {
                 // Calculate index of current action
-                int nrActionTries = 0;
-                for (int i = 0; i < nrThreads; i++) {
-                    nrActionTries += nrTries[i][actionCtr];
-                }
+                int nrActionTries = nrTries.get(actionCtr);
                 if (nrActionTries > maxTries) {
                     maxTries = nrActionTries;
                     bestAction = actionCtr;
@@ -449,8 +532,9 @@ public class ParallelUctNodeLFTJ {
             // if number of visits is 0
             if (bestAction >= 0 && maxTries > 0) {
                 order[treeLevel] = nextAttributes[bestAction];
-                if (childNodes[bestAction] != null) {
-                    childNodes[bestAction].getOptimalOrder(order);
+                ParallelUctNodeLFTJ child = childNodes.get(bestAction);
+                if (child != null) {
+                    child.getOptimalOrder(order);
                 }
             }
         }
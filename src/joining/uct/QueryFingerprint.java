@@ -0,0 +1,198 @@
+package joining.uct;
+
+import expressions.ExpressionInfo;
+import query.ColumnRef;
+import query.QueryInfo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Canonical description of the join hypergraph of a query:
+ * tables (identified by base table and unary predicates,
+ * independent of alias names) and the join attributes that
+ * connect them via their columns. Attributes are numbered
+ * canonically by refining attribute and table labels with
+ * the labels of their neighbors (and individualizing one
+ * attribute of the first ambiguous class until no ambiguity
+ * remains). Queries with equal fingerprints have identical
+ * hypergraphs under the canonical numbering, so attribute
+ * orders learned for one query apply to the other.
+ */
+public class QueryFingerprint {
+    /**
+     * Canonical encoding of the join hypergraph.
+     */
+    public final String key;
+    /**
+     * Maps query attribute indices to canonical indices.
+     */
+    final int[] toCanonical;
+    /**
+     * Maps canonical attribute indices to query indices.
+     */
+    final int[] fromCanonical;
+
+    /**
+     * Computes fingerprint of the given query.
+     *
+     * @param query query whose joins are described
+     */
+    public QueryFingerprint(QueryInfo query) {
+        int nrAliases = query.nrJoined;
+        int nrAttributes = query.nrAttribute;
+        // Initial table labels: base table and unary predicates
+        String[] tableLabels = new String[nrAliases];
+        for (int aliasCtr = 0; aliasCtr < nrAliases; ++aliasCtr) {
+            String alias = query.aliases[aliasCtr];
+            TreeSet<String> predicates = new TreeSet<>();
+            for (ExpressionInfo unaryPred : query.unaryPredicates) {
+                if (unaryPred.aliasesMentioned.contains(alias)) {
+                    predicates.add(unaryPred.finalExpression.toString().replaceAll(
+                            "\\b" + Pattern.quote(alias) + "\\.",
+                            Matcher.quoteReplacement("$.")));
+                }
+            }
+            tableLabels[aliasCtr] = query.aliasToTable.get(alias) + predicates;
+        }
+        int[] tableColors = colors(tableLabels);
+        int[] attributeColors = new int[nrAttributes];
+        // Refine colors until each attribute has its own color
+        int nrClasses = refine(query, tableColors, attributeColors);
+        while (nrClasses < nrAttributes) {
+            int individual = firstAmbiguous(attributeColors);
+            String[] labels = new String[nrAttributes];
+            for (int attribute = 0; attribute < nrAttributes; ++attribute) {
+                labels[attribute] = attributeColors[attribute] + "," +
+                        (attribute == individual ? 1 : 0);
+            }
+            attributeColors = colors(labels);
+            nrClasses = refine(query, tableColors, attributeColors);
+        }
+        toCanonical = attributeColors;
+        fromCanonical = new int[nrAttributes];
+        for (int attribute = 0; attribute < nrAttributes; ++attribute) {
+            fromCanonical[toCanonical[attribute]] = attribute;
+        }
+        // Encode tables with canonical attributes of their columns
+        List<String> tableCodes = new ArrayList<>();
+        for (int aliasCtr = 0; aliasCtr < nrAliases; ++aliasCtr) {
+            TreeSet<String> columns = new TreeSet<>();
+            for (int attribute = 0; attribute < nrAttributes; ++attribute) {
+                for (ColumnRef colRef : query.equiJoinAttribute.get(attribute)) {
+                    if (colRef.aliasName.equals(query.aliases[aliasCtr])) {
+                        columns.add(colRef.columnName + "=" + toCanonical[attribute]);
+                    }
+                }
+            }
+            tableCodes.add(tableLabels[aliasCtr] + columns);
+        }
+        tableCodes.sort(null);
+        key = nrAttributes + ":" + String.join(";", tableCodes);
+    }
+
+    /**
+     * Refines attribute and table colors by the colors of
+     * adjacent tables and attributes until the number of
+     * colors no longer increases.
+     *
+     * @param query           query whose joins are described
+     * @param tableColors     colors of tables (updated)
+     * @param attributeColors colors of attributes (updated)
+     * @return number of distinct attribute colors
+     */
+    static int refine(QueryInfo query, int[] tableColors, int[] attributeColors) {
+        int nrAliases = tableColors.length;
+        int nrAttributes = attributeColors.length;
+        int nrClasses = nrClasses(attributeColors) + nrClasses(tableColors);
+        while (true) {
+            String[] attributeLabels = new String[nrAttributes];
+            List<List<String>> tableNeighbors = new ArrayList<>();
+            for (int aliasCtr = 0; aliasCtr < nrAliases; ++aliasCtr) {
+                tableNeighbors.add(new ArrayList<>());
+            }
+            for (int attribute = 0; attribute < nrAttributes; ++attribute) {
+                List<String> neighbors = new ArrayList<>();
+                for (ColumnRef colRef : query.equiJoinAttribute.get(attribute)) {
+                    int aliasIdx = query.aliasToIndex.get(colRef.aliasName);
+                    neighbors.add(tableColors[aliasIdx] + "." + colRef.columnName);
+                    tableNeighbors.get(aliasIdx).add(colRef.columnName + "=" +
+                            attributeColors[attribute]);
+                }
+                neighbors.sort(null);
+                attributeLabels[attribute] = attributeColors[attribute] + "" + neighbors;
+            }
+            String[] tableLabels = new String[nrAliases];
+            for (int aliasCtr = 0; aliasCtr < nrAliases; ++aliasCtr) {
+                List<String> neighbors = tableNeighbors.get(aliasCtr);
+                neighbors.sort(null);
+                tableLabels[aliasCtr] = tableColors[aliasCtr] + "" + neighbors;
+            }
+            System.arraycopy(colors(attributeLabels), 0, attributeColors, 0, nrAttributes);
+            System.arraycopy(colors(tableLabels), 0, tableColors, 0, nrAliases);
+            int newNrClasses = nrClasses(attributeColors) + nrClasses(tableColors);
+            if (newNrClasses == nrClasses) {
+                return nrClasses(attributeColors);
+            }
+            nrClasses = newNrClasses;
+        }
+    }
+
+    /**
+     * Replaces labels by their rank among distinct labels
+     * (so colors do not depend on the order of elements).
+     *
+     * @param labels element labels
+     * @return color of each element
+     */
+    static int[] colors(String[] labels) {
+        String[] distinct = new TreeSet<>(Arrays.asList(labels)).toArray(new String[0]);
+        Map<String, Integer> ranks = new HashMap<>();
+        for (int rank = 0; rank < distinct.length; ++rank) {
+            ranks.put(distinct[rank], rank);
+        }
+        int[] colors = new int[labels.length];
+        for (int element = 0; element < labels.length; ++element) {
+            colors[element] = ranks.get(labels[element]);
+        }
+        return colors;
+    }
+
+    /**
+     * Returns the number of distinct colors.
+     *
+     * @param colors element colors
+     * @return number of color classes
+     */
+    static int nrClasses(int[] colors) {
+        return (int) Arrays.stream(colors).distinct().count();
+    }
+
+    /**
+     * Returns the first attribute in the color class with
+     * smallest color among classes with several attributes.
+     *
+     * @param colors attribute colors
+     * @return attribute to individualize
+     */
+    static int firstAmbiguous(int[] colors) {
+        int[] classSizes = new int[colors.length];
+        for (int color : colors) {
+            ++classSizes[color];
+        }
+        int individual = -1;
+        for (int attribute = 0; attribute < colors.length; ++attribute) {
+            if (classSizes[colors[attribute]] > 1 && (individual < 0 ||
+                    colors[attribute] < colors[individual])) {
+                individual = attribute;
+            }
+        }
+        return individual;
+    }
+}
@@ -12,8 +12,11 @@ import catalog.info.ColumnInfo;
 import catalog.info.TableInfo;
 import config.GeneralConfig;
 import data.ColumnData;
+import data.LongData;
+import joining.result.JoinResult;
 //import joining.result.ResultTuple;
 import query.ColumnRef;
+import types.SQLtype;
 
 /**
  * Materializes parts of a table, defined by
@@ -111,6 +114,70 @@ public class Materialize {
 			idxToRows.put(i, rows);
 		});
 		*/
+		addResultTable(sourceCols, columnMappings, targetRelName);
+		// Materialize result columns
+		sourceCols.parallelStream().forEach(srcQueryRef -> {
+			// Generate target column reference
+			String targetCol = srcQueryRef.aliasName + "." + srcQueryRef.columnName;
+			ColumnRef targetRef = new ColumnRef(targetRelName, targetCol);
+			// Generate target column
+			int tableIdx = tableToIdx.get(srcQueryRef.aliasName);
+			ColumnRef srcDBref = columnMappings.get(srcQueryRef);
+			ColumnData srcData = BufferManager.colToData.get(srcDBref);
+			ColumnData targetData = srcData.copyRows(tuples, tableIdx);
+//			System.out.println("srcData:" + srcData.cardinality);
+			// Insert into buffer pool
+			BufferManager.colToData.put(targetRef, targetData);
+		});
+		// Update statistics in catalog
+		CatalogManager.updateStats(targetRelName);
+	}
+	/**
+	 * Materializes a join relation from tuple indices that
+	 * are stored in columnar form (in chunks).
+	 * 
+	 * @param joinResult		join result tuples in columnar form
+	 * @param tableToIdx		maps table names to base table indices
+	 * @param sourceCols		set of columns to copy
+	 * @param columnMappings	maps source columns, as in query, to DB columns
+	 * @param targetRelName		name of materialized result relation
+	 * @throws Exception
+	 */
+	public static void execute(JoinResult joinResult,
+			Map<String, Integer> tableToIdx, 
+			Collection<ColumnRef> sourceCols, 
+			Map<ColumnRef, ColumnRef> columnMappings, 
+			String targetRelName) throws Exception {
+		addResultTable(sourceCols, columnMappings, targetRelName);
+		// Materialize result columns
+		sourceCols.parallelStream().forEach(srcQueryRef -> {
+			// Generate target column reference
+			String targetCol = srcQueryRef.aliasName + "." + srcQueryRef.columnName;
+			ColumnRef targetRef = new ColumnRef(targetRelName, targetCol);
+			// Generate target column
+			int tableIdx = tableToIdx.get(srcQueryRef.aliasName);
+			ColumnRef srcDBref = columnMappings.get(srcQueryRef);
+			ColumnData srcData = BufferManager.colToData.get(srcDBref);
+			ColumnData targetData = srcData.copyRowChunks(
+					joinResult.tableChunks(tableIdx));
+			// Insert into buffer pool
+			BufferManager.colToData.put(targetRef, targetData);
+		});
+		// Update statistics in catalog
+		CatalogManager.updateStats(targetRelName);
+	}
+	/**
+	 * Inserts join result relation with given columns
+	 * into the catalog.
+	 * 
+	 * @param sourceCols		set of columns to copy
+	 * @param columnMappings	maps source columns, as in query, to DB columns
+	 * @param targetRelName		name of materialized result relation
+	 * @throws Exception
+	 */
+	static void addResultTable(Collection<ColumnRef> sourceCols, 
+			Map<ColumnRef, ColumnRef> columnMappings, 
+			String targetRelName) throws Exception {
 		// Update catalog, insert result table
 		TableInfo resultInfo = new TableInfo(targetRelName, true);
 		CatalogManager.currentDB.addTable(resultInfo);
@@ -128,20 +195,33 @@ public class Materialize {
 					srcInfo.type, false, false, false, false);
 			resultInfo.addColumn(targetInfo);
 		}
-		// Materialize result columns
-		sourceCols.parallelStream().forEach(srcQueryRef -> {
-			// Generate target column reference
-			String targetCol = srcQueryRef.aliasName + "." + srcQueryRef.columnName;
-			ColumnRef targetRef = new ColumnRef(targetRelName, targetCol);
-			// Generate target column
-			int tableIdx = tableToIdx.get(srcQueryRef.aliasName);
-			ColumnRef srcDBref = columnMappings.get(srcQueryRef);
-			ColumnData srcData = BufferManager.colToData.get(srcDBref);
-			ColumnData targetData = srcData.copyRows(tuples, tableIdx);
-//			System.out.println("srcData:" + srcData.cardinality);
-			// Insert into buffer pool
-			BufferManager.colToData.put(targetRef, targetData);
-		});
+	}
+	/**
+	 * Adds column containing tuple weights of given join result
+	 * to the (previously materialized) join relation.
+	 * 
+	 * @param joinResult	weighted join result tuples
+	 * @param weightRef		reference to weight column to create
+	 * @throws Exception
+	 */
+	public static void addWeights(JoinResult joinResult, 
+			ColumnRef weightRef) throws Exception {
+		String targetRelName = weightRef.aliasName;
+		TableInfo resultInfo = CatalogManager.getTable(targetRelName);
+		resultInfo.addColumn(new ColumnInfo(weightRef.columnName, 
+				SQLtype.LONG, false, false, false, false));
+		int nrRows = 0;
+		for (long[] weightChunk : joinResult.weightChunks()) {
+			nrRows += weightChunk.length;
+		}
+		LongData weightData = new LongData(nrRows);
+		int rowCtr = 0;
+		for (long[] weightChunk : joinResult.weightChunks()) {
+			System.arraycopy(weightChunk, 0, weightData.data, 
+					rowCtr, weightChunk.length);
+			rowCtr += weightChunk.length;
+		}
+		BufferManager.colToData.put(weightRef, weightData);
 		// Update statistics in catalog
 		CatalogManager.updateStats(targetRelName);
 	}
@@ -34,6 +34,25 @@ public class SumAggregate {
 	 */
 	public static void execute(ColumnRef sourceRef, int nrGroups,
 			ColumnRef groupRef, ColumnRef targetRef) throws Exception {
+		execute(sourceRef, nrGroups, groupRef, null, targetRef);
+	}
+	/**
+	 * Calculates aggregate from source data for each group
+	 * (or total if no groups are specified), counting each
+	 * source row as often as specified by its weight, and
+	 * stores result in given target column.
+	 * 
+	 * @param sourceRef		reference to source column
+	 * @param nrGroups		number of groups
+	 * @param groupData		assigns source rows to group IDs
+	 * @param weightRef		number of times each source row is
+	 * 						counted (null to count each row once)
+	 * @param targetRef		store results in this column
+	 * @throws Exception
+	 */
+	public static void execute(ColumnRef sourceRef, int nrGroups,
+			ColumnRef groupRef, ColumnRef weightRef, 
+			ColumnRef targetRef) throws Exception {
 		// Get information about source column
 		String srcRel = sourceRef.aliasName;
 		SQLtype srcType = CatalogManager.getColumn(sourceRef).type;
@@ -44,13 +63,19 @@ public class SumAggregate {
 		int[] groups = grouping?((IntData)
 				BufferManager.getData(groupRef)).data:
 					new int[srcCard];
+		// Get row weights (if any)
+		long[] weights = weightRef != null ? ((LongData)
+				BufferManager.getData(weightRef)).data : null;
+		// Weighted sums over integers may exceed integer range
+		SQLtype targetType = weights != null && srcType == SQLtype.INT ?
+				SQLtype.LONG : srcType;
 		// Generate target column
 		int targetCard = grouping ? nrGroups:1;
 		ColumnData genericTarget = null;
 		IntData intTarget = null;
 		LongData longTarget = null;
 		DoubleData doubleTarget = null;
-		switch (srcType) {
+		switch (targetType) {
 		case INT:
 			intTarget = new IntData(targetCard);
 			genericTarget = intTarget;
@@ -76,7 +101,7 @@ public class SumAggregate {
 		TableInfo targetRelInfo = CatalogManager.
 				currentDB.nameToTable.get(targetRel);
 		ColumnInfo targetColInfo = new ColumnInfo(targetCol, 
-				srcType, false, false, false, false);
+				targetType, false, false, false, false);
 		targetRelInfo.addColumn(targetColInfo);
 		// Update catalog statistics on result table
 		CatalogManager.updateStats(targetRel);
@@ -95,7 +120,11 @@ public class SumAggregate {
 				if (!srcData.isNull.get(row)) {
 					int group = groups[row];
 					genericTarget.isNull.set(group, false);
-					intTarget.data[group] += intSrc.data[row];
+					if (weights == null) {
+						intTarget.data[group] += intSrc.data[row];
+					} else {
+						longTarget.data[group] += (long) intSrc.data[row] * weights[row];
+					}
 				}
 			}			
 		}
@@ -108,7 +137,8 @@ public class SumAggregate {
 				if (!srcData.isNull.get(row)) {
 					int group = groups[row];
 					genericTarget.isNull.set(group, false);
-					longTarget.data[group] += longSrc.data[row];
+					longTarget.data[group] += weights == null ? longSrc.data[row] :
+							longSrc.data[row] * weights[row];
 				}
 			}		
 			break;
@@ -120,7 +150,8 @@ public class SumAggregate {
 				if (!srcData.isNull.get(row)) {
 					int group = groups[row];
 					genericTarget.isNull.set(group, false);
-					doubleTarget.data[group] += doubleSrc.data[row];
+					doubleTarget.data[group] += weights == null ? doubleSrc.data[row] :
+							doubleSrc.data[row] * weights[row];
 				}
 			}
 			break;
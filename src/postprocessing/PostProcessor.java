@@ -25,6 +25,7 @@ import print.RelationPrinter;
 import query.ColumnRef;
 import query.QueryInfo;
 import statistics.PostStats;
+import types.SQLtype;
 
 /**
  * Uses the result of the join phase as input and
@@ -145,7 +146,7 @@ public class PostProcessor {
 			switch (aggInfo.aggFunction) {
 			case SUM:
 				SumAggregate.execute(sourceRef, nrGroups, 
-						groupRef, targetRef);
+						groupRef, context.weightRef, targetRef);
 				break;
 			case MIN:
 				MinMaxAggregate.execute(sourceRef, nrGroups, 
@@ -286,12 +287,14 @@ public class PostProcessor {
 			// Is it a previously calculated aggregate?
 			String exprSQL = expr.finalExpression.toString();
 			if (context.aggToData.containsKey(exprSQL)) {
-				// Update catalog
+				// Update catalog (aggregate type may be wider
+				// than expression type for weighted sums).
+				ColumnRef aggRef = context.aggToData.get(exprSQL);
+				SQLtype aggType = CatalogManager.getColumn(aggRef).type;
 				ColumnInfo resultColInfo = new ColumnInfo(colName, 
-						expr.resultType, false, false, false, false);
+						aggType, false, false, false, false);
 				result.addColumn(resultColInfo);
 				// Select item data was previously generated
-				ColumnRef aggRef = context.aggToData.get(exprSQL);
 				ColumnData aggData = BufferManager.getData(aggRef);
 				BufferManager.colToData.put(resultRef, aggData);
 			} else {
@@ -325,12 +328,14 @@ public class PostProcessor {
 		// Is it a previously calculated aggregate?
 		String exprSQL = expr.finalExpression.toString();
 		if (context.aggToData.containsKey(exprSQL)) {
-			// Update catalog by adding result column
+			// Update catalog by adding result column (aggregate
+			// type may be wider than expression type).
+			ColumnRef aggRef = context.aggToData.get(exprSQL);
+			SQLtype aggType = CatalogManager.getColumn(aggRef).type;
 			ColumnInfo resultColInfo = new ColumnInfo(colName, 
-					expr.resultType, false, false, false, false);
+					aggType, false, false, false, false);
 			result.addColumn(resultColInfo);
 			// Select item data was previously generated
-			ColumnRef aggRef = context.aggToData.get(exprSQL);
 			ColumnData aggData = BufferManager.getData(aggRef);
 			BufferManager.colToData.put(resultRef, aggData);
 		} else if (expr.aggregates.isEmpty()) {
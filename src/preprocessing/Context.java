@@ -32,6 +32,14 @@ public class Context {
 
 	public final Map<String, String> aliasToDistinct =
 			new ConcurrentHashMap<String, String>();
+	/**
+	 * Maps query aliases whose filtered table was derived
+	 * directly from the base table to the base table rows
+	 * it contains (in ascending order, i.e. the i-th row of
+	 * the filtered table is the i-th entry).
+	 */
+	public final Map<String, int[]> aliasToBaseRows =
+			new ConcurrentHashMap<String, int[]>();
 	/**
 	 * References column that contains group IDs for
 	 * each row in the join result (null if query
@@ -43,6 +51,12 @@ public class Context {
 	 * does not have a group by clause).
 	 */
 	public int nrGroups = -1;
+	/**
+	 * References column that contains for each row in the
+	 * join result the number of result tuples it represents
+	 * (null if each row represents one result tuple).
+	 */
+	public ColumnRef weightRef = null;
 	/**
 	 * Maps aggregation expressions (in string representation)
 	 * to columns containing corresponding (per-group) results.
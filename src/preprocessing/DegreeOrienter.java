@@ -0,0 +1,361 @@
+package preprocessing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import buffer.BufferManager;
+import catalog.CatalogManager;
+import config.NamingConfig;
+import data.ColumnData;
+import data.IntData;
+import expressions.ExpressionInfo;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThan;
+import net.sf.jsqlparser.expression.operators.relational.MinorThan;
+import net.sf.jsqlparser.schema.Column;
+import operators.Materialize;
+import query.ColumnRef;
+import query.QueryInfo;
+
+/**
+ * Replaces the tables of graph self-joins by a copy of the edge
+ * relation in which each edge points from the vertex of lower
+ * degree to the vertex of higher degree (ties are broken by
+ * vertex ID). This applies to queries that join only aliases of
+ * one binary table, connecting each pair of join attributes by
+ * some alias, where predicates of the form source < target on
+ * some aliases order all attributes totally (i.e., queries that
+ * count cliques, each one once). The count does not depend on
+ * the vertex order, so vertices can be ordered by degree instead
+ * of by ID. This bounds the number of neighbors following each
+ * vertex by the square root of twice the number of edges, which
+ * avoids long adjacency lists of high-degree vertices during
+ * intersections. Aliases without predicate require a symmetric
+ * edge table and are mapped to the oriented table along the
+ * total order. All aliases share the oriented table and its
+ * tries.
+ *
+ *
+ */
+public class DegreeOrienter {
+	/**
+	 * Orients edges by degree if the given query counts
+	 * cliques over one edge table and updates the execution
+	 * context to refer to the oriented table.
+	 *
+	 * @param query		query to rewrite
+	 * @param context	execution context after filtering
+	 * @throws Exception
+	 */
+	public static void orient(QueryInfo query, Context context) throws Exception {
+		String[] edgeCols = edgeColumns(query);
+		if (edgeCols == null) {
+			return;
+		}
+		int[] ranks = attributeRanks(query, edgeCols);
+		if (ranks == null) {
+			return;
+		}
+		// Retrieve edges restricted by predicates
+		String filteredAlias = query.unaryPredicates.get(0).
+				aliasesMentioned.iterator().next();
+		String table = query.aliasToTable.get(filteredAlias);
+		String filtered = context.aliasToFiltered.get(filteredAlias);
+		ColumnRef sourceRef = context.columnMapping.get(
+				new ColumnRef(filteredAlias, edgeCols[0]));
+		ColumnRef targetRef = context.columnMapping.get(
+				new ColumnRef(filteredAlias, edgeCols[1]));
+		if (!sourceRef.aliasName.equals(filtered) ||
+				!targetRef.aliasName.equals(filtered) ||
+				!(BufferManager.getData(sourceRef) instanceof IntData) ||
+				!(BufferManager.getData(targetRef) instanceof IntData)) {
+			return;
+		}
+		// Aliases without predicate need edges in both directions
+		if (query.unaryPredicates.size() < query.nrJoined &&
+				!isSymmetric(new ColumnRef(table, edgeCols[0]),
+						new ColumnRef(table, edgeCols[1]))) {
+			log("Edges of " + table + " are not symmetric - not oriented");
+			return;
+		}
+		// Copy restricted edges
+		String orientedName = NamingConfig.ORIENTED_PRE + table;
+		int card = CatalogManager.getCardinality(filtered);
+		BitSet allRows = new BitSet(card);
+		allRows.set(0, card);
+		List<String> columnNames = new ArrayList<>();
+		columnNames.add(edgeCols[0]);
+		columnNames.add(edgeCols[1]);
+		Materialize.execute(filtered, columnNames, null, allRows, orientedName, true);
+		int[] sources = ((IntData)BufferManager.getData(
+				new ColumnRef(orientedName, edgeCols[0]))).data;
+		int[] targets = ((IntData)BufferManager.getData(
+				new ColumnRef(orientedName, edgeCols[1]))).data;
+		// Point edges towards vertex of higher degree
+		int[] vertices = IntStream.concat(Arrays.stream(sources),
+				Arrays.stream(targets)).parallel().sorted().toArray();
+		IntStream.range(0, card).parallel().forEach(row -> {
+			if (rank(vertices, sources[row]) > rank(vertices, targets[row])) {
+				int source = sources[row];
+				sources[row] = targets[row];
+				targets[row] = source;
+			}
+		});
+		// Map aliases to oriented table along attribute order
+		for (String alias : query.aliases) {
+			int source = attribute(query, new ColumnRef(alias, edgeCols[0]));
+			int target = attribute(query, new ColumnRef(alias, edgeCols[1]));
+			boolean forward = ranks[source] < ranks[target];
+			context.columnMapping.put(new ColumnRef(alias, edgeCols[0]),
+					new ColumnRef(orientedName, edgeCols[forward ? 0 : 1]));
+			context.columnMapping.put(new ColumnRef(alias, edgeCols[1]),
+					new ColumnRef(orientedName, edgeCols[forward ? 1 : 0]));
+			context.aliasToFiltered.put(alias, orientedName);
+			context.aliasToBaseRows.remove(alias);
+		}
+		log("Oriented " + card + " edges of " + table + " by degree");
+	}
+	/**
+	 * Returns the source and target column of the edge table if
+	 * all query aliases refer to the same table, predicates are
+	 * of the form source < target, and if the query uses no other
+	 * columns and only the result count after the join phase.
+	 *
+	 * @param query	query to analyze
+	 * @return		source and target column name or null
+	 */
+	static String[] edgeColumns(QueryInfo query) {
+		if (query.nrJoined < 2 || query.unaryPredicates.isEmpty() ||
+				!query.groupByExpressions.isEmpty() ||
+				!query.orderByExpressions.isEmpty() ||
+				query.havingExpression != null ||
+				!query.nonEquiJoinPreds.isEmpty()) {
+			return null;
+		}
+		for (ExpressionInfo selectExpr : query.selectExpressions) {
+			if (!selectExpr.columnsMentioned.isEmpty()) {
+				return null;
+			}
+		}
+		String table = query.aliasToTable.get(query.aliases[0]);
+		for (String alias : query.aliases) {
+			if (!query.aliasToTable.get(alias).equals(table)) {
+				return null;
+			}
+		}
+		String[] edgeCols = null;
+		Set<String> filteredAliases = new HashSet<>();
+		for (ExpressionInfo unaryPred : query.unaryPredicates) {
+			String alias = unaryPred.aliasesMentioned.iterator().next();
+			if (!filteredAliases.add(alias) || unaryPred.conjuncts.size() != 1) {
+				return null;
+			}
+			String[] predCols = lessThanColumns(unaryPred.conjuncts.get(0));
+			if (predCols == null || (edgeCols != null &&
+					!Arrays.equals(predCols, edgeCols))) {
+				return null;
+			}
+			edgeCols = predCols;
+		}
+		// Other columns are not copied into the oriented table
+		Set<ColumnRef> usedCols = new HashSet<>();
+		usedCols.addAll(query.colsForJoins);
+		usedCols.addAll(query.colsForPostProcessing);
+		for (ColumnRef usedCol : usedCols) {
+			if (!usedCol.columnName.equals(edgeCols[0]) &&
+					!usedCol.columnName.equals(edgeCols[1])) {
+				return null;
+			}
+		}
+		return edgeCols;
+	}
+	/**
+	 * Extracts the smaller and larger column from a comparison
+	 * between two distinct columns of the same alias.
+	 *
+	 * @param conjunct	predicate to analyze
+	 * @return			smaller and larger column name or null
+	 */
+	static String[] lessThanColumns(Expression conjunct) {
+		Expression smaller;
+		Expression larger;
+		if (conjunct instanceof MinorThan) {
+			smaller = ((MinorThan)conjunct).getLeftExpression();
+			larger = ((MinorThan)conjunct).getRightExpression();
+		} else if (conjunct instanceof GreaterThan) {
+			smaller = ((GreaterThan)conjunct).getRightExpression();
+			larger = ((GreaterThan)conjunct).getLeftExpression();
+		} else {
+			return null;
+		}
+		if (!(smaller instanceof Column) || !(larger instanceof Column)) {
+			return null;
+		}
+		String smallerName = ((Column)smaller).getColumnName();
+		String largerName = ((Column)larger).getColumnName();
+		return smallerName.equals(largerName) ? null :
+			new String[] {smallerName, largerName};
+	}
+	/**
+	 * Returns for each join attribute its position in the total
+	 * order implied by predicates source < target, if the query
+	 * connects each pair of attributes by some alias.
+	 *
+	 * @param query		query to analyze
+	 * @param edgeCols	source and target column name
+	 * @return			position of each attribute or null if the
+	 * 					query does not count cliques
+	 */
+	static int[] attributeRanks(QueryInfo query, String[] edgeCols) {
+		int nrAttributes = query.nrAttribute;
+		if (nrAttributes < 2 || nrAttributes > 64) {
+			return null;
+		}
+		Set<String> filteredAliases = new HashSet<>();
+		for (ExpressionInfo unaryPred : query.unaryPredicates) {
+			filteredAliases.addAll(unaryPred.aliasesMentioned);
+		}
+		// Collect adjacent and larger attributes
+		long[] adjacent = new long[nrAttributes];
+		long[] larger = new long[nrAttributes];
+		for (String alias : query.aliases) {
+			int source = attribute(query, new ColumnRef(alias, edgeCols[0]));
+			int target = attribute(query, new ColumnRef(alias, edgeCols[1]));
+			if (source < 0 || target < 0 || source == target) {
+				return null;
+			}
+			adjacent[source] |= 1L << target;
+			adjacent[target] |= 1L << source;
+			if (filteredAliases.contains(alias)) {
+				larger[source] |= 1L << target;
+			}
+		}
+		// Derive transitive closure
+		for (int via=0; via<nrAttributes; ++via) {
+			for (int attribute=0; attribute<nrAttributes; ++attribute) {
+				if ((larger[attribute] & (1L << via)) != 0) {
+					larger[attribute] |= larger[via];
+				}
+			}
+		}
+		// Attributes must be adjacent and ordered pairwise
+		long all = nrAttributes == 64 ? -1L : (1L << nrAttributes) - 1;
+		int[] ranks = new int[nrAttributes];
+		for (int attribute=0; attribute<nrAttributes; ++attribute) {
+			long others = all & ~(1L << attribute);
+			if (adjacent[attribute] != others ||
+					(larger[attribute] & (1L << attribute)) != 0) {
+				return null;
+			}
+			for (int other=0; other<nrAttributes; ++other) {
+				if (other != attribute && ((larger[attribute] >>> other) & 1) ==
+						((larger[other] >>> attribute) & 1)) {
+					return null;
+				}
+			}
+			ranks[attribute] = nrAttributes - 1 - Long.bitCount(larger[attribute]);
+		}
+		return ranks;
+	}
+	/**
+	 * Returns true iff the table contains each edge
+	 * (with non-NULL end points) in both directions.
+	 *
+	 * @param sourceRef	source column of edge table
+	 * @param targetRef	target column of edge table
+	 * @return			true iff edges are symmetric
+	 * @throws Exception
+	 */
+	static boolean isSymmetric(ColumnRef sourceRef, ColumnRef targetRef) throws Exception {
+		ColumnData sourceData = BufferManager.getData(sourceRef);
+		ColumnData targetData = BufferManager.getData(targetRef);
+		if (!(sourceData instanceof IntData) || !(targetData instanceof IntData)) {
+			return false;
+		}
+		IntData sources = (IntData)sourceData;
+		IntData targets = (IntData)targetData;
+		int card = CatalogManager.getCardinality(sourceRef.aliasName);
+		long[] forward = IntStream.range(0, card).parallel().
+				filter(row -> !sources.isNull.get(row) && !targets.isNull.get(row)).
+				mapToLong(row -> edge(sources.data[row], targets.data[row])).
+				sorted().distinct().toArray();
+		long[] backward = IntStream.range(0, card).parallel().
+				filter(row -> !sources.isNull.get(row) && !targets.isNull.get(row)).
+				mapToLong(row -> edge(targets.data[row], sources.data[row])).
+				sorted().distinct().toArray();
+		return Arrays.equals(forward, backward);
+	}
+	/**
+	 * Packs source and target vertex into one key.
+	 *
+	 * @param source	source vertex
+	 * @param target	target vertex
+	 * @return			edge key
+	 */
+	static long edge(int source, int target) {
+		return ((long)source << 32) | (target & 0xFFFFFFFFL);
+	}
+	/**
+	 * Returns the join attribute containing the given column.
+	 *
+	 * @param query		query to analyze
+	 * @param queryRef	query column
+	 * @return			attribute index or -1 if not joined
+	 */
+	static int attribute(QueryInfo query, ColumnRef queryRef) {
+		for (int attrCtr=0; attrCtr<query.nrAttribute; ++attrCtr) {
+			if (query.equiJoinAttribute.get(attrCtr).contains(queryRef)) {
+				return attrCtr;
+			}
+		}
+		return -1;
+	}
+	/**
+	 * Returns the rank of a vertex in the order by degree,
+	 * then by ID, given all edge end points in sorted order.
+	 *
+	 * @param vertices	sorted end points of all edges
+	 * @param vertex	vertex to rank
+	 * @return			degree in upper bits, vertex ID in lower bits
+	 */
+	static long rank(int[] vertices, int vertex) {
+		int first = lowerBound(vertices, vertex);
+		int last = vertex == Integer.MAX_VALUE ?
+				vertices.length : lowerBound(vertices, vertex + 1);
+		return ((long)(last - first) << 32) | ((long)vertex - Integer.MIN_VALUE);
+	}
+	/**
+	 * Returns the first position in a sorted array whose
+	 * value is not smaller than the given value.
+	 *
+	 * @param values	sorted values
+	 * @param value		value to search
+	 * @return			first position of value or above
+	 */
+	static int lowerBound(int[] values, int value) {
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (values[middle] < value) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	/**
+	 * Output logging message if pre-processing logging activated.
+	 *
+	 * @param toLog		text to display if logging is activated
+	 */
+	static void log(String toLog) {
+		Preprocessor.log(toLog);
+	}
+}
@@ -133,6 +133,16 @@ public class Preprocessor {
 		if (hadError) {
 			throw new Exception("Error in pre-processor.");
 		}
+		// Orient edges by degree for clique queries
+		if (PreConfig.DEGREE_ORIENTATION) {
+			DegreeOrienter.orient(query, preSummary);
+		}
+		// Remove dangling tuples via semijoins
+		if (PreConfig.SEMIJOIN_REDUCTION) {
+			long reductionStartMillis = System.currentTimeMillis();
+			SemijoinReducer.reduce(query, preSummary);
+			PreStats.reductionMillis = System.currentTimeMillis() - reductionStartMillis;
+		}
 		// Create missing indices for columns involved in equi-joins.
 		//log("Creating indices ...");			
 		//createJoinIndices(query, preSummary);
@@ -266,6 +276,11 @@ public class Preprocessor {
 			preSummary.columnMapping.put(srcRef, resRef);
 		}
 		preSummary.aliasToFiltered.put(alias, filteredName);
+		// Remember base rows to derive sort orders from base table
+		if (tableName.equals(query.aliasToTable.get(alias))) {
+			preSummary.aliasToBaseRows.put(alias, satisfyingRows.stream().
+					mapToInt(row -> row).toArray());
+		}
 		long totalMillis = System.currentTimeMillis() - startMillis;
 		log("Filtering using " + unaryPred + " took " + totalMillis + " milliseconds");
 		// Print out intermediate result table if logging is enabled
@@ -0,0 +1,275 @@
+package preprocessing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import buffer.BufferManager;
+import catalog.CatalogManager;
+import config.NamingConfig;
+import data.ColumnData;
+import data.IntData;
+import operators.Materialize;
+import query.ColumnRef;
+import query.QueryInfo;
+
+/**
+ * Removes dangling tuples from filtered tables before the join
+ * phase via semijoins along a join tree (full reducer). The join
+ * tree is obtained by removing ears from the query hypergraph, in
+ * which each table forms one edge over its join attributes: a
+ * table is an ear if its join attributes shared with remaining
+ * tables are all contained in one other table (its parent). The
+ * reducer first reduces parents by their children, in the order
+ * in which ears were removed, then children by their parents in
+ * the inverse order. Tables in cyclic parts of the query remain
+ * in the hypergraph and are only reduced via attached ears.
+ * Reduced tables are materialized and replace the filtered tables
+ * in the execution context.
+ *
+ *
+ */
+public class SemijoinReducer {
+	/**
+	 * Reduces filtered tables of the given query and updates
+	 * the execution context to refer to reduced tables.
+	 *
+	 * @param query		query whose tables are reduced
+	 * @param context	execution context after pre-processing
+	 * @throws Exception
+	 */
+	public static void reduce(QueryInfo query, Context context) throws Exception {
+		int nrTables = query.nrJoined;
+		int nrAttributes = query.nrAttribute;
+		// Collect integer join columns of each table per attribute
+		IntData[][] columns = new IntData[nrTables][nrAttributes];
+		List<Set<Integer>> attributes = new ArrayList<>();
+		for (int tableCtr=0; tableCtr<nrTables; ++tableCtr) {
+			attributes.add(new HashSet<>());
+		}
+		for (int attrCtr=0; attrCtr<nrAttributes; ++attrCtr) {
+			for (ColumnRef queryRef : query.equiJoinAttribute.get(attrCtr)) {
+				int tableIdx = query.aliasToIndex.get(queryRef.aliasName);
+				ColumnData data = BufferManager.getData(
+						context.columnMapping.get(queryRef));
+				if (data instanceof IntData && columns[tableIdx][attrCtr] == null) {
+					columns[tableIdx][attrCtr] = (IntData)data;
+					attributes.get(tableIdx).add(attrCtr);
+				}
+			}
+		}
+		// Derive join tree by removing ears
+		List<int[]> ears = joinTree(attributes);
+		if (ears.isEmpty()) {
+			return;
+		}
+		// Initialize remaining rows of each table
+		BitSet[] rows = new BitSet[nrTables];
+		int[] cards = new int[nrTables];
+		for (int tableCtr=0; tableCtr<nrTables; ++tableCtr) {
+			String alias = query.aliases[tableCtr];
+			cards[tableCtr] = CatalogManager.getCardinality(
+					context.aliasToFiltered.get(alias));
+			rows[tableCtr] = new BitSet(cards[tableCtr]);
+			rows[tableCtr].set(0, cards[tableCtr]);
+		}
+		// Reduce parents by children, then children by parents
+		for (int[] ear : ears) {
+			semijoin(ear[1], ear[0], attributes, columns, rows);
+		}
+		for (int earCtr=ears.size()-1; earCtr>=0; --earCtr) {
+			int[] ear = ears.get(earCtr);
+			semijoin(ear[0], ear[1], attributes, columns, rows);
+		}
+		// Keep tables if the join result is empty
+		for (int tableCtr=0; tableCtr<nrTables; ++tableCtr) {
+			if (rows[tableCtr].isEmpty()) {
+				log("Join result is empty - no tables reduced");
+				return;
+			}
+		}
+		// Replace tables that were reduced
+		for (int tableCtr=0; tableCtr<nrTables; ++tableCtr) {
+			int nrRows = rows[tableCtr].cardinality();
+			if (nrRows < cards[tableCtr]) {
+				replaceTable(query, context, tableCtr, rows[tableCtr]);
+				log("Reduced " + query.aliases[tableCtr] + " from " +
+						cards[tableCtr] + " to " + nrRows + " rows");
+			}
+		}
+	}
+	/**
+	 * Removes ears from the hypergraph formed by the join
+	 * attributes of each table until no ears remain.
+	 *
+	 * @param attributes	join attributes of each table
+	 * @return				ears (first entry) with their parent
+	 * 						(second entry), in order of removal
+	 */
+	static List<int[]> joinTree(List<Set<Integer>> attributes) {
+		int nrTables = attributes.size();
+		List<int[]> ears = new ArrayList<>();
+		boolean[] removed = new boolean[nrTables];
+		boolean foundEar = true;
+		while (foundEar) {
+			foundEar = false;
+			for (int table=0; table<nrTables; ++table) {
+				if (removed[table]) {
+					continue;
+				}
+				// Attributes shared with remaining tables
+				Set<Integer> shared = new HashSet<>();
+				for (int other=0; other<nrTables; ++other) {
+					if (other != table && !removed[other]) {
+						for (int attribute : attributes.get(other)) {
+							if (attributes.get(table).contains(attribute)) {
+								shared.add(attribute);
+							}
+						}
+					}
+				}
+				if (shared.isEmpty()) {
+					continue;
+				}
+				for (int other=0; other<nrTables; ++other) {
+					if (other != table && !removed[other] &&
+							attributes.get(other).containsAll(shared)) {
+						ears.add(new int[] {table, other});
+						removed[table] = true;
+						foundEar = true;
+						break;
+					}
+				}
+			}
+		}
+		return ears;
+	}
+	/**
+	 * Removes rows from the target table that have no matching
+	 * row in the source table on their shared join attributes
+	 * (considering at most two attributes whose values are
+	 * packed into one key). Keys of the source table are sorted,
+	 * target rows are probed in parallel.
+	 *
+	 * @param target		index of table to reduce
+	 * @param source		index of table to reduce by
+	 * @param attributes	join attributes of each table
+	 * @param columns		join columns by table and attribute
+	 * @param rows			remaining rows of each table
+	 */
+	static void semijoin(int target, int source, List<Set<Integer>> attributes,
+			IntData[][] columns, BitSet[] rows) {
+		List<Integer> shared = new ArrayList<>();
+		for (int attribute : attributes.get(target)) {
+			if (attributes.get(source).contains(attribute) && shared.size() < 2) {
+				shared.add(attribute);
+			}
+		}
+		IntData[] sourceCols = new IntData[shared.size()];
+		IntData[] targetCols = new IntData[shared.size()];
+		for (int keyCtr=0; keyCtr<shared.size(); ++keyCtr) {
+			sourceCols[keyCtr] = columns[source][shared.get(keyCtr)];
+			targetCols[keyCtr] = columns[target][shared.get(keyCtr)];
+		}
+		// Collect sorted keys of remaining source rows
+		long[] keys = rows[source].stream().parallel().
+				filter(row -> !isNull(sourceCols, row)).
+				mapToLong(row -> key(sourceCols, row)).toArray();
+		Arrays.parallelSort(keys);
+		// Keep target rows whose key appears in source
+		int[] matching = rows[target].stream().parallel().
+				filter(row -> !isNull(targetCols, row) &&
+						Arrays.binarySearch(keys, key(targetCols, row)) >= 0).
+				toArray();
+		BitSet remaining = new BitSet(rows[target].length());
+		for (int row : matching) {
+			remaining.set(row);
+		}
+		rows[target] = remaining;
+	}
+	/**
+	 * Returns true iff the given row has a NULL
+	 * value in one of the given columns.
+	 *
+	 * @param keyCols	key columns
+	 * @param row		row index
+	 * @return			true iff some key is NULL
+	 */
+	static boolean isNull(IntData[] keyCols, int row) {
+		for (IntData keyCol : keyCols) {
+			if (keyCol.isNull.get(row)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	/**
+	 * Packs values of given row in key columns into one key.
+	 *
+	 * @param keyCols	one or two key columns
+	 * @param row		row index
+	 * @return			key of row
+	 */
+	static long key(IntData[] keyCols, int row) {
+		long key = 0;
+		for (IntData keyCol : keyCols) {
+			key = (key << 32) | (keyCol.data[row] & 0xFFFFFFFFL);
+		}
+		return key;
+	}
+	/**
+	 * Materializes remaining rows of a table and updates the
+	 * context to refer to the reduced table, including the
+	 * mapping to base table rows (if available).
+	 *
+	 * @param query		query whose table is reduced
+	 * @param context	execution context to update
+	 * @param tableIdx	index of reduced table
+	 * @param rows		remaining rows of the table
+	 * @throws Exception
+	 */
+	static void replaceTable(QueryInfo query, Context context,
+			int tableIdx, BitSet rows) throws Exception {
+		String alias = query.aliases[tableIdx];
+		String table = context.aliasToFiltered.get(alias);
+		String reducedName = NamingConfig.REDUCED_PRE + alias;
+		// Copy all columns mapped to the current table
+		Map<ColumnRef, String> queryToColumn = new HashMap<>();
+		for (Map.Entry<ColumnRef, ColumnRef> entry : context.columnMapping.entrySet()) {
+			if (entry.getKey().aliasName.equals(alias) &&
+					entry.getValue().aliasName.equals(table)) {
+				queryToColumn.put(entry.getKey(), entry.getValue().columnName);
+			}
+		}
+		List<String> columnNames = new ArrayList<>(new HashSet<>(queryToColumn.values()));
+		Materialize.execute(table, columnNames, null, rows, reducedName, true);
+		for (Map.Entry<ColumnRef, String> entry : queryToColumn.entrySet()) {
+			context.columnMapping.put(entry.getKey(),
+					new ColumnRef(reducedName, entry.getValue()));
+		}
+		context.aliasToFiltered.put(alias, reducedName);
+		// Remaining rows are in ascending order
+		int[] remaining = rows.stream().toArray();
+		int[] baseRows = context.aliasToBaseRows.get(alias);
+		if (baseRows != null) {
+			context.aliasToBaseRows.put(alias, IntStream.of(remaining).
+					map(row -> baseRows[row]).toArray());
+		} else if (table.equals(query.aliasToTable.get(alias))) {
+			context.aliasToBaseRows.put(alias, remaining);
+		}
+	}
+	/**
+	 * Output logging message if pre-processing logging activated.
+	 *
+	 * @param toLog		text to display if logging is activated
+	 */
+	static void log(String toLog) {
+		Preprocessor.log(toLog);
+	}
+}
@@ -67,4 +67,10 @@ public class JoinStats {
 //     * Number of tuples in join result (before post-processing).
 //     */
     public static int skinnerJoinCard = 0;
+    /**
+     * Number of seeks per join table (following the order
+     * of the from clause) and seek strategy (indexed by
+     * ordinal) during the last query evaluation.
+     */
+    public static long[][] nrSeeksByStrategy = new long[0][];
 }
@@ -14,4 +14,9 @@ public class PreStats {
 	 * Preprocessing time in milliseconds.
 	 */
 	public static long preMillis = 0;
+	/**
+	 * Time in milliseconds for removing dangling
+	 * tuples via semijoins (part of pre-processing).
+	 */
+	public static long reductionMillis = 0;
 }
@@ -56,6 +56,9 @@ public class TypeUtil {
 			// Long or double "generalizes" integer
 			return type2 == SQLtype.LONG ||
 				type2 == SQLtype.DOUBLE;
+		case LONG:
+			// Double "generalizes" long
+			return type2 == SQLtype.DOUBLE;
 		case STRING_CODE:
 			// String generalizes strings in dictionary
 			return type2 == SQLtype.STRING;
@@ -0,0 +1,119 @@
+package util;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concurrent cache that builds each value at most once:
+ * if several threads request the same missing key, one
+ * thread builds the value while the others wait for its
+ * result. Threads requesting different keys never block
+ * each other.
+ *
+ * @param <K> type of cache keys
+ * @param <V> type of cached values
+ */
+public class SingleFlightCache<K, V> {
+    /**
+     * Builds value for a cache key.
+     */
+    public interface Builder<K, V> {
+        V build(K key) throws Exception;
+    }
+
+    /**
+     * Maps keys to values (completed or in construction).
+     */
+    final ConcurrentHashMap<K, CompletableFuture<V>> keyToValue =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Returns cached value for given key, builds it if not
+     * cached yet or waits until it was built by another thread.
+     * If building fails, the exception is propagated to all
+     * waiting threads and the key remains uncached.
+     *
+     * @param key     retrieve value for this key
+     * @param builder builds value if missing
+     * @return        cached value
+     * @throws Exception
+     */
+    public V computeIfAbsent(K key, Builder<K, V> builder) throws Exception {
+        CompletableFuture<V> future = keyToValue.get(key);
+        if (future == null) {
+            CompletableFuture<V> newFuture = new CompletableFuture<>();
+            future = keyToValue.putIfAbsent(key, newFuture);
+            if (future == null) {
+                try {
+                    V value = builder.build(key);
+                    newFuture.complete(value);
+                    return value;
+                } catch (Throwable e) {
+                    keyToValue.remove(key, newFuture);
+                    newFuture.completeExceptionally(e);
+                    throw e;
+                }
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns cached value for given key (waiting if the
+     * value is currently built) or null if not cached.
+     *
+     * @param key retrieve value for this key
+     * @return    cached value or null
+     */
+    public V get(K key) {
+        CompletableFuture<V> future = keyToValue.get(key);
+        if (future == null) {
+            return null;
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Inserts value for given key (replacing previous values).
+     *
+     * @param key   insert value for this key
+     * @param value value to insert
+     */
+    public void put(K key, V value) {
+        keyToValue.put(key, CompletableFuture.completedFuture(value));
+    }
+
+    /**
+     * Returns true iff a value for given key is cached
+     * (or currently built).
+     *
+     * @param key check for this key
+     * @return    true iff key is cached
+     */
+    public boolean containsKey(K key) {
+        return keyToValue.containsKey(key);
+    }
+
+    /**
+     * Returns cached keys (removing keys from the
+     * returned set removes them from the cache).
+     *
+     * @return set of cached keys
+     */
+    public Set<K> keySet() {
+        return keyToValue.keySet();
+    }
+}